@@ -0,0 +1,27 @@
+package net.steveperkins.hibernatesearchdemo.benchmark;
+
+import java.util.Properties;
+
+/**
+ * Hibernate settings used by the benchmarks.  Outside of the servlet container there is no JNDI datasource, so the 
+ * benchmarks point Hibernate at a private in-memory H2 database instead.
+ */
+public final class BenchmarkDatabase {
+
+	private BenchmarkDatabase() {
+	}
+
+	/**
+	 * @return overrides for "hibernate.cfg.xml", pointing at an in-memory H2 database with the given name
+	 */
+	public static Properties overrides(String databaseName) {
+		Properties properties = new Properties();
+		properties.setProperty("hibernate.connection.driver_class", "org.h2.Driver");
+		properties.setProperty("hibernate.connection.url", "jdbc:h2:mem:" + databaseName + ";DB_CLOSE_DELAY=-1");
+		properties.setProperty("hibernate.connection.username", "sa");
+		properties.setProperty("hibernate.connection.password", "");
+		properties.setProperty("hibernate.connection.pool_size", "16");
+		return properties;
+	}
+
+}
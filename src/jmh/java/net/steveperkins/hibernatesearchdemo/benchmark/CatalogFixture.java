@@ -0,0 +1,56 @@
+package net.steveperkins.hibernatesearchdemo.benchmark;
+
+import java.io.File;
+import java.util.Properties;
+
+import net.steveperkins.hibernatesearchdemo.domain.App;
+import net.steveperkins.hibernatesearchdemo.util.CatalogGenerator;
+import net.steveperkins.hibernatesearchdemo.util.HibernateContext;
+
+import org.hibernate.Session;
+import org.hibernate.criterion.Projections;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Opens the shared HibernateContext against a synthetic catalog of a given size (see CatalogGenerator, always with 
+ * the same seed).  Each catalog is kept in a file-based H2 database with a memory-mapped index under 
+ * "target/benchmark-catalogs/<size>", so that it is only generated the first time it's needed (and is discarded by 
+ * "mvn clean").
+ */
+public final class CatalogFixture {
+
+	private static Logger logger = LoggerFactory.getLogger(CatalogFixture.class);
+
+	private CatalogFixture() {
+	}
+
+	public static void open(int size) {
+		File directory = new File("target/benchmark-catalogs/" + size).getAbsoluteFile();
+		Properties overrides = BenchmarkDatabase.overrides("unused");
+		overrides.setProperty("hibernate.connection.url", "jdbc:h2:file:" + new File(directory, "db").getPath());
+		overrides.setProperty("hibernate.search.default.directory_provider", "filesystem");
+		overrides.setProperty("hibernate.search.default.filesystem_access_type", "mmap");
+		overrides.setProperty("hibernate.search.default.indexBase", new File(directory, "indexes").getPath());
+		HibernateContext.initialize(overrides);
+		
+		Session session = HibernateContext.openSession();
+		try {
+			long existing = (Long) session.createCriteria(App.class).setProjection(Projections.rowCount()).uniqueResult();
+			if(existing == size) {
+				logger.info("Reusing existing catalog of " + size + " apps");
+			} else if(existing == 0) {
+				new CatalogGenerator(42, 1000).generate(session, size);
+			} else {
+				throw new IllegalStateException("Catalog database holds " + existing + " apps rather than " + size + ", delete it and try again");
+			}
+		} finally {
+			session.close();
+		}
+	}
+
+	public static void close() {
+		HibernateContext.close();
+	}
+
+}
@@ -0,0 +1,217 @@
+package net.steveperkins.hibernatesearchdemo.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import net.steveperkins.hibernatesearchdemo.domain.App;
+import net.steveperkins.hibernatesearchdemo.search.AppSearchRequest;
+import net.steveperkins.hibernatesearchdemo.search.AppSearchResult;
+import net.steveperkins.hibernatesearchdemo.search.AppSearchService;
+import net.steveperkins.hibernatesearchdemo.util.HibernateContext;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TopDocs;
+import org.hibernate.search.indexes.IndexReaderAccessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs each query shape built by the search servlet (see AppSearchService) against synthetic catalogs of increasing 
+ * size.  The search result cache is disabled, so that every invocation pays for a full search.
+ * 
+ * The first run for each catalog size generates and indexes the catalog, which takes a while for the largest size.  
+ * Later runs reuse it (see CatalogFixture).  To run only the smaller catalogs:
+ * 
+ *     mvn -P benchmark test-compile exec:exec -Djmh.args="SearchPipeline -p catalogSize=10000,100000"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx2g", "-Dvaporware.search.cache.enabled=false", "--add-opens=java.base/java.lang=ALL-UNNAMED" })
+public class SearchPipelineBenchmark {
+
+	/**
+	 * The page compared in the deep pagination benchmarks below (i.e. hits 2,501 through 2,505)
+	 */
+	private static final int DEEP_PAGE = 500;
+
+	@Param({ "10000", "100000", "1000000" })
+	public int catalogSize;
+
+	private AppSearchService searchService;
+
+	private Query fuzzyQuery;
+
+	private String deepPageCursor;
+
+	private String deepPageByNameCursor;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		CatalogFixture.open(catalogSize);
+		searchService = AppSearchService.getInstance();
+		fuzzyQuery = HibernateContext.getSearchFactory().buildQueryBuilder().forEntity( App.class ).get()
+				.keyword()
+				.fuzzy()
+				.withThreshold(0.7f)
+				.onFields("name", "description", "supportedDevices.name", "customerReviews.comments")
+				.matching("cloud game")
+				.createQuery();
+		deepPageCursor = cursorBefore(DEEP_PAGE, "relevance");
+		deepPageByNameCursor = cursorBefore(DEEP_PAGE, "name");
+	}
+
+	/**
+	 * Pages through the results by cursor, and returns the cursor at which the given page starts.
+	 */
+	private String cursorBefore(int page, String sortField) {
+		String cursor = null;
+		for(int count = 0; count < page; count++) {
+			cursor = searchService.search(new AppSearchRequest("cloud game", "all", "all", "all", sortField, 0, 5, cursor)).getNextCursor();
+			if(cursor == null) {
+				throw new IllegalStateException("The catalog has fewer than " + page + " pages of results");
+			}
+		}
+		return cursor;
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		CatalogFixture.close();
+	}
+
+	/**
+	 * Fuzzy keyword search over name, description, device names and review comments, sorted by relevance.
+	 */
+	@Benchmark
+	public AppSearchResult fuzzyKeyword() {
+		return searchService.search(new AppSearchRequest("cloud game", "all", "all", "all", "relevance", 0, 5));
+	}
+
+	/**
+	 * The same fuzzy query run straight against Lucene for the top 5 hits, with no facets, filters or projection.  A 
+	 * baseline for how much of the cost above is the query itself.
+	 */
+	@Benchmark
+	public TopDocs fuzzyKeywordLuceneOnly() throws IOException {
+		IndexReaderAccessor readerAccessor = HibernateContext.getSearchFactory().getIndexReaderAccessor();
+		IndexReader reader = readerAccessor.open(App.class);
+		try {
+			return new IndexSearcher(reader).search(fuzzyQuery, 5);
+		} finally {
+			readerAccessor.close(reader);
+		}
+	}
+
+	/**
+	 * Quoted phrase search, with boosted name and description fields.
+	 */
+	@Benchmark
+	public AppSearchResult phrase() {
+		return searchService.search(new AppSearchRequest("\"web browser\"", "all", "all", "all", "relevance", 0, 5));
+	}
+
+	/**
+	 * Fuzzy keyword search, filtered by the "deviceName" full-text filter.
+	 */
+	@Benchmark
+	public AppSearchResult deviceFilter() {
+		return searchService.search(new AppSearchRequest("cloud game", "xPhone", "all", "all", "relevance", 0, 5));
+	}
+
+	/**
+	 * Fuzzy keyword search, sorted on "sorting_name".
+	 */
+	@Benchmark
+	public AppSearchResult sortByName() {
+		return searchService.search(new AppSearchRequest("cloud game", "all", "all", "all", "name", 0, 5));
+	}
+
+	/**
+	 * Fuzzy keyword search, reverse sorted on "sorting_name".
+	 */
+	@Benchmark
+	public AppSearchResult sortByNameReverse() {
+		return searchService.search(new AppSearchRequest("cloud game", "all", "all", "all", "name-reverse", 0, 5));
+	}
+
+	/**
+	 * Fuzzy keyword search, sorted on the numeric "rating" field computed at index time.
+	 */
+	@Benchmark
+	public AppSearchResult sortByRating() {
+		return searchService.search(new AppSearchRequest("cloud game", "all", "all", "all", "rating", 0, 5));
+	}
+
+	/**
+	 * Fuzzy keyword search, sorted on the numeric "price" field.
+	 */
+	@Benchmark
+	public AppSearchResult sortByPrice() {
+		return searchService.search(new AppSearchRequest("cloud game", "all", "all", "all", "price", 0, 5));
+	}
+
+	/**
+	 * Fuzzy keyword search, narrowed to a category selected from the discrete category facet.
+	 */
+	@Benchmark
+	public AppSearchResult categoryFacetSelected() {
+		return searchService.search(new AppSearchRequest("cloud game", "all", "games", "all", "relevance", 0, 5));
+	}
+
+	/**
+	 * Fuzzy keyword search, narrowed to a price band selected from the range price facet.
+	 */
+	@Benchmark
+	public AppSearchResult priceRangeFacetSelected() {
+		return searchService.search(new AppSearchRequest("cloud game", "all", "all", "[1.0, 5.0]", "relevance", 0, 5));
+	}
+
+	/**
+	 * A deep page of fuzzy keyword results, requested by offset.  Every hit up to the end of the page is gathered.
+	 */
+	@Benchmark
+	public AppSearchResult deepPageOffset() {
+		return searchService.search(new AppSearchRequest("cloud game", "all", "all", "all", "relevance", DEEP_PAGE * 5, 5));
+	}
+
+	/**
+	 * The same deep page as above, requested with the cursor from the previous page.
+	 */
+	@Benchmark
+	public AppSearchResult deepPageCursor() {
+		return searchService.search(new AppSearchRequest("cloud game", "all", "all", "all", "relevance", 0, 5, deepPageCursor));
+	}
+
+	/**
+	 * A deep page of results sorted on "sorting_name", requested by offset.
+	 */
+	@Benchmark
+	public AppSearchResult deepPageByNameOffset() {
+		return searchService.search(new AppSearchRequest("cloud game", "all", "all", "all", "name", DEEP_PAGE * 5, 5));
+	}
+
+	/**
+	 * The same deep page as above, requested with the cursor from the previous page.
+	 */
+	@Benchmark
+	public AppSearchResult deepPageByNameCursor() {
+		return searchService.search(new AppSearchRequest("cloud game", "all", "all", "all", "name", 0, 5, deepPageByNameCursor));
+	}
+
+}
@@ -0,0 +1,98 @@
+package net.steveperkins.hibernatesearchdemo.benchmark;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import net.steveperkins.hibernatesearchdemo.domain.App;
+import net.steveperkins.hibernatesearchdemo.rest.AppResource;
+import net.steveperkins.hibernatesearchdemo.util.HibernateContext;
+import net.steveperkins.hibernatesearchdemo.util.StartupDataLoader;
+
+import org.hibernate.Criteria;
+import org.hibernate.FetchMode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.service.ServiceRegistryBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the per-request cost of the "Full Details" REST call when every request bootstraps its own SessionFactory 
+ * (the old behavior of "AppResource") against borrowing a session from the shared "HibernateContext".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "--add-opens=java.base/java.lang=ALL-UNNAMED" })
+public class SessionBootstrapBenchmark {
+
+	private Properties overrides;
+
+	private Long appId;
+
+	private AppResource appResource;
+
+	@Setup
+	public void setUp() {
+		overrides = BenchmarkDatabase.overrides("sessionBootstrap");
+		HibernateContext.initialize(overrides);
+		new StartupDataLoader().contextInitialized(null);
+		
+		Session session = HibernateContext.openSession();
+		appId = (Long) session.createCriteria(App.class).setProjection(Projections.min("id")).uniqueResult();
+		session.close();
+		
+		appResource = new AppResource();
+	}
+
+	@TearDown
+	public void tearDown() {
+		HibernateContext.close();
+	}
+
+	/**
+	 * The old "AppResource" behavior... a brand new Configuration, ServiceRegistry and SessionFactory (including Hibernate 
+	 * Search bootstrapping) for a single lookup.
+	 */
+	@Benchmark
+	public App perRequestSessionFactory() {
+		Configuration configuration = HibernateContext.buildConfiguration(overrides);
+		ServiceRegistry serviceRegistry = new ServiceRegistryBuilder().applySettings(configuration.getProperties()).buildServiceRegistry();
+		SessionFactory sessionFactory = configuration.buildSessionFactory(serviceRegistry);
+		Session session = sessionFactory.openSession();
+		session.beginTransaction();
+		Criteria criteria = session.createCriteria(App.class);
+		criteria.add( Restrictions.eq("id", appId) );
+		criteria.setFetchMode("supportedDevices", FetchMode.SELECT);
+		criteria.setFetchMode("customerReviews", FetchMode.SELECT);
+		App app = (App) criteria.uniqueResult();
+		session.getTransaction().commit();
+		session.close();
+		sessionFactory.close();
+		return app;
+	}
+
+	/**
+	 * The current "AppResource" behavior, borrowing a session from the shared SessionFactory.
+	 */
+	@Benchmark
+	public App sharedSessionFactory() {
+		return appResource.getAppData(appId);
+	}
+
+}
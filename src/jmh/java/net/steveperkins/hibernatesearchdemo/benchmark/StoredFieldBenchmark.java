@@ -0,0 +1,149 @@
+package net.steveperkins.hibernatesearchdemo.benchmark;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.steveperkins.hibernatesearchdemo.domain.App;
+import net.steveperkins.hibernatesearchdemo.search.AppSearchHit;
+import net.steveperkins.hibernatesearchdemo.search.SearchHitProjection;
+import net.steveperkins.hibernatesearchdemo.util.HibernateContext;
+
+import org.apache.lucene.analysis.KeywordAnalyzer;
+import org.apache.lucene.document.CompressionTools;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.hibernate.search.indexes.IndexReaderAccessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares projecting a page of search hits from stored fields kept compressed (Store.COMPRESS, as the tutorial code 
+ * did) against the same fields stored plainly, with "SearchHitProjection" doing the projection either way.
+ * 
+ * The stored values are copied from the App index of a synthetic catalog (see CatalogFixture) into one in-memory 
+ * index per storage mode, laid out like an App document.  Only the storage of "name", "description" and "image" 
+ * differs between the two.  The size of each index's stored fields is logged at setup, since compression is meant to 
+ * trade projection time for index size.
+ * 
+ *     mvn -P benchmark test-compile exec:exec -Djmh.args="StoredField"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx2g", "--add-opens=java.base/java.lang=ALL-UNNAMED" })
+public class StoredFieldBenchmark {
+
+	private static Logger logger = LoggerFactory.getLogger(StoredFieldBenchmark.class);
+
+	private static final int PAGE_SIZE = 5;
+
+	@Param({ "10000" })
+	public int catalogSize;
+
+	@Param({ "compress", "plain" })
+	public String storeMode;
+
+	private RAMDirectory directory;
+
+	private IndexReader reader;
+
+	private int[] docs;
+
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		CatalogFixture.open(catalogSize);
+		directory = new RAMDirectory();
+		IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(Version.LUCENE_36, new KeywordAnalyzer()));
+		IndexReaderAccessor readerAccessor = HibernateContext.getSearchFactory().getIndexReaderAccessor();
+		IndexReader catalog = readerAccessor.open(App.class);
+		try {
+			for(int doc = 0; doc < catalog.maxDoc(); doc++) {
+				if(catalog.isDeleted(doc)) {
+					continue;
+				}
+				AppSearchHit hit = SearchHitProjection.load(catalog, doc);
+				Document document = new Document();
+				document.add(new Field("_hibernate_class", App.class.getName(), Field.Store.YES, Field.Index.NOT_ANALYZED));
+				document.add(new Field("id", hit.getId().toString(), Field.Store.YES, Field.Index.NOT_ANALYZED));
+				addStored(document, "name", hit.getName());
+				addStored(document, "description", hit.getDescription());
+				addStored(document, "image", hit.getImage());
+				document.add(new Field("supportedDevices.id", "1", Field.Store.YES, Field.Index.NOT_ANALYZED));
+				writer.addDocument(document);
+			}
+		} finally {
+			readerAccessor.close(catalog);
+			CatalogFixture.close();
+		}
+		writer.forceMerge(1);
+		writer.close();
+		reader = IndexReader.open(directory);
+		long storedBytes = 0;
+		for(String file : directory.listAll()) {
+			if(file.endsWith(".fdt")) {
+				storedBytes += directory.fileLength(file);
+			}
+		}
+		logger.info("Stored fields (" + storeMode + ") take " + (storedBytes / 1024) + " KB for " + reader.numDocs() + " apps");
+		
+		// The same pseudo-random pages of hits for each storage mode
+		Random random = new Random(42);
+		docs = new int[4096 * PAGE_SIZE];
+		for(int index = 0; index < docs.length; index++) {
+			docs[index] = random.nextInt(reader.maxDoc());
+		}
+	}
+
+	private void addStored(Document document, String name, String value) {
+		if(value == null) {
+			return;
+		}
+		if("compress".equals(storeMode)) {
+			document.add(new Field(name, CompressionTools.compressString(value)));
+		} else {
+			document.add(new Field(name, value, Field.Store.YES, Field.Index.NO));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		reader.close();
+		directory.close();
+	}
+
+	/**
+	 * Projects one page of hits, as a search does after collecting them.
+	 */
+	@Benchmark
+	public void projectPage(Blackhole blackhole) throws IOException {
+		for(int index = 0; index < PAGE_SIZE; index++) {
+			blackhole.consume(SearchHitProjection.load(reader, docs[next]));
+			next = (next + 1) % docs.length;
+		}
+	}
+
+}
@@ -1,6 +1,7 @@
 package net.steveperkins.hibernatesearchdemo.domain;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.Date;
 import java.util.Set;
 
@@ -14,7 +15,11 @@ import javax.persistence.Id;
 import javax.persistence.ManyToMany;
 
 import net.steveperkins.hibernatesearchdemo.util.DeviceFilterFactory;
+import net.steveperkins.hibernatesearchdemo.util.EpochDayBridge;
 import net.steveperkins.hibernatesearchdemo.util.IndexWhenActiveInterceptor;
+import net.steveperkins.hibernatesearchdemo.util.ReviewSample;
+import net.steveperkins.hibernatesearchdemo.util.ReviewStatisticsBridge;
+import net.steveperkins.hibernatesearchdemo.util.StoredStringBridge;
 
 import org.apache.solr.analysis.HTMLStripCharFilterFactory;
 import org.apache.solr.analysis.PhoneticFilterFactory;
@@ -29,8 +34,11 @@ import org.hibernate.search.annotations.Analyzer;
 import org.hibernate.search.annotations.AnalyzerDef;
 import org.hibernate.search.annotations.CharFilterDef;
 import org.hibernate.search.annotations.Boost;
+import org.hibernate.search.annotations.ClassBridge;
 import org.hibernate.search.annotations.DateBridge;
 import org.hibernate.search.annotations.Field;
+import org.hibernate.search.annotations.FieldBridge;
+import org.hibernate.search.annotations.FilterCacheModeType;
 import org.hibernate.search.annotations.Fields;
 import org.hibernate.search.annotations.FullTextFilterDefs;
 import org.hibernate.search.annotations.FullTextFilterDef;
@@ -39,7 +47,6 @@ import org.hibernate.search.annotations.IndexedEmbedded;
 import org.hibernate.search.annotations.NumericField;
 import org.hibernate.search.annotations.Parameter;
 import org.hibernate.search.annotations.Resolution;
-import org.hibernate.search.annotations.Store;
 import org.hibernate.search.annotations.TokenFilterDef;
 import org.hibernate.search.annotations.TokenizerDef;
 
@@ -58,6 +65,10 @@ import org.hibernate.search.annotations.TokenizerDef;
  * 
  * The @Boost annotation automatically gives this class twice the default weight, when calculating the 
  * relevence of search results.
+ * 
+ * The @ClassBridge annotation adds fields computed from the App as a whole, rather than from any one property.  Here 
+ * it indexes each app's average rating and number of customer reviews, for sorting by them (see 
+ * "ReviewStatisticsBridge").
  */
 @Entity
 @Indexed(interceptor=IndexWhenActiveInterceptor.class)
@@ -77,8 +88,9 @@ import org.hibernate.search.annotations.TokenizerDef;
 	}
 )
 @Boost(2.0f)
+@ClassBridge(name="reviewStatistics", impl=ReviewStatisticsBridge.class)
 @FullTextFilterDefs({
-	@FullTextFilterDef(name="deviceName", impl=DeviceFilterFactory.class)
+	@FullTextFilterDef(name="deviceName", impl=DeviceFilterFactory.class, cache=FilterCacheModeType.INSTANCE_ONLY)
 })
 public class App implements Serializable {
 
@@ -102,10 +114,14 @@ public class App implements Serializable {
 	 * 
 	 * The field-level @Boost annotation gives this field even more weight in calculations of search result 
 	 * relevance.  The 1.5 value here is cumulative with the 2.0 weight already placed on the class itself above.
+	 * 
+	 * The analyzed field is also stored in the index, so that search results can be shown without a database query.  
+	 * Whether it's stored plainly or compressed is up to the "index.store.name" setting (see StoredStringBridge).
 	 */
 	@Column
 	@Fields({
-		@Field(store=Store.COMPRESS),
+		@Field(bridge=@FieldBridge(impl=StoredStringBridge.class, params={
+				@Parameter(name="setting", value="index.store.name"), @Parameter(name="default", value="plain") })),
 		@Field(name="sorting_name", analyze=Analyze.NO)
 	})
 	@Boost(1.5f)
@@ -120,9 +136,12 @@ public class App implements Serializable {
 	 * 
 	 * The field-level @Boost annotation gives this field even more weight in calculations of search result 
 	 * relevance.  The 1.2 value here is cumulative with the 2.0 weight already placed on the class itself above.
+	 * 
+	 * Like the name, the description is stored plainly or compressed according to "index.store.description".
 	 */
 	@Column(length = 1000)
-	@Field(store=Store.COMPRESS)
+	@Field(bridge=@FieldBridge(impl=StoredStringBridge.class, params={
+			@Parameter(name="setting", value="index.store.description"), @Parameter(name="default", value="plain") }))
 	@Analyzer(definition="appAnalyzer")
 	@Boost(1.2f)
 	private String description;
@@ -133,16 +152,18 @@ public class App implements Serializable {
 
 	/**
 	 * The filename of an image to be associated with this application.  The file is expected in exist 
-	 * under "images/apps/<image>".  This variable is NOT annotated with @Field, because we don't intend to search 
-	 * for App's by the image filenames.
+	 * under "images/apps/<image>".  It's stored in the index for search results to show, plainly or compressed 
+	 * according to "index.store.image".
 	 */
 	@Column
-	@Field(store=Store.COMPRESS)
+	@Field(bridge=@FieldBridge(impl=StoredStringBridge.class, params={
+			@Parameter(name="setting", value="index.store.image"), @Parameter(name="default", value="plain") }))
 	private String image;
 	
 	/**
 	 * The retail price for the app.  The @NumericField annotation tells Hibernate Search to index this field using
-	 * a specialized Lucene data structure (rather than a string), to make sorting and range queries more efficient.
+	 * a specialized Lucene data structure (rather than a string), to make sorting and range queries more efficient.  
+	 * The price facet and the sorts by price both read it that way.
 	 */
 	@Column
 	@Field
@@ -159,9 +180,14 @@ public class App implements Serializable {
 	 * The release date for the app.  The optional @DateBridge annotation uses its "resolution" element to declare 
 	 * that this date should only be indexed down to the day level... rather than the default behavior of storing 
 	 * a timestamp all the way down to the exact millisecond.
+	 * 
+	 * The date is indexed a second time as a number of days, for the "newest first" sort (see EpochDayBridge).
 	 */
 	@Column
-	@Field
+	@Fields({
+		@Field,
+		@Field(name="sorting_releaseDate", analyze=Analyze.NO, bridge=@FieldBridge(impl=EpochDayBridge.class))
+	})
 	@DateBridge(resolution=Resolution.DAY)
 	private Date releaseDate;
 
@@ -204,13 +230,11 @@ public class App implements Serializable {
 	 * mentioned in the comments for "supportedDevices", in a larger-scale application you might refactor away from the need 
 	 * to use "eager" fetching.
 	 * 
-	 * The @IndexEmbedded annotation here uses the optional "includePaths" element to restrict which embedded object fields
-	 * will be indexed with the container entity.  In other words, we don't care about including the "username" property of 
-	 * CustomerReview in the Lucene index for App. 
+	 * The reviews aren't indexed from this field directly, because a popular app could have far too many of them for one 
+	 * document.  A bounded sample of them is indexed instead (see "getIndexedReviews()").
 	 */
 	@ElementCollection(fetch=FetchType.EAGER)
 	@Fetch(FetchMode.SELECT)
-	@IndexedEmbedded(depth=1, includePaths = { "stars", "comments" })
 	private Set<CustomerReview> customerReviews;
 
 	/**
@@ -305,6 +329,21 @@ public class App implements Serializable {
 		this.customerReviews = customerReviews;
 	}
 
+	/**
+	 * The customer reviews indexed with this app:  at most "reviews.index.maxReviews" of them, picked by the policy in 
+	 * "reviews.index.sample" (see "ReviewSample").  Hibernate Search reads the @IndexedEmbedded annotation on this 
+	 * getter, and the "prefix" element keeps the field names as they were when every review was indexed (e.g. 
+	 * "customerReviews.comments").  As before, the "includePaths" element leaves out the "username" property.
+	 * 
+	 * The getter is private because it's only there for Hibernate Search.  Hibernate itself maps this class by its 
+	 * fields, and ignores it... and so does the JSON mapping of the app details service.
+	 */
+	@SuppressWarnings("unused")
+	@IndexedEmbedded(depth=1, prefix="customerReviews.", includePaths = { "stars", "comments" })
+	private Collection<CustomerReview> getIndexedReviews() {
+		return ReviewSample.select(customerReviews);
+	}
+
 	public Date getReleaseDate() {
 		return releaseDate;
 	}
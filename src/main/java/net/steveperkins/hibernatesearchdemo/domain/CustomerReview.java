@@ -1,5 +1,6 @@
 package net.steveperkins.hibernatesearchdemo.domain;
 
+import javax.persistence.Column;
 import javax.persistence.Embeddable;
 
 import net.steveperkins.hibernatesearchdemo.util.FiveStarBoostStrategy;
@@ -33,6 +34,11 @@ import org.hibernate.search.annotations.TokenizerDef;
  * 
  * The @DynamicBoost annotation dynamically sets a relevance weight for objects of this class at runtime, using 
  * the FiveStarBoostStrategy class.
+ * 
+ * Reviews are compared by value (see "equals()" and "hashCode()"), because Hibernate tracks changes to a set of 
+ * embedded objects by comparing it with a snapshot of copies.  With the default identity comparison, no copy equals 
+ * its original... so adding one review to an app would delete and reinsert every review it already had.  Compared 
+ * by value, only the new review's row is inserted.
  */
 @Embeddable
 @AnalyzerDef(
@@ -51,7 +57,12 @@ public class CustomerReview {
 	 * The username of the person submitting the review.  The @Column annotation is unnecessary for embeddable objects, 
 	 * but the Hibernate Search @Field annotation is still used to map the field in the Lucene index for any containing 
 	 * entity (e.g. App).
+	 * 
+	 * The table of a set of embedded objects has a primary key made of all its non-nullable columns.  So the username 
+	 * and comments are declared as not nullable, for the key to cover the whole review... otherwise an app couldn't 
+	 * have two reviews with the same number of stars.
 	 */	
+	@Column(nullable=false)
 	@Field
 	private String username;
 	
@@ -70,6 +81,7 @@ public class CustomerReview {
 	 * 
 	 * The @Analyzer annotation actually applies the custom analyzer defined above.
 	 */	
+	@Column(nullable=false, length=1000)
 	@Field
 	@Analyzer(definition="customerReviewAnalyzer")
 	private String comments;
@@ -116,5 +128,27 @@ public class CustomerReview {
 	public void setComments(String comments) {
 		this.comments = comments;
 	}
+
+	@Override
+	public boolean equals(Object other) {
+		if(this == other) {
+			return true;
+		}
+		if(!(other instanceof CustomerReview)) {
+			return false;
+		}
+		CustomerReview review = (CustomerReview) other;
+		return stars == review.stars 
+				&& (username == null ? review.username == null : username.equals(review.username)) 
+				&& (comments == null ? review.comments == null : comments.equals(review.comments));
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = stars;
+		hash = 31 * hash + (username == null ? 0 : username.hashCode());
+		hash = 31 * hash + (comments == null ? 0 : comments.hashCode());
+		return hash;
+	}
 	
 }
@@ -65,8 +65,12 @@ public class Device implements Serializable {
 	 *      entity.  Here, the "mappedBy" element tells core Hibernate which App member variable (i.e. App.supportedDevices)
 	 *      references this entity.
 	 * 
-	 *      The "fetch" and "cascade" elements are set the same as with App.supportedDevices, and for the same reasons.
-	 *      See the source code comments in App.java for more detail.
+	 *      The "cascade" element is set the same as with App.supportedDevices, and for the same reasons.  See the source 
+	 *      code comments in App.java for more detail.  The "fetch" element, however, is "lazy".  Nothing in the view 
+	 *      layer reads this side of the relationship, and with "eager" fetching every App loaded would drag in each of 
+	 *      its devices... and in turn every other app supported on those devices.  With a large catalog, loading a 
+	 *      single app would load nearly the whole catalog (which made rebuilding the index with the MassIndexer 
+	 *      impossibly slow).
 	 * 
 	 * The Hibernate Search @ContainedIn annotation serves as the counterpart to @IndexedEmbedded (applied 
 	 * to App.supportedDevices).  This tells Hibernate Search to include information about contained devices in the 
@@ -78,7 +82,7 @@ public class Device implements Serializable {
 	 * back to the same "App", and so on indefinitely.  With this annotation, "Device.supportedApps" simply isn't 
 	 * converted... which breaks the circular dependency, and doesn't cause problems on the search results JSP anyway.
 	 */
-	@ManyToMany(mappedBy="supportedDevices", fetch=FetchType.EAGER, cascade = { CascadeType.ALL })
+	@ManyToMany(mappedBy="supportedDevices", fetch=FetchType.LAZY, cascade = { CascadeType.ALL })
 	@ContainedIn
 	@JsonIgnore
 	private Set<App> supportedApps;
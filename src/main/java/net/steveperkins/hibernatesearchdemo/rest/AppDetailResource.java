@@ -0,0 +1,125 @@
+package net.steveperkins.hibernatesearchdemo.rest;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import net.steveperkins.hibernatesearchdemo.domain.CustomerReview;
+import net.steveperkins.hibernatesearchdemo.search.AppDetail;
+import net.steveperkins.hibernatesearchdemo.util.HibernateContext;
+import net.steveperkins.hibernatesearchdemo.util.PhaseTimer;
+
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A JAX-RS RESTful service for fetching the full details of an app, for the "Full Details" dialog of the search page.
+ * The full path looks like:  http://localhost:8080/rest/appDetail/1?firstReview=0&maxReviews=10.
+ *
+ * Loading an App entity (as "AppResource" does) loads its whole object graph:  App's devices and reviews are both
+ * fetched eagerly, so one app with a hundred thousand reviews means a hundred thousand rows read and turned into
+ * objects, only for the JSON to be thrown away after the first few.  Instead, this service asks the database for
+ * exactly what the dialog shows, in at most three queries, none of which loads an entity:
+ *
+ *     1. The app's own columns, joined with the manufacturer and name of each of its devices (one row per device).
+ *     2. The number of the app's reviews and their average stars (one row).
+ *     3. One page of the app's reviews, of at most "maxReviews" (skipped when there are no reviews on the page).
+ *
+ * So a request reads no more than one row per device, plus one, plus "maxReviews" rows, however many reviews the app
+ * has.  The result is a flat "AppDetail" object.  Each query is timed into the "appDetail.*" latency metrics (see
+ * "LatencyMetrics").  An unknown app ID gets "404 Not Found".
+ */
+@Path("/appDetail/{appId}")
+@Produces(MediaType.APPLICATION_JSON)
+public class AppDetailResource {
+
+	private static final int MAX_PAGE_SIZE = 100;
+
+	Logger logger = LoggerFactory.getLogger(AppDetailResource.class);
+
+	@GET
+	public AppDetail getAppDetail(
+			@PathParam("appId") Long appId,
+			@QueryParam("firstReview") @DefaultValue("0") int firstReview,
+			@QueryParam("maxReviews") @DefaultValue("10") int maxReviews ) {
+		if(firstReview < 0 || maxReviews < 1 || maxReviews > MAX_PAGE_SIZE) {
+			throw new WebApplicationException(Response.status(Response.Status.BAD_REQUEST).type(MediaType.TEXT_PLAIN)
+					.entity("firstReview must not be negative, and maxReviews must be between 1 and " + MAX_PAGE_SIZE).build());
+		}
+		PhaseTimer timer = new PhaseTimer("appDetail");
+		Session session = HibernateContext.openSession();
+		try {
+			session.beginTransaction();
+			timer.mark("sessionOpen");
+
+			// The app and its device names, as plain columns.  A left join, so that an app without devices still has its row.
+			List<?> appRows = session.createQuery("select app.id, app.name, app.description, app.image, app.category, "
+						+ "app.price, app.releaseDate, device.manufacturer, device.name "
+						+ "from App app left join app.supportedDevices device where app.id = :appId order by device.name")
+					.setParameter("appId", appId)
+					.setReadOnly(true)
+					.list();
+			timer.mark("app");
+			if(appRows.isEmpty()) {
+				throw new WebApplicationException(Response.Status.NOT_FOUND);
+			}
+			List<String> supportedDevices = new ArrayList<String>();
+			for(Object appRow : appRows) {
+				Object[] columns = (Object[]) appRow;
+				if(columns[8] != null) {
+					supportedDevices.add(columns[7] == null ? (String) columns[8] : columns[7] + " " + columns[8]);
+				}
+			}
+
+			// The count and average of all the reviews, worked out by the database rather than by loading them
+			Object[] statistics = (Object[]) session.createQuery("select count(*), avg(review.stars) "
+						+ "from App app join app.customerReviews review where app.id = :appId")
+					.setParameter("appId", appId)
+					.uniqueResult();
+			int reviewCount = ((Long) statistics[0]).intValue();
+			float rating = statistics[1] == null ? 0f : ((Number) statistics[1]).floatValue();
+			timer.mark("reviewStatistics");
+
+			// One page of reviews, in a stable order so that pages don't overlap
+			List<CustomerReview> customerReviews = new ArrayList<CustomerReview>();
+			if(firstReview < reviewCount) {
+				List<?> reviewRows = session.createQuery("select review.username, review.stars, review.comments "
+							+ "from App app join app.customerReviews review where app.id = :appId "
+							+ "order by length(review.comments) desc, review.stars desc, review.username, review.comments")
+						.setParameter("appId", appId)
+						.setFirstResult(firstReview)
+						.setMaxResults(maxReviews)
+						.setReadOnly(true)
+						.list();
+				for(Object reviewRow : reviewRows) {
+					Object[] columns = (Object[]) reviewRow;
+					customerReviews.add(new CustomerReview((String) columns[0], (Integer) columns[1], (String) columns[2]));
+				}
+				timer.mark("reviews");
+			}
+			session.getTransaction().commit();
+
+			Object[] app = (Object[]) appRows.get(0);
+			return new AppDetail((Long) app[0], (String) app[1], (String) app[2], (String) app[3], (String) app[4],
+					(Float) app[5], (Date) app[6], supportedDevices, reviewCount, rating, firstReview, customerReviews);
+		} finally {
+			if(session.getTransaction().isActive()) {
+				session.getTransaction().rollback();
+			}
+			session.close();
+			timer.stop();
+		}
+	}
+
+}
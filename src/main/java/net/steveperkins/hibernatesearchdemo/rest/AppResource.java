@@ -7,23 +7,22 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
 
 import net.steveperkins.hibernatesearchdemo.domain.App;
+import net.steveperkins.hibernatesearchdemo.util.HibernateContext;
+import net.steveperkins.hibernatesearchdemo.util.PhaseTimer;
 
 import org.hibernate.Criteria;
 import org.hibernate.FetchMode;
 import org.hibernate.Session;
-import org.hibernate.SessionFactory;
-import org.hibernate.cfg.Configuration;
 import org.hibernate.criterion.Restrictions;
-import org.hibernate.service.ServiceRegistry;
-import org.hibernate.service.ServiceRegistryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * A JAX-RS RESTful service for fetching an App entity by its ID.  Thanks to this service, the search 
- * servlet can use projection-based search queries against the Lucene index alone... only hitting the 
- * database when the "Full Details" button is clicked for a particular app.  That button triggers an 
- * AJAX request for this service, and this service returns an App entity formatted as a JSON object.
+ * A JAX-RS RESTful service for fetching an App entity by its ID, formatted as a JSON object.
+ * 
+ * The "Full Details" button of the search page used to call this service.  But returning the entity means loading its 
+ * whole object graph, every customer review included... so the button now calls "AppDetailResource", which loads only 
+ * what the dialog shows.  This service remains for API clients that expect the entity.
  * 
  * The "RestfulApplication" class in this package registers this service and makes it available for use.
  * 
@@ -44,13 +43,14 @@ public class AppResource {
 	 */
 	@GET
 	public App getAppData( @PathParam("appId") Long appId ) {
-		// Initialize Hibernate
-		Configuration configuration = new Configuration();
-		configuration.configure();
-		ServiceRegistry serviceRegistry = new ServiceRegistryBuilder().applySettings(configuration.getProperties()).buildServiceRegistry();
-		SessionFactory sessionFactory = configuration.buildSessionFactory(serviceRegistry);
-		Session session = sessionFactory.openSession();
+		// Time each phase of the request, recording the latencies under "appById.*" (see LatencyMetrics)
+		PhaseTimer timer = new PhaseTimer("appById");
+		
+		// Borrow a session from the shared SessionFactory, rather than bootstrapping Hibernate (and Hibernate Search) 
+		// all over again for every request
+		Session session = HibernateContext.openSession();
 		session.beginTransaction();
+		timer.mark("sessionOpen");
 		
 		// Fetch an App for the given ID, using eager fetching.  The conversion to JSON happens after the 
 		// Hibernate Session is closed... so if lazy fetching were used, then the JSON converter would fail 
@@ -60,12 +60,14 @@ public class AppResource {
 		criteria.setFetchMode("supportedDevices", FetchMode.SELECT);
 		criteria.setFetchMode("customerReviews", FetchMode.SELECT);
 		App app = (App) criteria.uniqueResult();
+		timer.mark("load");
 		
 		// Cleanup Hibernate
 		session.getTransaction().commit();
 		session.clear();
 		session.close();
-		sessionFactory.close();
+		timer.mark("sessionClose");
+		timer.stop();
 		
 		return app;
 	}
@@ -0,0 +1,78 @@
+package net.steveperkins.hibernatesearchdemo.rest;
+
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import net.steveperkins.hibernatesearchdemo.search.AppSearchRequest;
+import net.steveperkins.hibernatesearchdemo.search.AppSearchResult;
+import net.steveperkins.hibernatesearchdemo.search.AppSearchService;
+
+import org.hibernate.search.errors.EmptyQueryException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A JAX-RS RESTful service for searching apps, returning one page of results at a time as a JSON object.  The full path
+ * looks like:  http://localhost:8080/rest/search?searchString=frustrated.
+ *
+ * The query parameters are the same as those of the search page ("searchString", "selectedDevice", "selectedCategory",
+ * "selectedPriceRange" and "sortField"), plus "maxResults" for the page size.  Rather than an offset, each page after
+ * the first is requested with the "cursor" parameter, taken from the "nextCursor" property of the previous page.  The
+ * last page has no "nextCursor".  Paging by cursor keeps deep pages as cheap as the first one (see "SearchCursor").
+ *
+ * With "allReviews=true", apps are also matched on the text of all of their customer reviews (see "ReviewIndex"), 
+ * rather than only on the sample of reviews indexed with each app.
+ *
+ * The search itself is performed by "AppSearchService", the same as for the search page.  A missing or blank 
+ * "searchString", or one with nothing left to search for once it's analyzed (e.g. only stop words), gets 
+ * "400 Bad Request".
+ */
+@Path("/search")
+@Produces(MediaType.APPLICATION_JSON)
+public class AppSearchResource {
+
+	private static final int MAX_PAGE_SIZE = 100;
+
+	Logger logger = LoggerFactory.getLogger(AppSearchResource.class);
+
+	@GET
+	public AppSearchResult search(
+			@QueryParam("searchString") @DefaultValue("") String searchString,
+			@QueryParam("selectedDevice") @DefaultValue("all") String selectedDevice,
+			@QueryParam("selectedCategory") @DefaultValue("all") String selectedCategory,
+			@QueryParam("selectedPriceRange") @DefaultValue("all") String selectedPriceRange,
+			@QueryParam("sortField") @DefaultValue("relevance") String sortField,
+			@QueryParam("maxResults") @DefaultValue("10") int maxResults,
+			@QueryParam("cursor") String cursor,
+			@QueryParam("allReviews") @DefaultValue("false") boolean allReviews ) {
+		if(searchString.trim().isEmpty()) {
+			throw badRequest("searchString is required");
+		}
+		if(maxResults < 1 || maxResults > MAX_PAGE_SIZE) {
+			throw badRequest("maxResults must be between 1 and " + MAX_PAGE_SIZE);
+		}
+		AppSearchRequest searchRequest = new AppSearchRequest(searchString.trim(), selectedDevice.trim(), selectedCategory,
+				selectedPriceRange, sortField.trim(), 0, maxResults, cursor == null || cursor.isEmpty() ? null : cursor, allReviews);
+		logger.info("Received JSON search request with " + searchRequest);
+		try {
+			return AppSearchService.getInstance().search(searchRequest);
+		} catch(EmptyQueryException e) {
+			throw badRequest("searchString has no words to search for");
+		} catch(IllegalArgumentException e) {
+			// An invalid cursor, or one from a search with a different sort order
+			throw badRequest(e.getMessage());
+		}
+	}
+
+	private WebApplicationException badRequest(String message) {
+		return new WebApplicationException(
+				Response.status(Response.Status.BAD_REQUEST).type(MediaType.TEXT_PLAIN).entity(message).build());
+	}
+
+}
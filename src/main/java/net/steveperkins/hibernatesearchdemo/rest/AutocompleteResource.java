@@ -0,0 +1,43 @@
+package net.steveperkins.hibernatesearchdemo.rest;
+
+import java.util.List;
+
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import net.steveperkins.hibernatesearchdemo.search.AppNameSuggester;
+
+/**
+ * A JAX-RS RESTful service for completing partially-typed app names, returning a JSON array of names.  The full path
+ * looks like:  http://localhost:8080/rest/autocomplete?term=fru.
+ *
+ * The "term" parameter is the one the jQuery UI autocomplete widget sends, so the search box on the search pages simply
+ * points the widget at this URL.  The optional "maxResults" parameter sets how many names come back.
+ *
+ * The suggestions are served from memory by "AppNameSuggester", never from a search.  That keeps them cheap enough to
+ * request on every keystroke, so nothing is logged per request either.
+ */
+@Path("/autocomplete")
+@Produces(MediaType.APPLICATION_JSON)
+public class AutocompleteResource {
+
+	private static final int MAX_SUGGESTIONS = 20;
+
+	@GET
+	public List<String> autocomplete(
+			@QueryParam("term") @DefaultValue("") String term,
+			@QueryParam("maxResults") @DefaultValue("8") int maxResults ) {
+		if(maxResults < 1 || maxResults > MAX_SUGGESTIONS) {
+			throw new WebApplicationException(Response.status(Response.Status.BAD_REQUEST).type(MediaType.TEXT_PLAIN)
+					.entity("maxResults must be between 1 and " + MAX_SUGGESTIONS).build());
+		}
+		return AppNameSuggester.getInstance().suggest(term, maxResults);
+	}
+
+}
@@ -0,0 +1,30 @@
+package net.steveperkins.hibernatesearchdemo.rest;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import net.steveperkins.hibernatesearchdemo.search.SearchWarmer;
+import net.steveperkins.hibernatesearchdemo.search.WarmupStatus;
+
+/**
+ * A JAX-RS RESTful readiness check, for a load balancer to decide whether to send this node traffic.  The full path 
+ * looks like:  http://localhost:8080/rest/health.
+ * 
+ * An HTTP GET returns "200 OK" once the node has warmed up (see "SearchWarmer"), and "503 Service Unavailable" while 
+ * it's still warming up.  Either way, the body is the warm-up status as JSON, which also reports whether the App index 
+ * is being rebuilt.  A rebuild doesn't take the node out of service, since searches still see every app while it runs.
+ */
+@Path("/health")
+@Produces(MediaType.APPLICATION_JSON)
+public class HealthResource {
+
+	@GET
+	public Response getReadiness() {
+		WarmupStatus status = SearchWarmer.getInstance().getStatus();
+		return Response.status(status.isReady() ? Response.Status.OK : Response.Status.SERVICE_UNAVAILABLE).entity(status).build();
+	}
+
+}
@@ -0,0 +1,60 @@
+package net.steveperkins.hibernatesearchdemo.rest;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import net.steveperkins.hibernatesearchdemo.search.IndexRebuildStatus;
+import net.steveperkins.hibernatesearchdemo.search.IndexRebuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A JAX-RS RESTful admin service for rebuilding the App index in the background (see "IndexRebuilder").  The full path
+ * looks like:  http://localhost:8080/rest/admin/reindex.
+ *
+ * An HTTP POST starts a rebuild, and returns "202 Accepted" along with its initial status.  The optional query
+ * parameters "loaderThreads", "fetchSize" and "batchSize" override the defaults from "vaporware.properties" (e.g.
+ * "/rest/admin/reindex?loaderThreads=8&batchSize=100").  If a rebuild is already running, then the response is
+ * "409 Conflict" along with the status of that rebuild.
+ *
+ * An HTTP GET returns the progress of the running rebuild (or the outcome of the last one), including the throughput
+ * in documents per second and the estimated time remaining.
+ *
+ * The same operations are available through JMX, see "IndexRebuilderMBean".
+ */
+@Path("/admin/reindex")
+@Produces(MediaType.APPLICATION_JSON)
+public class IndexRebuildResource {
+
+	Logger logger = LoggerFactory.getLogger(IndexRebuildResource.class);
+
+	@GET
+	public IndexRebuildStatus getStatus() {
+		return IndexRebuilder.getInstance().getStatus();
+	}
+
+	@POST
+	public Response startRebuild( @QueryParam("loaderThreads") Integer loaderThreads, @QueryParam("fetchSize") Integer fetchSize,
+			@QueryParam("batchSize") Integer batchSize ) {
+		IndexRebuilder rebuilder = IndexRebuilder.getInstance();
+		int threads = loaderThreads != null ? loaderThreads : IndexRebuilder.DEFAULT_LOADER_THREADS;
+		int fetch = fetchSize != null ? fetchSize : IndexRebuilder.DEFAULT_FETCH_SIZE;
+		int batch = batchSize != null ? batchSize : IndexRebuilder.DEFAULT_BATCH_SIZE;
+		if(threads < 1 || fetch < 1 || batch < 1) {
+			return Response.status(Response.Status.BAD_REQUEST).build();
+		}
+
+		if(rebuilder.start(threads, fetch, batch) == null) {
+			logger.info("Index rebuild requested, but one is already running");
+			return Response.status(Response.Status.CONFLICT).entity(rebuilder.getStatus()).build();
+		}
+		return Response.status(Response.Status.ACCEPTED).entity(rebuilder.getStatus()).build();
+	}
+
+}
@@ -0,0 +1,40 @@
+package net.steveperkins.hibernatesearchdemo.rest;
+
+import java.util.List;
+
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import net.steveperkins.hibernatesearchdemo.util.LatencyMetrics;
+import net.steveperkins.hibernatesearchdemo.util.PhaseStatistics;
+
+/**
+ * A JAX-RS RESTful admin service reporting where the time goes when handling requests (see "LatencyMetrics").  The full 
+ * path looks like:  http://localhost:8080/rest/admin/metrics.
+ * 
+ * An HTTP GET returns the count, mean, median (p50), 99th and 99.9th percentile and maximum latency, in microseconds, 
+ * of every phase recorded so far... e.g. "search.luceneQuery" for running a search's Lucene query, or "servlet.render" 
+ * for rendering the search page.  An HTTP DELETE clears the recorded latencies, to start measuring afresh.
+ * 
+ * The same figures are available through JMX, see "LatencyMetricsMXBean".
+ */
+@Path("/admin/metrics")
+@Produces(MediaType.APPLICATION_JSON)
+public class MetricsResource {
+
+	@GET
+	public List<PhaseStatistics> getPhases() {
+		return LatencyMetrics.getInstance().getPhases();
+	}
+
+	@DELETE
+	public Response reset() {
+		LatencyMetrics.getInstance().reset();
+		return Response.noContent().build();
+	}
+
+}
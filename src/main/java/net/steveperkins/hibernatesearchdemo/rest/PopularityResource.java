@@ -0,0 +1,41 @@
+package net.steveperkins.hibernatesearchdemo.rest;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.PUT;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import net.steveperkins.hibernatesearchdemo.search.PopularitySignals;
+
+/**
+ * A JAX-RS RESTful admin service for the popularity signals that boost relevance at query time (see 
+ * "PopularitySignals").  The full path looks like:  http://localhost:8080/rest/admin/popularity.
+ * 
+ * An HTTP GET returns which signal is in use, its weight, and how many apps' signals have been updated since startup.  
+ * An HTTP PUT to "/rest/admin/popularity/{appId}?value=4.5" sets one app's signal (e.g. its average rating, when the 
+ * signal is "rating"), which takes effect from the next search on... without reindexing the app.
+ */
+@Path("/admin/popularity")
+@Produces(MediaType.APPLICATION_JSON)
+public class PopularityResource {
+
+	@GET
+	public PopularitySignals getSignals() {
+		return PopularitySignals.getInstance();
+	}
+
+	@PUT
+	@Path("/{appId}")
+	public Response update( @PathParam("appId") Long appId, @QueryParam("value") Float value ) {
+		if(value == null || value < 0 || value.isNaN() || value.isInfinite()) {
+			return Response.status(Response.Status.BAD_REQUEST).build();
+		}
+		PopularitySignals.getInstance().update(appId, value);
+		return Response.noContent().build();
+	}
+
+}
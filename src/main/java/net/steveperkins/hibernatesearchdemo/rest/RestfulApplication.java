@@ -6,8 +6,12 @@ import com.sun.jersey.api.core.PackagesResourceConfig;
 import com.sun.jersey.api.json.JSONConfiguration;
 
 /**
- * This class ultimately inherits from "javax.ws.rs.core.Application", and registers JAX-RS RESTful services for use.  There 
- * is only one service in this application, see the "AppResource" class.
+ * This class ultimately inherits from "javax.ws.rs.core.Application", and registers JAX-RS RESTful services for use.  See 
+ * the "AppDetailResource" class for fetching an app's full details ("AppResource" for the whole App entity), 
+ * "AppSearchResource" for searching apps, "AutocompleteResource" for completing app names in the search box, 
+ * "HealthResource" for the readiness check, "IndexRebuildResource" for rebuilding the App index, "MetricsResource" for 
+ * request latencies, "PopularityResource" for the signals that boost popular apps, "ReviewResource" for adding and 
+ * searching customer reviews, and "SlowQueryResource" for the log of slow searches.
  * 
  * The @ApplicationPath annotation declares the base path for service URL's.
  */
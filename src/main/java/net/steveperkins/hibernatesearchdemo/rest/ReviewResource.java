@@ -0,0 +1,86 @@
+package net.steveperkins.hibernatesearchdemo.rest;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import net.steveperkins.hibernatesearchdemo.domain.CustomerReview;
+import net.steveperkins.hibernatesearchdemo.search.ReviewIndex;
+import net.steveperkins.hibernatesearchdemo.search.ReviewIngester;
+import net.steveperkins.hibernatesearchdemo.search.ReviewSearchResult;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A JAX-RS RESTful service for adding customer reviews to apps.  The full path looks like:  
+ * http://localhost:8080/rest/reviews/1.
+ * 
+ * An HTTP POST takes a JSON array of reviews for the app, e.g. '[{"username":"fanboy1984","stars":5,"comments":"Wow!"}]', 
+ * and queues them to be written in the background (see "ReviewIngester").  The response is "202 Accepted" once they're 
+ * queued, and they show up in searches within a second or so.  Invalid reviews get "400 Bad Request" (and none of the 
+ * reviews in the request are queued), while a full queue gets "503 Service Unavailable" with a "Retry-After" header.
+ * 
+ * An HTTP GET on "/rest/reviews" returns how many reviews have been queued, written, skipped as duplicates or rejected, 
+ * and in how many batches.
+ * 
+ * An HTTP GET on "/rest/reviews/search?searchString=crash" searches the text of every review (see "ReviewIndex"), 
+ * optionally of one app's reviews only ("appId"), and returns the "maxResults" most relevant.
+ */
+@Path("/reviews")
+@Produces(MediaType.APPLICATION_JSON)
+public class ReviewResource {
+
+	private static final int MAX_PAGE_SIZE = 100;
+
+	Logger logger = LoggerFactory.getLogger(ReviewResource.class);
+
+	@GET
+	public ReviewIngester getStatus() {
+		return ReviewIngester.getInstance();
+	}
+
+	@GET
+	@Path("/search")
+	public ReviewSearchResult search(
+			@QueryParam("searchString") @DefaultValue("") String searchString,
+			@QueryParam("appId") Long appId,
+			@QueryParam("maxResults") @DefaultValue("10") int maxResults ) throws IOException {
+		if(maxResults < 1 || maxResults > MAX_PAGE_SIZE) {
+			throw new WebApplicationException(Response.status(Response.Status.BAD_REQUEST).type(MediaType.TEXT_PLAIN)
+					.entity("maxResults must be between 1 and " + MAX_PAGE_SIZE).build());
+		}
+		logger.info("Received review search request with searchString [" + searchString + "] and appId [" + appId + "]");
+		return ReviewIndex.getInstance().search(searchString, appId, maxResults);
+	}
+
+	@POST
+	@Path("/{appId}")
+	@Consumes(MediaType.APPLICATION_JSON)
+	public Response append( @PathParam("appId") Long appId, List<CustomerReview> reviews ) {
+		if(reviews == null) {
+			return Response.status(Response.Status.BAD_REQUEST).build();
+		}
+		try {
+			if(!ReviewIngester.getInstance().append(appId, reviews)) {
+				logger.debug("Review queue is full, turning away " + reviews.size() + " reviews for app " + appId);
+				return Response.status(Response.Status.SERVICE_UNAVAILABLE).header("Retry-After", "1").build();
+			}
+		} catch(IllegalArgumentException e) {
+			return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).type(MediaType.TEXT_PLAIN).build();
+		}
+		return Response.status(Response.Status.ACCEPTED).build();
+	}
+
+}
@@ -0,0 +1,38 @@
+package net.steveperkins.hibernatesearchdemo.rest;
+
+import java.util.List;
+
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import net.steveperkins.hibernatesearchdemo.search.SlowQuery;
+import net.steveperkins.hibernatesearchdemo.search.SlowQueryLog;
+
+/**
+ * A JAX-RS RESTful admin service for the log of slow searches (see "SlowQueryLog").  The full path looks like:  
+ * http://localhost:8080/rest/admin/slow-queries.
+ * 
+ * An HTTP GET returns the most recent slow searches, newest first... each with its parameters, the rewritten Lucene 
+ * query, how its top hits were scored, its phase timings, and whether it ran out of time and returned partial results.  
+ * An HTTP DELETE clears the log.
+ */
+@Path("/admin/slow-queries")
+@Produces(MediaType.APPLICATION_JSON)
+public class SlowQueryResource {
+
+	@GET
+	public List<SlowQuery> getSlowQueries() {
+		return SlowQueryLog.getInstance().getEntries();
+	}
+
+	@DELETE
+	public Response clear() {
+		SlowQueryLog.getInstance().clear();
+		return Response.noContent().build();
+	}
+
+}
@@ -0,0 +1,123 @@
+package net.steveperkins.hibernatesearchdemo.search;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import net.steveperkins.hibernatesearchdemo.domain.CustomerReview;
+
+/**
+ * The full details of one app, as shown by the "Full Details" dialog of the search page:  its own properties, the
+ * names of the devices it runs on, its rating and number of reviews, and one page of its reviews.
+ *
+ * Like "AppSearchHit", this is a flat object built from exactly the columns it needs (see "AppDetailResource"), rather
+ * than an App entity... whose eager collections would load every one of its reviews, and whose devices would be full
+ * entities with associations of their own.
+ */
+public class AppDetail {
+
+	private final Long id;
+
+	private final String name;
+
+	private final String description;
+
+	private final String image;
+
+	private final String category;
+
+	private final float price;
+
+	private final Date releaseDate;
+
+	private final List<String> supportedDevices;
+
+	private final int reviewCount;
+
+	private final float rating;
+
+	private final int firstReview;
+
+	private final List<CustomerReview> customerReviews;
+
+	public AppDetail(Long id, String name, String description, String image, String category, float price, Date releaseDate,
+			List<String> supportedDevices, int reviewCount, float rating, int firstReview, List<CustomerReview> customerReviews) {
+		this.id = id;
+		this.name = name;
+		this.description = description;
+		this.image = image;
+		this.category = category;
+		this.price = price;
+		this.releaseDate = releaseDate;
+		this.supportedDevices = Collections.unmodifiableList(supportedDevices);
+		this.reviewCount = reviewCount;
+		this.rating = rating;
+		this.firstReview = firstReview;
+		this.customerReviews = Collections.unmodifiableList(customerReviews);
+	}
+
+	//
+	// GETTERS
+	//
+
+	public Long getId() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	public String getImage() {
+		return image;
+	}
+
+	public String getCategory() {
+		return category;
+	}
+
+	public float getPrice() {
+		return price;
+	}
+
+	public Date getReleaseDate() {
+		return releaseDate;
+	}
+
+	/**
+	 * @return the devices the app runs on, each as its manufacturer and name (e.g. "Orange xPhone"), sorted by name
+	 */
+	public List<String> getSupportedDevices() {
+		return supportedDevices;
+	}
+
+	public int getReviewCount() {
+		return reviewCount;
+	}
+
+	/**
+	 * @return the average stars of all of the app's reviews, or zero if it has none
+	 */
+	public float getRating() {
+		return rating;
+	}
+
+	/**
+	 * @return the position of the first review in "customerReviews" among all of the app's reviews
+	 */
+	public int getFirstReview() {
+		return firstReview;
+	}
+
+	/**
+	 * @return one page of the app's reviews, the most detailed (i.e. longest) first
+	 */
+	public List<CustomerReview> getCustomerReviews() {
+		return customerReviews;
+	}
+
+}
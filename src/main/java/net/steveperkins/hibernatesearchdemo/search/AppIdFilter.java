@@ -0,0 +1,45 @@
+package net.steveperkins.hibernatesearchdemo.search;
+
+import java.io.IOException;
+import java.util.Collection;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.OpenBitSet;
+
+/**
+ * Matches the App documents with the given ID's, by looking each one up on the "id" field.  Unlike a query with one
+ * clause per ID, there's no limit on how many ID's it can hold (see "AppSearchService", which uses it for the apps
+ * found through the review index).
+ */
+public class AppIdFilter extends Filter {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Collection<Long> appIds;
+
+	public AppIdFilter(Collection<Long> appIds) {
+		this.appIds = appIds;
+	}
+
+	@Override
+	public DocIdSet getDocIdSet(IndexReader segmentReader) throws IOException {
+		OpenBitSet docs = new OpenBitSet(segmentReader.maxDoc());
+		TermDocs termDocs = segmentReader.termDocs();
+		try {
+			for(Long appId : appIds) {
+				termDocs.seek(new Term("id", appId.toString()));
+				while(termDocs.next()) {
+					docs.set(termDocs.doc());
+				}
+			}
+		} finally {
+			termDocs.close();
+		}
+		return docs;
+	}
+
+}
@@ -0,0 +1,352 @@
+package net.steveperkins.hibernatesearchdemo.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import net.steveperkins.hibernatesearchdemo.domain.App;
+import net.steveperkins.hibernatesearchdemo.util.HibernateContext;
+import net.steveperkins.hibernatesearchdemo.util.Settings;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.search.spell.TermFreqIterator;
+import org.apache.lucene.search.suggest.Lookup.LookupResult;
+import org.apache.lucene.search.suggest.fst.WFSTCompletionLookup;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.ReaderUtil;
+import org.hibernate.search.indexes.IndexReaderAccessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Completes partially-typed app names, for the typeahead on the search box (see "AutocompleteResource").
+ *
+ * Suggestions come from a weighted FST (finite state transducer), a compact automaton in which every name sharing a
+ * prefix shares the same path.  Looking up a prefix just walks that path and follows the heaviest branches below it,
+ * without touching the Lucene index or the database, so a lookup takes a few microseconds.  Each name is entered once
+ * from its start and once from the start of each later word, so that "rea" suggests "E-Book Reader" too.  A name is
+ * weighted by how many apps carry it, and matches from the start of a name outrank matches on a later word.
+ *
+ * The names are read from the un-analyzed "sorting_name" field of the App index, so they always agree with what a
+ * search can find.  Inactive apps are never indexed (see "IndexWhenActiveInterceptor"), which means they drop out of
+ * the suggestions along with their documents.  A background thread checks the index for changes every
+ * "autocomplete.refreshMillis", and when it has changed, swaps in a freshly built FST.  The counting is incremental...
+ * the name counts for each index segment are kept, and only new segments (or those with new deletions) are read again.
+ * Only the FST itself, which can't be modified once built, is rebuilt from the merged counts.
+ */
+public class AppNameSuggester {
+
+	private static final String NAME_FIELD = "sorting_name";
+
+	/**
+	 * Separates the part of a suggestion key that's matched against the prefix from the full name it stands for.  It
+	 * sorts below every printable character, so it never interferes with a prefix match.
+	 */
+	private static final char KEY_SEPARATOR = '\u001F';
+
+	private static final AppNameSuggester instance = new AppNameSuggester(Settings.getLong("autocomplete.refreshMillis", 1000));
+
+	private static Logger logger = LoggerFactory.getLogger(AppNameSuggester.class);
+
+	private final long refreshMillis;
+
+	/**
+	 * Name counts per segment, keyed on the segment's core cache key.  Only accessed from the refresh thread (or from
+	 * "refresh()" while the thread isn't running), and synchronized on "this".
+	 */
+	private final Map<Object, SegmentNames> segments = new WeakHashMap<Object, SegmentNames>();
+
+	private volatile Suggestions suggestions = Suggestions.EMPTY;
+
+	private volatile boolean running;
+
+	private Thread refresher;
+
+	public AppNameSuggester(long refreshMillis) {
+		this.refreshMillis = refreshMillis;
+	}
+
+	/**
+	 * @return the shared suggester used by the autocomplete endpoint
+	 */
+	public static AppNameSuggester getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Builds the suggestions from the current index, and starts the background thread that keeps them up to date.
+	 */
+	public synchronized void start() {
+		if(running) {
+			return;
+		}
+		refresh();
+		running = true;
+		refresher = new Thread(new Runnable() {
+			public void run() {
+				refreshLoop();
+			}
+		}, "autocomplete-refresh");
+		refresher.setDaemon(true);
+		refresher.start();
+	}
+
+	/**
+	 * Stops the background thread, waiting for a refresh in progress to finish.
+	 */
+	public void stop() {
+		running = false;
+		Thread thread = refresher;
+		if(thread != null) {
+			try {
+				// Not interrupted, for the same reason as the batching backend's flusher:  interrupting a thread that's
+				// reading a memory-mapped or NIO index would close the index files underneath it
+				thread.join(refreshMillis * 10);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Returns up to "count" app names completing the given prefix (case-insensitive), most common names first.
+	 */
+	public List<String> suggest(String prefix, int count) {
+		String key = normalize(prefix);
+		Suggestions current = suggestions;
+		if(key.isEmpty() || current.lookup == null) {
+			return Collections.emptyList();
+		}
+		// Ask for extra completions, since a name can match the prefix on more than one of its words
+		Set<String> names = new LinkedHashSet<String>();
+		for(LookupResult result : current.lookup.lookup(key, false, count * 2)) {
+			String completion = result.key.toString();
+			String name = current.names.get(completion.substring(completion.indexOf(KEY_SEPARATOR) + 1));
+			if(name != null) {
+				names.add(name);
+				if(names.size() == count) {
+					break;
+				}
+			}
+		}
+		return new ArrayList<String>(names);
+	}
+
+	/**
+	 * Rebuilds the suggestions if the App index has changed since they were last built.
+	 */
+	public synchronized void refresh() {
+		IndexReaderAccessor accessor = HibernateContext.getSearchFactory().getIndexReaderAccessor();
+		IndexReader reader = accessor.open(App.class);
+		try {
+			long[] indexVersion = SearchResultCache.getIndexVersion(reader);
+			if(Arrays.equals(indexVersion, suggestions.indexVersion)) {
+				return;
+			}
+			long start = System.currentTimeMillis();
+			suggestions = build(reader, indexVersion);
+			logger.debug("Built autocomplete suggestions for " + suggestions.names.size() + " distinct app names in "
+					+ (System.currentTimeMillis() - start) + " ms");
+		} catch(IOException e) {
+			logger.warn("Unable to build autocomplete suggestions, keeping the previous ones", e);
+		} finally {
+			accessor.close(reader);
+		}
+	}
+
+	private void refreshLoop() {
+		while(running) {
+			try {
+				Thread.sleep(refreshMillis);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			try {
+				refresh();
+			} catch(RuntimeException e) {
+				// e.g. the SearchFactory closing at shutdown... keep serving the last suggestions
+				logger.debug("Unable to refresh autocomplete suggestions", e);
+			}
+		}
+	}
+
+	/**
+	 * Merges the name counts of every segment, and builds a new FST from them.
+	 */
+	private Suggestions build(IndexReader reader, long[] indexVersion) throws IOException {
+		List<IndexReader> segmentReaders = new ArrayList<IndexReader>();
+		ReaderUtil.gatherSubReaders(segmentReaders, reader);
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		for(IndexReader segmentReader : segmentReaders) {
+			for(Map.Entry<String, Integer> entry : getNames(segmentReader).counts.entrySet()) {
+				Integer count = counts.get(entry.getKey());
+				counts.put(entry.getKey(), count == null ? entry.getValue() : count + entry.getValue());
+			}
+		}
+
+		// Names differing only in case are suggested once, as whichever spelling comes first
+		Map<String, String> names = new HashMap<String, String>();
+		Map<String, Integer> weights = new HashMap<String, Integer>();
+		for(Map.Entry<String, Integer> entry : counts.entrySet()) {
+			String name = normalize(entry.getKey());
+			if(name.isEmpty()) {
+				continue;
+			}
+			if(!names.containsKey(name) || entry.getKey().compareTo(names.get(name)) < 0) {
+				names.put(name, entry.getKey());
+			}
+			// Doubling the weight from the start of the name ranks it above the same name matched on a later word
+			addWeight(weights, name + KEY_SEPARATOR + name, entry.getValue() * 2);
+			for(int index = 1; index < name.length(); index++) {
+				if(!Character.isLetterOrDigit(name.charAt(index - 1)) && Character.isLetterOrDigit(name.charAt(index))) {
+					addWeight(weights, name.substring(index) + KEY_SEPARATOR + name, entry.getValue());
+				}
+			}
+		}
+		if(weights.isEmpty()) {
+			return new Suggestions(null, names, indexVersion);
+		}
+		WFSTCompletionLookup lookup = new WFSTCompletionLookup(false);
+		lookup.build(new WeightIterator(weights));
+		return new Suggestions(lookup, names, indexVersion);
+	}
+
+	private static void addWeight(Map<String, Integer> weights, String key, int weight) {
+		Integer existing = weights.get(key);
+		weights.put(key, existing == null ? weight : existing + weight);
+	}
+
+	/**
+	 * Returns the name counts for one segment, reading them first if the segment is new or has had documents deleted
+	 * since it was last read.
+	 */
+	private SegmentNames getNames(IndexReader segmentReader) throws IOException {
+		Object key = segmentReader.getCoreCacheKey();
+		SegmentNames names = segments.get(key);
+		if(names != null && names.numDocs == segmentReader.numDocs()) {
+			return names;
+		}
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		TermEnum terms = segmentReader.terms(new Term(NAME_FIELD, ""));
+		TermDocs termDocs = segmentReader.termDocs();
+		try {
+			int[] docs = new int[64];
+			int[] freqs = new int[64];
+			do {
+				Term term = terms.term();
+				if(term == null || !term.field().equals(NAME_FIELD)) {
+					break;
+				}
+				// The term's document frequency still counts deleted documents, so count the live ones instead
+				int count = 0;
+				termDocs.seek(terms);
+				for(int read = termDocs.read(docs, freqs); read > 0; read = termDocs.read(docs, freqs)) {
+					count += read;
+				}
+				if(count > 0) {
+					counts.put(term.text(), count);
+				}
+			} while(terms.next());
+		} finally {
+			termDocs.close();
+			terms.close();
+		}
+		names = new SegmentNames(segmentReader.numDocs(), counts);
+		segments.put(key, names);
+		return names;
+	}
+
+	/**
+	 * Lower-cases a name or prefix, and collapses its whitespace.
+	 */
+	private static String normalize(String text) {
+		return text == null ? "" : text.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ENGLISH);
+	}
+
+	/**
+	 * One immutable generation of suggestions, swapped in whole when the index changes.
+	 */
+	private static class Suggestions {
+
+		static final Suggestions EMPTY = new Suggestions(null, Collections.<String, String>emptyMap(), null);
+
+		/** The FST of suggestion keys, or null when there are no names at all */
+		final WFSTCompletionLookup lookup;
+
+		/** Display names, keyed by their normalized form */
+		final Map<String, String> names;
+
+		final long[] indexVersion;
+
+		Suggestions(WFSTCompletionLookup lookup, Map<String, String> names, long[] indexVersion) {
+			this.lookup = lookup;
+			this.names = names;
+			this.indexVersion = indexVersion;
+		}
+
+	}
+
+	/**
+	 * The count of live documents for each name in one segment.
+	 */
+	private static class SegmentNames {
+
+		final int numDocs;
+
+		final Map<String, Integer> counts;
+
+		SegmentNames(int numDocs, Map<String, Integer> counts) {
+			this.numDocs = numDocs;
+			this.counts = counts;
+		}
+
+	}
+
+	/**
+	 * Feeds the suggestion keys and their weights to the FST builder.
+	 */
+	private static class WeightIterator implements TermFreqIterator {
+
+		private final Iterator<Map.Entry<String, Integer>> entries;
+
+		private long weight;
+
+		WeightIterator(Map<String, Integer> weights) {
+			this.entries = weights.entrySet().iterator();
+		}
+
+		public BytesRef next() {
+			if(!entries.hasNext()) {
+				return null;
+			}
+			Map.Entry<String, Integer> entry = entries.next();
+			weight = entry.getValue();
+			return new BytesRef(entry.getKey());
+		}
+
+		public long weight() {
+			return weight;
+		}
+
+		public Comparator<BytesRef> getComparator() {
+			// Unsorted... the FST builder sorts the keys itself
+			return null;
+		}
+
+	}
+
+}
@@ -0,0 +1,47 @@
+package net.steveperkins.hibernatesearchdemo.search;
+
+/**
+ * One app in a page of search results, holding only what the results page shows:  the fields stored in the App index.
+ * 
+ * Hits are built straight from the stored fields of each Lucene document (see "AppSearchService"), rather than as 
+ * partially-populated App entities.  That way there are no empty collections or zero prices posing as real data... 
+ * the full App, with its devices, reviews and price, is fetched by "id" when the user asks for its details.
+ */
+public class AppSearchHit {
+
+	private final Long id;
+	
+	private final String name;
+	
+	private final String description;
+	
+	private final String image;
+
+	public AppSearchHit(Long id, String name, String description, String image) {
+		this.id = id;
+		this.name = name;
+		this.description = description;
+		this.image = image;
+	}
+
+	//
+	// GETTERS
+	//
+	
+	public Long getId() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	public String getImage() {
+		return image;
+	}
+
+}
@@ -0,0 +1,131 @@
+package net.steveperkins.hibernatesearchdemo.search;
+
+/**
+ * The parameters of a single search for apps, as submitted from the search page.  "all" is used for the device, 
+ * category, and price range when no selection has been made, and "relevance" is the default sort order.
+ * 
+ * A page of results starts either at an offset ("firstResult"), or right after the last hit of the previous page 
+ * ("cursor", see SearchCursor).  When a cursor is given, the offset is ignored.
+ * 
+ * With "allReviews" set, the search words are also looked for in every customer review (see ReviewIndex), rather than 
+ * only in the sample of reviews indexed with each app.
+ */
+public class AppSearchRequest {
+
+	private final String searchString;
+	
+	private final String selectedDevice;
+	
+	private final String selectedCategory;
+	
+	private final String selectedPriceRange;
+	
+	private final String sortField;
+	
+	private final int firstResult;
+	
+	private final int maxResults;
+	
+	private final String cursor;
+	
+	private final boolean allReviews;
+
+	public AppSearchRequest(String searchString, String selectedDevice, String selectedCategory, String selectedPriceRange, 
+			String sortField, int firstResult, int maxResults) {
+		this(searchString, selectedDevice, selectedCategory, selectedPriceRange, sortField, firstResult, maxResults, null);
+	}
+
+	public AppSearchRequest(String searchString, String selectedDevice, String selectedCategory, String selectedPriceRange, 
+			String sortField, int firstResult, int maxResults, String cursor) {
+		this(searchString, selectedDevice, selectedCategory, selectedPriceRange, sortField, firstResult, maxResults, cursor, false);
+	}
+
+	public AppSearchRequest(String searchString, String selectedDevice, String selectedCategory, String selectedPriceRange, 
+			String sortField, int firstResult, int maxResults, String cursor, boolean allReviews) {
+		this.searchString = searchString;
+		this.selectedDevice = selectedDevice;
+		this.selectedCategory = selectedCategory;
+		this.selectedPriceRange = selectedPriceRange;
+		this.sortField = sortField;
+		this.firstResult = firstResult;
+		this.maxResults = maxResults;
+		this.cursor = cursor;
+		this.allReviews = allReviews;
+	}
+
+	//
+	// GETTERS
+	//
+	
+	public String getSearchString() {
+		return searchString;
+	}
+
+	public String getSelectedDevice() {
+		return selectedDevice;
+	}
+
+	public String getSelectedCategory() {
+		return selectedCategory;
+	}
+
+	public String getSelectedPriceRange() {
+		return selectedPriceRange;
+	}
+
+	public String getSortField() {
+		return sortField;
+	}
+
+	public int getFirstResult() {
+		return firstResult;
+	}
+
+	public int getMaxResults() {
+		return maxResults;
+	}
+
+	public String getCursor() {
+		return cursor;
+	}
+
+	public boolean isAllReviews() {
+		return allReviews;
+	}
+
+	/**
+	 * Returns a key identifying this search, for caching.  Searches that would produce identical results share a key... 
+	 * the search string is trimmed and has its whitespace collapsed, and the facet selections are lower-cased (they're 
+	 * matched without regard to case).  The search string keeps its case, because not every field's analyzer lower-cases 
+	 * (e.g. "customerReviewAnalyzer"), so "Wow" and "wow" can match different reviews.
+	 */
+	public String getNormalizedKey() {
+		StringBuilder key = new StringBuilder();
+		key.append(searchString == null ? "" : searchString.trim().replaceAll("\\s+", " ")).append('\u0000');
+		key.append(normalize(selectedDevice)).append('\u0000');
+		key.append(normalize(selectedCategory)).append('\u0000');
+		key.append(normalize(selectedPriceRange)).append('\u0000');
+		key.append(sortField).append('\u0000');
+		key.append(firstResult).append('\u0000');
+		key.append(maxResults).append('\u0000');
+		key.append(cursor == null ? "" : cursor).append('\u0000');
+		key.append(allReviews);
+		return key.toString();
+	}
+	
+	private static String normalize(String value) {
+		return value == null ? "" : value.trim().toLowerCase();
+	}
+
+	@Override
+	public String toString() {
+		return "searchString [" + searchString 
+				+ "], selectedDevice [" + selectedDevice
+				+ "], selectedCategory [" + selectedCategory
+				+ "], selectedPriceRange [" + selectedPriceRange
+				+ "], sortField [" + sortField 
+				+ "], and " + (cursor == null ? "firstResult [" +  firstResult + "]" : "cursor [" + cursor + "]")
+				+ (allReviews ? ", searching all reviews" : "");
+	}
+
+}
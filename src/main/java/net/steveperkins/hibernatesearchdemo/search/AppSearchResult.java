@@ -0,0 +1,99 @@
+package net.steveperkins.hibernatesearchdemo.search;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The outcome of a search for apps:  one page of hits (see AppSearchHit), the number of hits for 
+ * each category and price range facet, the total number of hits after any selected facets were applied, and a cursor 
+ * for fetching the next page (see SearchCursor).  When the search words were matched fuzzily rather than exactly, the 
+ * result says so, and may carry a corrected search string to suggest (i.e. "did you mean").  When the search ran out 
+ * of time before it could look at every matching app, the result is flagged as partial.
+ * 
+ * Results may be cached and shared between requests, so they are read-only.
+ */
+public class AppSearchResult {
+
+	private final List<AppSearchHit> apps;
+	
+	private final Map<String, Integer> categories;
+	
+	private final Map<String, Integer> priceRanges;
+	
+	private final int resultSize;
+	
+	private final String nextCursor;
+	
+	private final boolean fuzzy;
+	
+	private final String suggestion;
+	
+	private final boolean partial;
+
+	public AppSearchResult(List<AppSearchHit> apps, Map<String, Integer> categories, Map<String, Integer> priceRanges, int resultSize, 
+			String nextCursor) {
+		this(apps, categories, priceRanges, resultSize, nextCursor, false, null, false);
+	}
+
+	public AppSearchResult(List<AppSearchHit> apps, Map<String, Integer> categories, Map<String, Integer> priceRanges, int resultSize, 
+			String nextCursor, boolean fuzzy, String suggestion, boolean partial) {
+		this.apps = Collections.unmodifiableList(apps);
+		this.categories = Collections.unmodifiableMap(categories);
+		this.priceRanges = Collections.unmodifiableMap(priceRanges);
+		this.resultSize = resultSize;
+		this.nextCursor = nextCursor;
+		this.fuzzy = fuzzy;
+		this.suggestion = suggestion;
+		this.partial = partial;
+	}
+
+	//
+	// GETTERS
+	//
+	
+	public List<AppSearchHit> getApps() {
+		return apps;
+	}
+
+	public Map<String, Integer> getCategories() {
+		return categories;
+	}
+
+	public Map<String, Integer> getPriceRanges() {
+		return priceRanges;
+	}
+
+	public int getResultSize() {
+		return resultSize;
+	}
+
+	/**
+	 * @return the cursor for the page following this one, or null if this is the last page
+	 */
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	/**
+	 * @return true if the search words were matched fuzzily (i.e. allowing for misspellings), rather than exactly
+	 */
+	public boolean isFuzzy() {
+		return fuzzy;
+	}
+
+	/**
+	 * @return a corrected search string, made of words found in the index, or null if there is nothing to suggest
+	 */
+	public String getSuggestion() {
+		return suggestion;
+	}
+
+	/**
+	 * @return true if the search hit its time limit, so that the hits, facet counts and result size may be incomplete
+	 */
+	public boolean isPartial() {
+		return partial;
+	}
+
+}
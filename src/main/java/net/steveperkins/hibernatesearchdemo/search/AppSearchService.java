@@ -0,0 +1,470 @@
+package net.steveperkins.hibernatesearchdemo.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import net.steveperkins.hibernatesearchdemo.domain.App;
+import net.steveperkins.hibernatesearchdemo.util.HibernateContext;
+import net.steveperkins.hibernatesearchdemo.util.PhaseTimer;
+import net.steveperkins.hibernatesearchdemo.util.ReviewStatisticsBridge;
+import net.steveperkins.hibernatesearchdemo.util.Settings;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TimeLimitingCollector;
+import org.apache.lucene.search.TopDocsCollector;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.hibernate.search.SearchException;
+import org.hibernate.search.SearchFactory;
+import org.hibernate.search.indexes.IndexReaderAccessor;
+import org.hibernate.search.query.dsl.QueryBuilder;
+import org.hibernate.search.query.dsl.TermMatchingContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Performs searches for apps against the App Lucene index.  
+ * 
+ * The Hibernate Search query DSL is still used to build the Lucene query, but the query is executed directly against 
+ * an IndexSearcher so that one pass over the matching documents produces everything the search page needs:  the 
+ * category and price range facet counts (see FacetCountingCollector), the page of top hits narrowed down by any 
+ * selected facets, and the total number of such hits.  The page of hits is then projected straight from the fields 
+ * stored in the index (see SearchHitProjection), without touching the database.
+ * 
+ * Pages of results may be requested by offset (as the search page does), or by cursor (as the JSON search service 
+ * does, see SearchCursor).
+ * 
+ * The App index only holds a sample of each app's customer reviews (see ReviewSample).  A search asking for "all 
+ * reviews" also looks up the search words in the separate review index (see ReviewIndex), and matches the apps whose 
+ * reviews contain them as well.
+ * 
+ * Identical searches arriving at the same time (e.g. when a link to a search is shared, and a crowd follows it) are 
+ * coalesced:  the first one runs, and the rest wait for it and share its result, rather than each running the same 
+ * query.  Searches are identical when their normalized parameters (see "AppSearchRequest.getNormalizedKey()") and the 
+ * version of the index they see are the same... the same condition under which a result is served from the cache.
+ */
+public class AppSearchService {
+
+	private static final AppSearchService instance = new AppSearchService();
+	
+	/**
+	 * The amount of time a search query may run.  If the query has not completed by then, it stops gracefully 
+	 * and returns the results found so far, flagged as partial (and logged in the SlowQueryLog).
+	 */
+	private static final long TIME_LIMIT_MILLIS = Settings.getLong("search.timeLimitMillis", 2000);
+	
+	/**
+	 * The number of top hits whose scoring is explained in the SlowQueryLog
+	 */
+	private static final int SLOW_QUERY_EXPLANATIONS = 3;
+	
+	/**
+	 * Rewritten fuzzy queries can run to thousands of terms, so the SlowQueryLog keeps only the start of a query
+	 */
+	private static final int SLOW_QUERY_MAX_LENGTH = 4000;
+	
+	private static final float FUZZY_THRESHOLD = 0.7f;
+	
+	/**
+	 * With adaptive fuzzy matching (the default), search words are matched exactly first, and only fuzzily when the exact 
+	 * match finds fewer than "search.fuzzy.minHits" apps.  Otherwise every keyword search is fuzzy.
+	 */
+	private static final boolean ADAPTIVE_FUZZY = !"always".equalsIgnoreCase(Settings.getString("search.fuzzy.mode", "adaptive"));
+	
+	private static final int FUZZY_MIN_HITS = Settings.getInt("search.fuzzy.minHits", 5);
+	
+	/**
+	 * The most apps a search of all reviews adds to the results, found through the review index
+	 */
+	private static final int MAX_REVIEW_APPS = Settings.getInt("reviews.index.maxApps", 10000);
+
+	private Logger logger = LoggerFactory.getLogger(AppSearchService.class);
+	
+	private final SearchResultCache cache = SearchResultCache.getInstance();
+	
+	private final SpellingSuggester spellingSuggester = new SpellingSuggester(FUZZY_THRESHOLD);
+	
+	private final SlowQueryLog slowQueryLog = SlowQueryLog.getInstance();
+	
+	private final PopularitySignals popularitySignals = PopularitySignals.getInstance();
+	
+	/**
+	 * The searches currently running, by normalized key and index version, for identical searches to wait on
+	 */
+	private final ConcurrentMap<String, FutureTask<AppSearchResult>> inFlight = new ConcurrentHashMap<String, FutureTask<AppSearchResult>>();
+
+	/**
+	 * @return the shared instance of this service, which is thread-safe
+	 */
+	public static AppSearchService getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Runs a search, and returns a page of results along with facet counts.  Results are served from the 
+	 * SearchResultCache when the same search has already been run against the current version of the index.
+	 * 
+	 * The latency of each phase of the search is recorded in "LatencyMetrics", under "search.*".
+	 */
+	public AppSearchResult search(AppSearchRequest request) {
+		PhaseTimer timer = new PhaseTimer("search");
+		SearchFactory searchFactory = HibernateContext.getSearchFactory();
+		IndexReaderAccessor readerAccessor = searchFactory.getIndexReaderAccessor();
+		IndexReader reader = readerAccessor.open(App.class);
+		timer.mark("openReader");
+		try {
+			// Relevance ranking depends on the popularity signals as well as the index, and they change independently
+			String cacheKey = popularitySignals.isEnabled() 
+					? request.getNormalizedKey() + '\u0000' + popularitySignals.getVersion() 
+					: request.getNormalizedKey();
+			// ...and so do the results of a search of all reviews, on the review index
+			if(request.isAllReviews()) {
+				cacheKey += '\u0000' + "reviews" + ReviewIndex.getInstance().getVersion();
+			}
+			long[] indexVersion = SearchResultCache.getIndexVersion(reader);
+			AppSearchResult result = cache.get(cacheKey, indexVersion);
+			timer.mark("cacheLookup");
+			if(result == null) {
+				result = searchOnce(searchFactory, reader, request, cacheKey, indexVersion, timer);
+			}
+			return result;
+		} catch(IOException e) {
+			throw new SearchException("Unable to search the App index", e);
+		} finally {
+			readerAccessor.close(reader);
+			timer.stop();
+		}
+	}
+	
+	/**
+	 * Runs a search that isn't cached, unless an identical search is already running... in which case this waits for 
+	 * that one to finish, and returns its result (recording the wait as "search.coalescedWait").
+	 */
+	private AppSearchResult searchOnce(final SearchFactory searchFactory, final IndexReader reader, final AppSearchRequest request, 
+			final String cacheKey, final long[] indexVersion, final PhaseTimer timer) throws IOException {
+		String flightKey = cacheKey + '\u0000' + Arrays.toString(indexVersion);
+		FutureTask<AppSearchResult> flight = new FutureTask<AppSearchResult>(new Callable<AppSearchResult>() {
+			public AppSearchResult call() throws IOException {
+				AppSearchResult result = search(searchFactory, reader, request, timer);
+				
+				// Cached before the search stops being in flight, so that an identical search never misses both.  Partial 
+				// results are never cached, so that the next identical search gets another chance to finish.
+				if(!result.isPartial()) {
+					cache.put(cacheKey, indexVersion, result);
+				}
+				return result;
+			}
+		});
+		FutureTask<AppSearchResult> existing = inFlight.putIfAbsent(flightKey, flight);
+		if(existing != null) {
+			AppSearchResult result = getResult(existing);
+			timer.mark("coalescedWait");
+			return result;
+		}
+		try {
+			flight.run();
+		} finally {
+			inFlight.remove(flightKey, flight);
+		}
+		return getResult(flight);
+	}
+	
+	/**
+	 * Waits for a search to finish, and returns its result... or throws whatever the search threw.
+	 */
+	private AppSearchResult getResult(FutureTask<AppSearchResult> flight) throws IOException {
+		try {
+			return flight.get();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SearchException("Interrupted while waiting for an identical search", e);
+		} catch(ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if(cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if(cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new SearchException(cause);
+		}
+	}
+	
+	private AppSearchResult search(SearchFactory searchFactory, IndexReader reader, AppSearchRequest request, PhaseTimer timer) 
+			throws IOException {
+		QueryBuilder queryBuilder = searchFactory.buildQueryBuilder().forEntity( App.class ).get();
+		
+		// Device filters hand out bitsets precomputed per index segment, so make sure any new segments have theirs
+		DeviceFilterCache deviceFilters = DeviceFilterCache.getInstance();
+		deviceFilters.warm(reader);
+		Filter filter = deviceFilters.getFilter(request.getSelectedDevice());
+		timer.mark("deviceFilter");
+		Sort sort = getSort(request.getSortField());
+		String selectedCategory = "all".equals(request.getSelectedCategory()) ? null : request.getSelectedCategory();
+		PriceRange selectedPriceRange = PriceRange.parse(request.getSelectedPriceRange());
+		
+		IndexSearcher searcher = new IndexSearcher(reader);
+		
+		// A page starts either right after the cursor from the previous page, or at an offset.  With a cursor, only 
+		// one page of top hits is gathered, from among those sorting after the cursor... so the cost of a page is the 
+		// same however deep it is.  With an offset, every hit up to the end of the requested page must be gathered.
+		// Either way, one extra hit is gathered to find out whether there's another page after this one.
+		SearchCursor after = null;
+		if(request.getCursor() != null) {
+			after = SearchCursor.decode(request.getCursor());
+			if(!after.getSortField().equals(request.getSortField())) {
+				throw new IllegalArgumentException("The cursor is for sort order \"" + after.getSortField() + "\", not \"" 
+						+ request.getSortField() + "\"");
+			}
+		}
+		int firstResult = after == null ? request.getFirstResult() : 0;
+		int numHits = firstResult + request.getMaxResults() + 1;
+		
+		// Quoted search strings are phrase searches.  Otherwise the words are matched exactly first (as analyzed for 
+		// each field, so stemmed and phonetic forms still match), and only widened to a much costlier fuzzy match if 
+		// that turns up too few apps.  Whether to widen depends only on the search words and device, never on the 
+		// selected facets or page, so that every page and facet of one search is served by the same kind of match.
+		String searchString = request.getSearchString();
+		boolean phrase = searchString.length() > 2 && searchString.startsWith("\"") && searchString.endsWith("\"");
+		Filter reviewMatches = null;
+		if(request.isAllReviews()) {
+			reviewMatches = findReviewMatches(searchString);
+			timer.mark("reviewIndex");
+		}
+		Pass pass;
+		boolean fuzzy = false;
+		String suggestion = null;
+		if(phrase) {
+			Query phraseQuery = orReviewMatches(buildPhraseQuery(queryBuilder, searchString), reviewMatches);
+			timer.mark("queryBuild");
+			pass = collect(searcher, phraseQuery, filter, sort, after, numHits, selectedCategory, selectedPriceRange);
+			timer.mark("luceneQuery");
+		} else {
+			pass = null;
+			if(ADAPTIVE_FUZZY) {
+				Query exactQuery = orReviewMatches(buildKeywordQuery(queryBuilder, searchString, false), reviewMatches);
+				timer.mark("queryBuild");
+				pass = collect(searcher, exactQuery, filter, sort, after, numHits, selectedCategory, selectedPriceRange);
+				timer.mark("luceneQuery");
+			}
+			if(pass == null || pass.facetCollector.getTotalHits() < FUZZY_MIN_HITS) {
+				Query fuzzyQuery = orReviewMatches(buildKeywordQuery(queryBuilder, searchString, true), reviewMatches);
+				timer.mark("queryBuild");
+				pass = collect(searcher, fuzzyQuery, filter, sort, after, numHits, selectedCategory, selectedPriceRange);
+				timer.mark("fuzzyQuery");
+				fuzzy = true;
+			}
+			// Too few exact hits suggests a misspelling, so offer a correction built from the words that are in the index.  
+			// (Without an exact pass to go by, only when even the fuzzy match comes up short.)
+			if(fuzzy && (ADAPTIVE_FUZZY || pass.facetCollector.getTotalHits() < FUZZY_MIN_HITS)) {
+				suggestion = spellingSuggester.suggest(reader, HibernateContext.getSearchFactory().getAnalyzer(App.class), searchString);
+				timer.mark("spellingSuggestion");
+			}
+		}
+		
+		ScoreDoc[] hits = pass.topDocsCollector.topDocs(firstResult, request.getMaxResults() + 1).scoreDocs;
+		int pageSize = Math.min(hits.length, request.getMaxResults());
+		List<AppSearchHit> apps = new ArrayList<AppSearchHit>(pageSize);
+		for(int index = 0; index < pageSize; index++) {
+			apps.add( SearchHitProjection.load(reader, hits[index].doc) );
+		}
+		String nextCursor = hits.length > pageSize && pageSize > 0 
+				? SearchCursor.after(request.getSortField(), hits[pageSize - 1]).encode() 
+				: null;
+		timer.mark("projection");
+		
+		long elapsedMillis = timer.getElapsedNanos() / 1000000;
+		if(slowQueryLog.isSlow(elapsedMillis, pass.partial)) {
+			slowQueryLog.record(describeSlowQuery(searcher, request, pass, hits, pageSize, elapsedMillis, timer));
+			timer.mark("slowQueryLog");
+		}
+		
+		FacetCountingCollector facetCollector = pass.facetCollector;
+		return new AppSearchResult(apps, facetCollector.getCategoryCounts(), facetCollector.getPriceRangeCounts(), 
+				facetCollector.getMatchingHits(), nextCursor, fuzzy, suggestion, pass.partial);
+	}
+	
+	/**
+	 * Runs one query, gathering the top hits among those documents which match the selected facets.  The facet counts 
+	 * themselves are gathered across every matching document, in the same pass (so their cost is part of the query's).
+	 */
+	private Pass collect(IndexSearcher searcher, Query luceneQuery, Filter filter, Sort sort, SearchCursor after, int numHits, 
+			String selectedCategory, PriceRange selectedPriceRange) throws IOException {
+		logger.info("Query string == " + luceneQuery);
+		TopDocsCollector<?> topDocsCollector;
+		Collector pageCollector;
+		if(sort == null) {
+			// Only relevance ranking is boosted by popularity, since the score plays no part in a field sort
+			luceneQuery = popularitySignals.boost(luceneQuery);
+			topDocsCollector = TopScoreDocCollector.create(numHits, after == null ? null : after.toScoreDoc(), false);
+			pageCollector = topDocsCollector;
+		} else {
+			topDocsCollector = TopFieldCollector.create(sort, numHits, true, false, false, false);
+			SortField sortField = sort.getSort()[0];
+			pageCollector = after == null 
+					? topDocsCollector 
+					: new SearchAfterCollector(topDocsCollector, sortField, after.getSortValue(), after.getDoc());
+		}
+		FacetCountingCollector facetCollector = new FacetCountingCollector(
+				pageCollector, selectedCategory, PriceBands.getInstance(), selectedPriceRange);
+		TimeLimitingCollector timeLimitingCollector = new TimeLimitingCollector(
+				facetCollector, TimeLimitingCollector.getGlobalCounter(), TIME_LIMIT_MILLIS);
+		timeLimitingCollector.setBaseline();
+		
+		// Actually perform the search.  Running out of time isn't an error... the hits found so far are returned, and 
+		// flagged as partial.
+		boolean partial = false;
+		try {
+			searcher.search(luceneQuery, filter, timeLimitingCollector);
+		} catch(TimeLimitingCollector.TimeExceededException e) {
+			partial = true;
+		}
+		return new Pass(luceneQuery, topDocsCollector, facetCollector, partial);
+	}
+	
+	/**
+	 * Captures the details of a slow search for the SlowQueryLog:  the query as Lucene actually ran it, how the top 
+	 * hits were scored, and the phase timings so far.  Only called for slow searches, because explaining hits means 
+	 * running the query again for each one.
+	 */
+	private SlowQuery describeSlowQuery(IndexSearcher searcher, AppSearchRequest request, Pass pass, ScoreDoc[] hits, 
+			int pageSize, long elapsedMillis, PhaseTimer timer) throws IOException {
+		String query = searcher.rewrite(pass.query).toString();
+		if(query.length() > SLOW_QUERY_MAX_LENGTH) {
+			query = query.substring(0, SLOW_QUERY_MAX_LENGTH) + "...";
+		}
+		List<String> explanations = new ArrayList<String>();
+		for(int index = 0; index < Math.min(pageSize, SLOW_QUERY_EXPLANATIONS); index++) {
+			explanations.add(searcher.explain(pass.query, hits[index].doc).toString());
+		}
+		return new SlowQuery(new Date(), request.toString(), query, elapsedMillis, pass.partial, 
+				pass.facetCollector.getTotalHits(), timer.getTimingsMicros(), explanations);
+	}
+	
+	/**
+	 * Uses the QueryBuilder to construct a Lucene phrase query, for a search string surrounded by double-quotes... 
+	 * matching the phrase against the "name" and "description" fields of App, as well as "name" field of associated 
+	 * Device entities, and the "comments" field of embedded CustomerReview objects.
+	 * 
+	 * The "name" and "description" fields are boosted even more so than normal (to showcase query-time boosting as well 
+	 * as the index-time boosting already seen).
+	 */
+	private Query buildPhraseQuery(QueryBuilder queryBuilder, String searchString) {
+		String unquotedSearchString = searchString.substring(1, searchString.length() - 1);
+		return queryBuilder
+				.phrase()
+				.onField("name").boostedTo(2)
+				.andField("description").boostedTo(2)
+				.andField("supportedDevices.name").andField("customerReviews.comments")
+				.sentence(unquotedSearchString)
+				.createQuery();
+	}
+	
+	/**
+	 * Uses the QueryBuilder to construct a Lucene keyword query over the same fields, either matching the words exactly 
+	 * (as analyzed for each field) or fuzzily.  A fuzzy match expands every search word into all of the similar terms 
+	 * in the index, which grows expensive as the index's vocabulary grows.
+	 */
+	private Query buildKeywordQuery(QueryBuilder queryBuilder, String searchString, boolean fuzzy) {
+		String[] fields = { "name", "description", "supportedDevices.name", "customerReviews.comments" };
+		TermMatchingContext matchingContext = fuzzy 
+				? queryBuilder.keyword().fuzzy().withThreshold(FUZZY_THRESHOLD).onFields(fields) 
+				: queryBuilder.keyword().onFields(fields);
+		return matchingContext.matching(searchString).createQuery();
+	}
+
+	/**
+	 * Looks up the search words (or phrase) in the review index, and returns a filter matching the apps with reviews 
+	 * containing them... or null if there are none.
+	 */
+	private Filter findReviewMatches(String searchString) throws IOException {
+		Set<Long> appIds = ReviewIndex.getInstance().findApps(searchString, MAX_REVIEW_APPS);
+		return appIds.isEmpty() ? null : new AppIdFilter(appIds);
+	}
+	
+	/**
+	 * Widens a query to match the apps found through the review index too.  Those apps all score the same for their 
+	 * reviews, on top of whatever they score for the query itself.
+	 */
+	private Query orReviewMatches(Query query, Filter reviewMatches) {
+		if(reviewMatches == null) {
+			return query;
+		}
+		BooleanQuery combined = new BooleanQuery();
+		combined.add(query, BooleanClause.Occur.SHOULD);
+		combined.add(new ConstantScoreQuery(reviewMatches), BooleanClause.Occur.SHOULD);
+		return combined;
+	}
+
+	/**
+	 * Returns the sort criteria for the given sort field, or null for the default sort-by-relevance.
+	 * 
+	 * Every sort is on a single field that the FieldCache can load as one value per document:  the untokenized name, 
+	 * the rating and review count computed at index time (see ReviewStatisticsBridge), the numeric price, and the 
+	 * release date as a number of days (see EpochDayBridge).  So no sort ever touches the database, or the reviews 
+	 * themselves.  Numeric fields are read with the parsers for Lucene's trie encoding, which is how @NumericField 
+	 * indexes them.
+	 */
+	static Sort getSort(String sortField) {
+		if(sortField.equals("name")) {
+			return new Sort(new SortField("sorting_name", SortField.STRING));
+		} else if(sortField.equals("name-reverse")) {
+			return new Sort(new SortField("sorting_name", SortField.STRING, true));
+		} else if(sortField.equals("rating")) {
+			return new Sort(new SortField(ReviewStatisticsBridge.RATING_FIELD, FieldCache.NUMERIC_UTILS_FLOAT_PARSER, true));
+		} else if(sortField.equals("reviews")) {
+			return new Sort(new SortField(ReviewStatisticsBridge.REVIEW_COUNT_FIELD, FieldCache.NUMERIC_UTILS_INT_PARSER, true));
+		} else if(sortField.equals("price")) {
+			return new Sort(new SortField("price", FieldCache.NUMERIC_UTILS_FLOAT_PARSER));
+		} else if(sortField.equals("price-reverse")) {
+			return new Sort(new SortField("price", FieldCache.NUMERIC_UTILS_FLOAT_PARSER, true));
+		} else if(sortField.equals("newest")) {
+			return new Sort(new SortField("sorting_releaseDate", FieldCache.NUMERIC_UTILS_INT_PARSER, true));
+		}
+		return null;
+	}
+	
+	/**
+	 * The query and collectors from running one query, and whether it ran out of time.
+	 */
+	private static class Pass {
+		
+		final Query query;
+		
+		final TopDocsCollector<?> topDocsCollector;
+		
+		final FacetCountingCollector facetCollector;
+		
+		final boolean partial;
+		
+		Pass(Query query, TopDocsCollector<?> topDocsCollector, FacetCountingCollector facetCollector, boolean partial) {
+			this.query = query;
+			this.topDocsCollector = topDocsCollector;
+			this.facetCollector = facetCollector;
+			this.partial = partial;
+		}
+		
+	}
+
+}
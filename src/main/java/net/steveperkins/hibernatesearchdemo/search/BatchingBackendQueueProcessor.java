@@ -0,0 +1,264 @@
+package net.steveperkins.hibernatesearchdemo.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.steveperkins.hibernatesearchdemo.util.Settings;
+
+import org.hibernate.search.backend.IndexingMonitor;
+import org.hibernate.search.backend.LuceneWork;
+import org.hibernate.search.backend.spi.BackendQueueProcessor;
+import org.hibernate.search.indexes.impl.DirectoryBasedIndexManager;
+import org.hibernate.search.spi.WorkerBuildContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A Hibernate Search backend for asynchronous, batched indexing.  It's enabled by setting "indexing.mode" to "async" in
+ * "vaporware.properties" (see "HibernateContext").
+ *
+ * With the standard Lucene backend, every database transaction that touches an App ends with the request thread
+ * waiting on its own IndexWriter commit... which is by far the most expensive step of indexing, because it syncs the
+ * index files to disk.  During a burst of writes (e.g. a flood of customer reviews, or a batch of price changes) those
+ * commits pile up one after another.  This backend instead puts each transaction's index work (as produced through
+ * "IndexWhenActiveInterceptor") on a bounded queue, and returns to the request thread right away.  A background thread
+ * drains the queue, merging the work of many transactions into a single changeset that's applied with a single commit.
+ * A batch is applied once "indexing.async.batchSize" operations have accumulated, or "indexing.async.intervalMillis"
+ * after its first operation arrived... whichever comes first.  Operations are applied in the order they were queued.
+ *
+ * When the queue is full, a committing thread waits up to "indexing.async.maxBlockMillis" for room.  If there's still
+ * no room after that, it applies its work synchronously (as the standard backend would)... but only after everything
+ * queued ahead of it, taking over from the background thread for one batch.  Otherwise an older update or delete of
+ * the same App, still waiting in the queue, would be applied afterwards and overwrite the newer document.  That keeps
+ * the memory held by the queue bounded, and slows writers down to the pace the index can sustain, without ever
+ * stalling them indefinitely.
+ *
+ * The trade-off is that a change becomes searchable up to one interval after its transaction commits.  Stale entries
+ * can't linger in the "SearchResultCache" because of that delay, since cached results are tied to the index version.
+ *
+ * The actual index writing is delegated to the standard Lucene backend, in synchronous mode (by way of
+ * "ReplacingBackendQueueProcessor").  Bulk work from the MassIndexer (see "IndexRebuilder") is already batched, and
+ * goes straight to the delegate.
+ */
+public class BatchingBackendQueueProcessor implements BackendQueueProcessor {
+
+	private static Logger logger = LoggerFactory.getLogger(BatchingBackendQueueProcessor.class);
+
+	private final int batchSize = Settings.getInt("indexing.async.batchSize", 500);
+
+	private final long intervalMillis = Settings.getLong("indexing.async.intervalMillis", 1000);
+
+	private final long maxBlockMillis = Settings.getLong("indexing.async.maxBlockMillis", 2000);
+
+	private final BlockingQueue<Changeset> queue = new ArrayBlockingQueue<Changeset>(Settings.getInt("indexing.async.queueSize", 10000));
+
+	private final ReplacingBackendQueueProcessor delegate = new ReplacingBackendQueueProcessor();
+
+	/**
+	 * Held by whichever thread is taking work off the queue and applying it, so that batches reach the delegate in
+	 * queue order.  Fair, so that the flusher can't keep a waiting writer out indefinitely.
+	 */
+	private final Lock flushLock = new ReentrantLock(true);
+
+	private final AtomicLong changesetsQueued = new AtomicLong();
+
+	private final AtomicLong batchesApplied = new AtomicLong();
+
+	private final AtomicLong backpressureFallbacks = new AtomicLong();
+
+	private volatile boolean running;
+
+	private Thread flusher;
+
+	private String indexName;
+
+	public void initialize(Properties props, WorkerBuildContext context, DirectoryBasedIndexManager indexManager) {
+		// The delegate must block until each batch is committed, so that the flusher thread never races ahead of the
+		// IndexWriter with a backlog of its own.  (Hibernate Search hands over a read-only view of its properties, so
+		// they're layered underneath the override as defaults rather than copied.)
+		Properties delegateProps = new Properties(props);
+		delegateProps.setProperty("worker.execution", "sync");
+		delegate.initialize(delegateProps, context, indexManager);
+
+		indexName = indexManager.getIndexName();
+		running = true;
+		flusher = new Thread(new Runnable() {
+			public void run() {
+				flushLoop();
+			}
+		}, "index-batcher-" + indexName);
+		flusher.setDaemon(true);
+		flusher.start();
+		logger.info("Asynchronous batched indexing enabled for index " + indexName + ", with batches of up to " + batchSize
+				+ " operations every " + intervalMillis + " ms");
+	}
+
+	public void applyWork(List<LuceneWork> workList, IndexingMonitor monitor) {
+		if(workList == null) {
+			throw new IllegalArgumentException("workList should not be null");
+		}
+		if(workList.isEmpty()) {
+			return;
+		}
+		// A monitor expects to hear about its own documents, which it can't once they've been merged into a batch
+		if(monitor != null || !running) {
+			applyAfterQueued(workList, monitor);
+			return;
+		}
+		try {
+			if(queue.offer(new Changeset(workList), maxBlockMillis, TimeUnit.MILLISECONDS)) {
+				changesetsQueued.incrementAndGet();
+				return;
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		// Still full after the maximum wait (or interrupted), so fall back to indexing on the caller's thread
+		backpressureFallbacks.incrementAndGet();
+		logger.debug("Index work queue for " + indexName + " is full, applying " + workList.size() + " operations synchronously");
+		applyAfterQueued(workList, monitor);
+	}
+
+	/**
+	 * Applies work on the caller's thread, together with (and after) everything still queued, so that queued work for
+	 * the same documents can't be applied on top of it later.
+	 */
+	private void applyAfterQueued(List<LuceneWork> workList, IndexingMonitor monitor) {
+		flushLock.lock();
+		try {
+			List<LuceneWork> batch = new ArrayList<LuceneWork>();
+			Changeset queued;
+			while((queued = queue.poll()) != null) {
+				batch.addAll(queued.works);
+			}
+			if(batch.isEmpty()) {
+				delegate.applyWork(workList, monitor);
+			} else if(monitor == null) {
+				batch.addAll(workList);
+				delegate.applyWork(batch, null);
+				batchesApplied.incrementAndGet();
+			} else {
+				apply(batch);
+				delegate.applyWork(workList, monitor);
+			}
+		} finally {
+			flushLock.unlock();
+		}
+	}
+
+	public void applyStreamWork(LuceneWork singleOperation, IndexingMonitor monitor) {
+		delegate.applyStreamWork(singleOperation, monitor);
+	}
+
+	public Lock getExclusiveWriteLock() {
+		return delegate.getExclusiveWriteLock();
+	}
+
+	public void indexMappingChanged() {
+		delegate.indexMappingChanged();
+	}
+
+	/**
+	 * Stops accepting work, applies whatever is still queued, and closes the delegate.
+	 */
+	public void close() {
+		running = false;
+		try {
+			// The flusher isn't interrupted, because interrupting a thread in the middle of NIO or memory-mapped file
+			// access would close the index files underneath it.  Instead it notices the flag within one interval.
+			flusher.join(intervalMillis * 10);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		logger.info("Index " + indexName + ": " + changesetsQueued.get() + " transactions indexed in " + batchesApplied.get()
+				+ " batches, " + backpressureFallbacks.get() + " indexed synchronously when the queue was full");
+		delegate.close();
+	}
+
+	private void flushLoop() {
+		while(running || !queue.isEmpty()) {
+			// The lock is held from taking the first changeset until the batch is applied, so that a writer falling
+			// back to synchronous indexing can't get its work in ahead of a batch that's already off the queue
+			flushLock.lock();
+			try {
+				Changeset first = queue.poll(intervalMillis, TimeUnit.MILLISECONDS);
+				if(first == null) {
+					continue;
+				}
+				// Keep collecting until the batch is big enough, or the interval since the first changeset runs out
+				List<LuceneWork> batch = new ArrayList<LuceneWork>(first.works);
+				long deadline = System.currentTimeMillis() + intervalMillis;
+				while(batch.size() < batchSize) {
+					long remaining = deadline - System.currentTimeMillis();
+					Changeset next = remaining > 0 ? queue.poll(remaining, TimeUnit.MILLISECONDS) : queue.poll();
+					if(next == null) {
+						break;
+					}
+					batch.addAll(next.works);
+				}
+				apply(batch);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			} finally {
+				flushLock.unlock();
+			}
+		}
+	}
+
+	private void apply(List<LuceneWork> batch) {
+		try {
+			delegate.applyWork(batch, null);
+			batchesApplied.incrementAndGet();
+			if(logger.isDebugEnabled()) {
+				logger.debug("Applied " + batch.size() + " operations to index " + indexName + " in one commit, " + queue.size()
+						+ " transactions still queued");
+			}
+		} catch(RuntimeException e) {
+			// Don't let one bad batch kill the flusher thread... the error has already been reported to the Hibernate
+			// Search error handler, and the documents can be recovered with a rebuild
+			logger.error("Unable to apply " + batch.size() + " queued operations to index " + indexName, e);
+		}
+	}
+
+	//
+	// GETTERS
+	//
+
+	public int getQueueSize() {
+		return queue.size();
+	}
+
+	public long getChangesetsQueued() {
+		return changesetsQueued.get();
+	}
+
+	public long getBatchesApplied() {
+		return batchesApplied.get();
+	}
+
+	public long getBackpressureFallbacks() {
+		return backpressureFallbacks.get();
+	}
+
+	/**
+	 * The index work from one transaction.
+	 */
+	private static class Changeset {
+
+		private final List<LuceneWork> works;
+
+		Changeset(List<LuceneWork> works) {
+			this.works = works;
+		}
+
+	}
+
+}
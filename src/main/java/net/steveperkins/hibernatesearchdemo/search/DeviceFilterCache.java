@@ -0,0 +1,222 @@
+package net.steveperkins.hibernatesearchdemo.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.steveperkins.hibernatesearchdemo.util.HibernateContext;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.ReaderUtil;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Filters apps by supported device, using bitsets of the matching documents that are computed ahead of time for every
+ * device at once.
+ *
+ * Hibernate Search indexes the ID of each supported device, un-analyzed, in the "supportedDevices.id" field of the App
+ * document.  When an index segment is first seen (see "warm()"), a single walk over that field's terms builds a bitset
+ * for each device.  A device filter then simply hands out the bitset for each segment.  No query is ever run to filter
+ * by device, so there is no slow first request for a device, nor after the index changes... only new segments need new
+ * bitsets, and those for unchanged segments are reused.  The bitsets are keyed on each segment's core, and are dropped
+ * automatically when the segment is garbage collected (e.g. after it's merged away).  Deleted documents may still have
+ * bits set, which doesn't matter because Lucene never scores deleted documents.
+ *
+ * The search page selects devices by name, which are resolved to ID's through a small table loaded from the database.
+ * It's reloaded when an unknown name comes along (e.g. a device added since startup), at most every few seconds.
+ */
+public class DeviceFilterCache {
+
+	private static final String DEVICE_ID_FIELD = "supportedDevices.id";
+
+	private static final long RELOAD_INTERVAL_MILLIS = 10000;
+
+	private static final DeviceFilterCache instance = new DeviceFilterCache();
+
+	private static Logger logger = LoggerFactory.getLogger(DeviceFilterCache.class);
+
+	/**
+	 * Bitsets per device ID, per segment.  Keyed on the segment's core cache key, so that reopened readers which share
+	 * an unchanged segment also share its bitsets.
+	 */
+	private final Map<Object, Map<String, FixedBitSet>> segments = Collections.synchronizedMap(new WeakHashMap<Object, Map<String, FixedBitSet>>());
+
+	private final ConcurrentMap<String, Filter> filters = new ConcurrentHashMap<String, Filter>();
+
+	private volatile Map<String, String> deviceIds = Collections.emptyMap();
+
+	private volatile long deviceIdsLoadedAt;
+
+	private DeviceFilterCache() {
+	}
+
+	/**
+	 * @return the single, shared cache of device filters
+	 */
+	public static DeviceFilterCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Returns a filter to include only those apps supported on the named device (case-insensitive), or null for all
+	 * devices.  A name which matches no device gets a filter that matches no apps.
+	 */
+	public Filter getFilter(String deviceName) {
+		if(deviceName == null || deviceName.equals("all")) {
+			return null;
+		}
+		String deviceId = resolveDeviceId(deviceName.trim().toLowerCase());
+		if(deviceId == null) {
+			return NO_DEVICE;
+		}
+		Filter filter = filters.get(deviceId);
+		if(filter == null) {
+			filter = new DeviceFilter(deviceId);
+			Filter existing = filters.putIfAbsent(deviceId, filter);
+			if(existing != null) {
+				filter = existing;
+			}
+		}
+		return filter;
+	}
+
+	/**
+	 * Computes the device bitsets for any segments of the given reader that don't have them yet.  This is cheap when
+	 * every segment has already been seen, so it can be called whenever a reader is opened.
+	 */
+	public void warm(IndexReader reader) throws IOException {
+		List<IndexReader> segmentReaders = new ArrayList<IndexReader>();
+		ReaderUtil.gatherSubReaders(segmentReaders, reader);
+		for(IndexReader segmentReader : segmentReaders) {
+			getBitSets(segmentReader);
+		}
+	}
+
+	/**
+	 * Returns the bitsets for every device in one segment, computing them first if necessary.
+	 */
+	private Map<String, FixedBitSet> getBitSets(IndexReader segmentReader) throws IOException {
+		Object key = segmentReader.getCoreCacheKey();
+		Map<String, FixedBitSet> bitSets = segments.get(key);
+		if(bitSets != null) {
+			return bitSets;
+		}
+		long start = System.currentTimeMillis();
+		bitSets = new HashMap<String, FixedBitSet>();
+		TermEnum terms = segmentReader.terms(new Term(DEVICE_ID_FIELD, ""));
+		TermDocs termDocs = segmentReader.termDocs();
+		try {
+			int[] docs = new int[256];
+			int[] freqs = new int[256];
+			do {
+				Term term = terms.term();
+				if(term == null || !term.field().equals(DEVICE_ID_FIELD)) {
+					break;
+				}
+				FixedBitSet bitSet = new FixedBitSet(segmentReader.maxDoc());
+				termDocs.seek(terms);
+				for(int count = termDocs.read(docs, freqs); count > 0; count = termDocs.read(docs, freqs)) {
+					for(int index = 0; index < count; index++) {
+						bitSet.set(docs[index]);
+					}
+				}
+				bitSets.put(term.text(), bitSet);
+			} while(terms.next());
+		} finally {
+			termDocs.close();
+			terms.close();
+		}
+		segments.put(key, bitSets);
+		logger.debug("Computed " + bitSets.size() + " device bitsets for a segment of " + segmentReader.maxDoc() + " documents in "
+				+ (System.currentTimeMillis() - start) + " ms");
+		return bitSets;
+	}
+
+	/**
+	 * Looks up the ID of a device by its lower-cased name, reloading the table of names if the name isn't known.
+	 */
+	private String resolveDeviceId(String deviceName) {
+		String deviceId = deviceIds.get(deviceName);
+		if(deviceId == null && System.currentTimeMillis() - deviceIdsLoadedAt > RELOAD_INTERVAL_MILLIS) {
+			loadDeviceIds();
+			deviceId = deviceIds.get(deviceName);
+		}
+		return deviceId;
+	}
+
+	private synchronized void loadDeviceIds() {
+		if(System.currentTimeMillis() - deviceIdsLoadedAt <= RELOAD_INTERVAL_MILLIS) {
+			return;
+		}
+		Map<String, String> ids = new HashMap<String, String>();
+		Session session = HibernateContext.openSession();
+		try {
+			List<?> rows = session.createQuery("select device.id, device.name from Device device").list();
+			for(Object row : rows) {
+				Object[] columns = (Object[]) row;
+				if(columns[1] != null) {
+					ids.put(((String) columns[1]).toLowerCase(), columns[0].toString());
+				}
+			}
+		} finally {
+			session.close();
+		}
+		deviceIds = ids;
+		deviceIdsLoadedAt = System.currentTimeMillis();
+	}
+
+	/**
+	 * A filter handing out the precomputed bitset for one device, segment by segment.
+	 */
+	private class DeviceFilter extends Filter {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String deviceId;
+
+		DeviceFilter(String deviceId) {
+			this.deviceId = deviceId;
+		}
+
+		@Override
+		public DocIdSet getDocIdSet(IndexReader segmentReader) throws IOException {
+			FixedBitSet bitSet = getBitSets(segmentReader).get(deviceId);
+			return bitSet != null ? bitSet : DocIdSet.EMPTY_DOCIDSET;
+		}
+
+		@Override
+		public String toString() {
+			return "DeviceFilter(" + DEVICE_ID_FIELD + ":" + deviceId + ")";
+		}
+
+	}
+
+	/**
+	 * A filter matching nothing, for device names that don't match any device.
+	 */
+	private static final Filter NO_DEVICE = new Filter() {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public DocIdSet getDocIdSet(IndexReader reader) {
+			return DocIdSet.EMPTY_DOCIDSET;
+		}
+
+	};
+
+}
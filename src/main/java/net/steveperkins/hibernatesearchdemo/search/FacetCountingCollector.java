@@ -0,0 +1,249 @@
+package net.steveperkins.hibernatesearchdemo.search;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.Scorer;
+
+/**
+ * A Lucene Collector that counts the category and price range facets for the documents matching a query, and passes 
+ * along to another Collector (e.g. the one gathering the top hits for a results page) only those documents that also 
+ * match the selected category and price range.  Both facets are counted across every matching document, regardless of 
+ * the selections.
+ * 
+ * This lets a single execution of the query produce both the facet counts for the full result set, and the page of 
+ * results narrowed down by the user's facet selections... rather than running the query once to discover the facets 
+ * and then again to apply them.
+ * 
+ * Category and price values are read from the Lucene FieldCache, which is loaded once per index segment and then 
+ * reused by every query until the segment changes.  Counting a hit allocates nothing:  within a segment, categories are 
+ * counted into an array indexed by the category's ordinal in that segment's FieldCache (so there's no string to hash or 
+ * compare), and each segment's counts are only turned into category names when the collector moves on to the next 
+ * segment.  Prices are counted the same way, by their ordinal among the distinct prices in the segment (see
+ * "PriceOrdinals").  The hits per price are only grouped into bands once collection is done (see "PriceBands"), which
+ * is what lets the bands be fitted to each result set.
+ */
+public class FacetCountingCollector extends Collector {
+
+	private final Collector delegate;
+	
+	private final String selectedCategory;
+	
+	private final PriceBands priceBands;
+	
+	private final PriceRange selectedPriceRange;
+	
+	private final Map<String, int[]> categoryCounts = new HashMap<String, int[]>();
+	
+	private final Map<Float, int[]> priceCounts = new TreeMap<Float, int[]>();
+	
+	private int totalHits;
+	
+	private int matchingHits;
+
+	private String[] categoryLookup;
+	
+	private int[] categoryOrder;
+	
+	/** Hits per category ordinal in the current segment, not yet added to "categoryCounts" */
+	private int[] segmentCategoryCounts;
+	
+	/** Whether each category ordinal in the current segment is the selected category, or null for all categories */
+	private boolean[] selectedOrders;
+	
+	private PriceOrdinals priceOrdinals;
+
+	/** Hits per price ordinal in the current segment, not yet added to "priceCounts" */
+	private int[] segmentPriceCounts;
+
+	/** Whether each price ordinal in the current segment is in the selected band, or null for all prices */
+	private boolean[] selectedPriceOrders;
+
+	/**
+	 * @param delegate the Collector receiving documents that match the selected facets
+	 * @param selectedCategory the category selected by the user, or null for all categories
+	 * @param priceBands how the prices are grouped into bands
+	 * @param selectedPriceRange the price band selected by the user, or null for all prices
+	 */
+	public FacetCountingCollector(Collector delegate, String selectedCategory, PriceBands priceBands, PriceRange selectedPriceRange) {
+		this.delegate = delegate;
+		this.selectedCategory = selectedCategory;
+		this.priceBands = priceBands;
+		this.selectedPriceRange = selectedPriceRange;
+	}
+
+	@Override
+	public void setScorer(Scorer scorer) throws IOException {
+		delegate.setScorer(scorer);
+	}
+
+	@Override
+	public void setNextReader(IndexReader reader, int docBase) throws IOException {
+		FieldCache.StringIndex categoryIndex = FieldCache.DEFAULT.getStringIndex(reader, "category");
+		addSegmentCounts();
+		categoryLookup = categoryIndex.lookup;
+		categoryOrder = categoryIndex.order;
+		segmentCategoryCounts = new int[categoryLookup.length];
+		priceOrdinals = PriceOrdinals.get(reader);
+		segmentPriceCounts = new int[priceOrdinals.prices.length];
+		
+		// Resolve the selections to this segment's ordinals once, rather than comparing values on every hit
+		if(selectedCategory != null) {
+			selectedOrders = new boolean[categoryLookup.length];
+			for(int order = 0; order < categoryLookup.length; order++) {
+				selectedOrders[order] = selectedCategory.equalsIgnoreCase(categoryLookup[order]);
+			}
+		}
+		if(selectedPriceRange != null) {
+			selectedPriceOrders = new boolean[priceOrdinals.prices.length];
+			for(int order = 0; order < priceOrdinals.prices.length; order++) {
+				selectedPriceOrders[order] = selectedPriceRange.contains(priceOrdinals.prices[order]);
+			}
+		}
+		delegate.setNextReader(reader, docBase);
+	}
+
+	@Override
+	public void collect(int doc) throws IOException {
+		totalHits++;
+		int order = categoryOrder[doc];
+		segmentCategoryCounts[order]++;
+		int priceOrder = priceOrdinals.order[doc];
+		segmentPriceCounts[priceOrder]++;
+		
+		if((selectedOrders == null || selectedOrders[order]) && (selectedPriceOrders == null || selectedPriceOrders[priceOrder])) {
+			matchingHits++;
+			delegate.collect(doc);
+		}
+	}
+
+	@Override
+	public boolean acceptsDocsOutOfOrder() {
+		return delegate.acceptsDocsOutOfOrder();
+	}
+	
+	/**
+	 * Adds the category and price counts of the segment just collected to the totals by value.  Category ordinal 0 is
+	 * the FieldCache's placeholder for documents without a category, so it's never counted.
+	 */
+	private void addSegmentCounts() {
+		if(segmentCategoryCounts == null) {
+			return;
+		}
+		for(int order = 1; order < segmentCategoryCounts.length; order++) {
+			if(segmentCategoryCounts[order] > 0) {
+				addCount(categoryCounts, categoryLookup[order], segmentCategoryCounts[order]);
+			}
+		}
+		for(int order = 0; order < segmentPriceCounts.length; order++) {
+			if(segmentPriceCounts[order] > 0) {
+				addCount(priceCounts, priceOrdinals.prices[order], segmentPriceCounts[order]);
+			}
+		}
+		segmentCategoryCounts = null;
+		segmentPriceCounts = null;
+	}
+
+	private static <K> void addCount(Map<K, int[]> counts, K key, int count) {
+		int[] total = counts.get(key);
+		if(total == null) {
+			total = new int[1];
+			counts.put(key, total);
+		}
+		total[0] += count;
+	}
+	
+	/**
+	 * @return the number of hits in each category found, sorted by category name
+	 */
+	public Map<String, Integer> getCategoryCounts() {
+		addSegmentCounts();
+		Map<String, Integer> categories = new TreeMap<String, Integer>();
+		for(Map.Entry<String, int[]> entry : categoryCounts.entrySet()) {
+			categories.put(entry.getKey(), entry.getValue()[0]);
+		}
+		return categories;
+	}
+
+	/**
+	 * @return the number of hits in each price band, keyed by band label, from the cheapest band up
+	 */
+	public Map<String, Integer> getPriceRangeCounts() {
+		addSegmentCounts();
+		float[] prices = new float[priceCounts.size()];
+		int[] counts = new int[priceCounts.size()];
+		int index = 0;
+		for(Map.Entry<Float, int[]> entry : priceCounts.entrySet()) {
+			prices[index] = entry.getKey();
+			counts[index++] = entry.getValue()[0];
+		}
+		return priceBands.count(prices, counts);
+	}
+
+	/**
+	 * @return the number of hits matching the query and filter, before any selected facets were applied
+	 */
+	public int getTotalHits() {
+		return totalHits;
+	}
+
+	/**
+	 * @return the number of hits matching the selected category and price range (i.e. the size of the result set)
+	 */
+	public int getMatchingHits() {
+		return matchingHits;
+	}
+
+	/**
+	 * The distinct prices in one index segment, in ascending order, and the ordinal of each document's price among
+	 * them... like a FieldCache "StringIndex", but for the numeric "price" field.  Built from the FieldCache's prices
+	 * the first time a segment is seen, and dropped when the segment's core is garbage collected.
+	 */
+	private static class PriceOrdinals {
+
+		private static final Map<Object, PriceOrdinals> cache = Collections.synchronizedMap(new WeakHashMap<Object, PriceOrdinals>());
+
+		final float[] prices;
+
+		final int[] order;
+
+		private PriceOrdinals(float[] prices, int[] order) {
+			this.prices = prices;
+			this.order = order;
+		}
+
+		static PriceOrdinals get(IndexReader reader) throws IOException {
+			Object key = reader.getCoreCacheKey();
+			PriceOrdinals ordinals = cache.get(key);
+			if(ordinals == null) {
+				float[] docPrices = FieldCache.DEFAULT.getFloats(reader, "price", FieldCache.NUMERIC_UTILS_FLOAT_PARSER);
+				float[] sorted = docPrices.clone();
+				Arrays.sort(sorted);
+				int distinct = 0;
+				for(int index = 0; index < sorted.length; index++) {
+					if(distinct == 0 || sorted[index] != sorted[distinct - 1]) {
+						sorted[distinct++] = sorted[index];
+					}
+				}
+				float[] prices = Arrays.copyOf(sorted, distinct);
+				int[] order = new int[docPrices.length];
+				for(int doc = 0; doc < docPrices.length; doc++) {
+					order[doc] = Arrays.binarySearch(prices, docPrices[doc]);
+				}
+				ordinals = new PriceOrdinals(prices, order);
+				cache.put(key, ordinals);
+			}
+			return ordinals;
+		}
+
+	}
+
+}
@@ -0,0 +1,133 @@
+package net.steveperkins.hibernatesearchdemo.search;
+
+import java.util.Date;
+
+/**
+ * A point-in-time snapshot of the progress of an App index rebuild (see "IndexRebuilder").  The RESTful admin service
+ * returns this object, converted to JSON, and the JMX attributes of "IndexRebuilderMBean" are read from it.
+ *
+ * "entitiesProcessed" counts every App loaded from the database, while "documentsIndexed" counts only those actually
+ * written to the index... inactive apps are skipped by "IndexWhenActiveInterceptor", so the two may differ.  The rate
+ * and ETA are based on "entitiesProcessed", because the total count from the database includes inactive apps too.
+ */
+public class IndexRebuildStatus {
+
+	/**
+	 * The lifecycle of a rebuild.  "IDLE" means that no rebuild has been started since the application launched.
+	 */
+	public enum State { IDLE, RUNNING, COMPLETED, FAILED }
+
+	private final State state;
+
+	private final int loaderThreads;
+
+	private final int fetchSize;
+
+	private final int batchSize;
+
+	private final Date startedAt;
+
+	private final long elapsedMillis;
+
+	private final long totalEntities;
+
+	private final long entitiesProcessed;
+
+	private final long documentsIndexed;
+
+	private final String error;
+
+	public IndexRebuildStatus(State state, int loaderThreads, int fetchSize, int batchSize, Date startedAt, long elapsedMillis,
+			long totalEntities, long entitiesProcessed, long documentsIndexed, String error) {
+		this.state = state;
+		this.loaderThreads = loaderThreads;
+		this.fetchSize = fetchSize;
+		this.batchSize = batchSize;
+		this.startedAt = startedAt;
+		this.elapsedMillis = elapsedMillis;
+		this.totalEntities = totalEntities;
+		this.entitiesProcessed = entitiesProcessed;
+		this.documentsIndexed = documentsIndexed;
+		this.error = error;
+	}
+
+	/**
+	 * @return the number of apps processed per second so far, averaged over the whole rebuild
+	 */
+	public long getDocumentsPerSecond() {
+		return elapsedMillis > 0 ? entitiesProcessed * 1000 / elapsedMillis : 0;
+	}
+
+	/**
+	 * @return the estimated number of seconds until a running rebuild completes, or -1 if unknown (i.e. the rebuild
+	 * isn't running, or hasn't processed anything yet)
+	 */
+	public long getEtaSeconds() {
+		long rate = getDocumentsPerSecond();
+		if(state != State.RUNNING || rate == 0 || totalEntities == 0) {
+			return -1;
+		}
+		return Math.max(0, totalEntities - entitiesProcessed) / rate;
+	}
+
+	/**
+	 * @return the percentage of apps processed so far, from 0 to 100
+	 */
+	public int getPercentComplete() {
+		if(state == State.COMPLETED) {
+			return 100;
+		}
+		return totalEntities > 0 ? (int) Math.min(100, entitiesProcessed * 100 / totalEntities) : 0;
+	}
+
+	//
+	// GETTERS
+	//
+
+	public State getState() {
+		return state;
+	}
+
+	public int getLoaderThreads() {
+		return loaderThreads;
+	}
+
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public Date getStartedAt() {
+		return startedAt;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	public long getTotalEntities() {
+		return totalEntities;
+	}
+
+	public long getEntitiesProcessed() {
+		return entitiesProcessed;
+	}
+
+	public long getDocumentsIndexed() {
+		return documentsIndexed;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	@Override
+	public String toString() {
+		return state + ": " + entitiesProcessed + " of " + totalEntities + " apps processed, " + documentsIndexed
+				+ " documents indexed (" + getDocumentsPerSecond() + " docs/second, ETA " + getEtaSeconds() + " seconds)";
+	}
+
+}
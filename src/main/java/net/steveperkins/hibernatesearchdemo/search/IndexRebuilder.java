@@ -0,0 +1,362 @@
+package net.steveperkins.hibernatesearchdemo.search;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.steveperkins.hibernatesearchdemo.domain.App;
+import net.steveperkins.hibernatesearchdemo.search.IndexRebuildStatus.State;
+import net.steveperkins.hibernatesearchdemo.util.HibernateContext;
+import net.steveperkins.hibernatesearchdemo.util.Settings;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.hibernate.CacheMode;
+import org.hibernate.search.FullTextSession;
+import org.hibernate.search.SearchFactory;
+import org.hibernate.search.batchindexing.MassIndexerProgressMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rebuilds the App index from the database, using the Hibernate Search "MassIndexer".  Rather than saving (or updating)
+ * one entity at a time and letting Hibernate Search index it as a side-effect, the MassIndexer streams App ID's from
+ * the database, loads the entities in batches on several threads in parallel, and feeds the resulting documents to the
+ * index writer in bulk.  For a large catalog that's faster by orders of magnitude.
+ *
+ * A rebuild runs in the background, on a dedicated thread, and is started through the RESTful admin service (see
+ * "IndexRebuildResource") or through JMX (see "IndexRebuilderMBean").  Only one rebuild may run at a time.  Progress,
+ * throughput and an ETA are available while it runs, through "getStatus()".
+ *
+ * Search traffic is never blocked by a rebuild... queries keep running against the index while it's rebuilt.  The
+ * index isn't purged first.  Instead, each app's new document replaces its old one (see
+ * "ReplacingBackendQueueProcessor"), so searches see the whole catalog throughout, some apps as rebuilt and the rest as
+ * they were.  Afterwards, the documents of apps that have since been deleted or deactivated, which the MassIndexer
+ * knows nothing about, are purged.  Cached search results are tied to the index version (see "SearchResultCache"), so
+ * none from before or during the rebuild outlive it.
+ *
+ * Once the App index is rebuilt, the review index is rebuilt from the database too (see "ReviewIndex").
+ *
+ * The default number of loader threads, the ID fetch size and the entity batch size are read from "vaporware.properties"
+ * ("rebuild.*"), and may be overridden for each rebuild.
+ */
+public class IndexRebuilder implements IndexRebuilderMBean {
+
+	private static Logger logger = LoggerFactory.getLogger(IndexRebuilder.class);
+
+	public static final int DEFAULT_LOADER_THREADS = Settings.getInt("rebuild.loaderThreads", 4);
+
+	public static final int DEFAULT_FETCH_SIZE = Settings.getInt("rebuild.fetchSize", 1000);
+
+	public static final int DEFAULT_BATCH_SIZE = Settings.getInt("rebuild.batchSize", 50);
+
+	private static final IndexRebuilder instance = new IndexRebuilder();
+
+	/**
+	 * How long "shutdown()" waits for a running rebuild to finish
+	 */
+	private static final long SHUTDOWN_WAIT_MILLIS = Settings.getLong("rebuild.shutdownWaitMillis", 60000);
+
+	/**
+	 * A single daemon thread, which runs (and waits on) the MassIndexer.  The MassIndexer starts its own loader threads.
+	 */
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "index-rebuild");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private volatile Rebuild current;
+
+	private IndexRebuilder() {
+	}
+
+	/**
+	 * @return the single, shared index rebuilder
+	 */
+	public static IndexRebuilder getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Starts a rebuild in the background, with the default settings from "vaporware.properties".
+	 *
+	 * @return a Future that completes when the rebuild does, or null if a rebuild is already running
+	 */
+	public Future<IndexRebuildStatus> start() {
+		return start(DEFAULT_LOADER_THREADS, DEFAULT_FETCH_SIZE, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Starts a rebuild in the background.
+	 *
+	 * @param loaderThreads the number of threads loading App entities from the database in parallel
+	 * @param fetchSize the JDBC fetch size used when streaming App ID's from the database
+	 * @param batchSize the number of App entities loaded per query by each loader thread
+	 * @return a Future that completes when the rebuild does, or null if a rebuild is already running
+	 * @throws IllegalStateException if the rebuilder has been shut down
+	 */
+	public synchronized Future<IndexRebuildStatus> start(int loaderThreads, int fetchSize, int batchSize) {
+		if(loaderThreads < 1 || fetchSize < 1 || batchSize < 1) {
+			throw new IllegalArgumentException("loaderThreads, fetchSize and batchSize must all be positive");
+		}
+		if(executor.isShutdown()) {
+			throw new IllegalStateException("The index rebuilder has been shut down");
+		}
+		if(current != null && current.state == State.RUNNING) {
+			return null;
+		}
+		final Rebuild rebuild = new Rebuild(loaderThreads, fetchSize, batchSize);
+		current = rebuild;
+		logger.info("Starting App index rebuild with " + loaderThreads + " loader threads, fetch size " + fetchSize
+				+ " and batch size " + batchSize);
+		return executor.submit(new Callable<IndexRebuildStatus>() {
+			public IndexRebuildStatus call() {
+				rebuild.run();
+				return rebuild.toStatus();
+			}
+		});
+	}
+
+	/**
+	 * @return the progress of the running rebuild, or the outcome of the last one
+	 */
+	public IndexRebuildStatus getStatus() {
+		Rebuild rebuild = current;
+		if(rebuild == null) {
+			return new IndexRebuildStatus(State.IDLE, 0, 0, 0, null, 0, 0, 0, 0, null);
+		}
+		return rebuild.toStatus();
+	}
+
+	/**
+	 * Stops accepting rebuilds, and waits up to "rebuild.shutdownWaitMillis" for a running one to finish, so that nothing
+	 * uses the SessionFactory after it's closed (see "StartupDataLoader.contextDestroyed()").
+	 *
+	 * The rebuild isn't interrupted.  The MassIndexer gives up on an interrupt without waiting for its own loader
+	 * threads, which then carry on writing to an index that's about to be closed.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+		try {
+			if(!executor.awaitTermination(SHUTDOWN_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+				logger.error("App index rebuild still running " + SHUTDOWN_WAIT_MILLIS + " ms after shutdown, abandoning it.  "
+						+ getStatus());
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	//
+	// JMX ATTRIBUTES AND OPERATIONS
+	//
+
+	public boolean startRebuild() {
+		return start() != null;
+	}
+
+	public boolean startRebuild(int loaderThreads, int fetchSize, int batchSize) {
+		return start(loaderThreads, fetchSize, batchSize) != null;
+	}
+
+	public String getState() {
+		return getStatus().getState().name();
+	}
+
+	public long getTotalEntities() {
+		return getStatus().getTotalEntities();
+	}
+
+	public long getEntitiesProcessed() {
+		return getStatus().getEntitiesProcessed();
+	}
+
+	public long getDocumentsIndexed() {
+		return getStatus().getDocumentsIndexed();
+	}
+
+	public long getDocumentsPerSecond() {
+		return getStatus().getDocumentsPerSecond();
+	}
+
+	public long getEtaSeconds() {
+		return getStatus().getEtaSeconds();
+	}
+
+	public int getPercentComplete() {
+		return getStatus().getPercentComplete();
+	}
+
+	/**
+	 * A single run of the MassIndexer.  It doubles as the MassIndexer's progress monitor, whose callbacks arrive
+	 * concurrently from the loader and indexing threads... hence the atomic counters.
+	 */
+	private static class Rebuild implements MassIndexerProgressMonitor {
+
+		private static final long LOG_INTERVAL_MILLIS = 10000;
+
+		private final int loaderThreads;
+
+		private final int fetchSize;
+
+		private final int batchSize;
+
+		private final long startedAt = System.currentTimeMillis();
+
+		private final AtomicLong totalEntities = new AtomicLong();
+
+		private final AtomicLong entitiesProcessed = new AtomicLong();
+
+		private final AtomicLong documentsIndexed = new AtomicLong();
+
+		private final AtomicLong lastLoggedAt = new AtomicLong(startedAt);
+
+		private volatile State state = State.RUNNING;
+
+		private volatile long finishedAt;
+
+		private volatile String error;
+
+		Rebuild(int loaderThreads, int fetchSize, int batchSize) {
+			this.loaderThreads = loaderThreads;
+			this.fetchSize = fetchSize;
+			this.batchSize = batchSize;
+		}
+
+		void run() {
+			FullTextSession session = HibernateContext.openFullTextSession();
+			try {
+				// The second-level cache would only be polluted by a full sweep of the catalog, so it's bypassed.  The index 
+				// isn't purged, so that searches can still find every app while it's rebuilt.
+				session.createIndexer(App.class)
+					.purgeAllOnStart(false)
+					.threadsToLoadObjects(loaderThreads)
+					.idFetchSize(fetchSize)
+					.batchSizeToLoadObjects(batchSize)
+					.cacheMode(CacheMode.IGNORE)
+					.progressMonitor(this)
+					.startAndWait();
+				purgeStaleDocuments(session);
+				
+				// The App index only holds a sample of each app's reviews, so the index of every review is rebuilt with it
+				ReviewIndex.getInstance().rebuild();
+				state = State.COMPLETED;
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				error = "Interrupted";
+				state = State.FAILED;
+			} catch(RuntimeException e) {
+				logger.error("App index rebuild failed", e);
+				error = e.toString();
+				state = State.FAILED;
+			} finally {
+				finishedAt = System.currentTimeMillis();
+				session.close();
+				SearchResultCache.getInstance().invalidateAll();
+			}
+			logger.info("App index rebuild finished in " + (finishedAt - startedAt) + " ms.  " + toStatus());
+		}
+
+		/**
+		 * Purges the documents of apps that are no longer active (or no longer exist at all).  The MassIndexer only 
+		 * loads active apps, so these documents are left over from before the rebuild.
+		 */
+		@SuppressWarnings("unchecked")
+		private void purgeStaleDocuments(FullTextSession session) {
+			// The indexed ID's are read before the active ones, so that an app added in the meantime (and indexed by its 
+			// own transaction) can't be mistaken for a stale one
+			Set<Long> staleIds = readIndexedIds(session.getSearchFactory());
+			List<Long> activeIds = session.createQuery("select id from App where active = true").list();
+			staleIds.removeAll(activeIds);
+			if(staleIds.isEmpty()) {
+				return;
+			}
+			session.beginTransaction();
+			for(Long id : staleIds) {
+				session.purge(App.class, id);
+			}
+			session.getTransaction().commit();
+			logger.info("Purged " + staleIds.size() + " documents of deleted or inactive apps from the App index");
+		}
+
+		/**
+		 * @return the ID of every app with a document in the App index
+		 */
+		private static Set<Long> readIndexedIds(SearchFactory searchFactory) {
+			Set<Long> ids = new HashSet<Long>();
+			IndexReader reader = searchFactory.getIndexReaderAccessor().open(App.class);
+			try {
+				// A term may outlive all of its documents until their segment is merged away, so each one is checked
+				TermEnum terms = reader.terms(new Term("id", ""));
+				TermDocs termDocs = reader.termDocs();
+				try {
+					do {
+						Term term = terms.term();
+						if(term == null || !term.field().equals("id")) {
+							break;
+						}
+						termDocs.seek(term);
+						if(termDocs.next()) {
+							ids.add(Long.valueOf(term.text()));
+						}
+					} while(terms.next());
+				} finally {
+					termDocs.close();
+					terms.close();
+				}
+			} catch(IOException e) {
+				throw new IllegalStateException("Unable to read the App index", e);
+			} finally {
+				searchFactory.getIndexReaderAccessor().close(reader);
+			}
+			return ids;
+		}
+
+		IndexRebuildStatus toStatus() {
+			long elapsed = (state == State.RUNNING ? System.currentTimeMillis() : finishedAt) - startedAt;
+			return new IndexRebuildStatus(state, loaderThreads, fetchSize, batchSize, new Date(startedAt), elapsed,
+					totalEntities.get(), entitiesProcessed.get(), documentsIndexed.get(), error);
+		}
+
+		public void addToTotalCount(long count) {
+			totalEntities.addAndGet(count);
+		}
+
+		public void entitiesLoaded(int size) {
+		}
+
+		public void documentsBuilt(int number) {
+			entitiesProcessed.addAndGet(number);
+
+			// Log progress periodically, from whichever thread happens to cross the interval first
+			long now = System.currentTimeMillis();
+			long last = lastLoggedAt.get();
+			if(now - last >= LOG_INTERVAL_MILLIS && lastLoggedAt.compareAndSet(last, now)) {
+				logger.info("App index rebuild in progress.  " + toStatus());
+			}
+		}
+
+		public void documentsAdded(long increment) {
+			documentsIndexed.addAndGet(increment);
+		}
+
+		public void indexingCompleted() {
+		}
+
+	}
+
+}
@@ -0,0 +1,38 @@
+package net.steveperkins.hibernatesearchdemo.search;
+
+/**
+ * The JMX management interface for "IndexRebuilder".  Following the standard MBean naming convention, JMX exposes each
+ * getter as a read-only attribute and each other method as an operation.  The rebuilder is registered with the platform
+ * MBean server by "StartupDataLoader", under the name "net.steveperkins.hibernatesearchdemo:type=IndexRebuilder".
+ */
+public interface IndexRebuilderMBean {
+
+	/**
+	 * Starts a rebuild with the default settings from "vaporware.properties".
+	 *
+	 * @return false if a rebuild is already running
+	 */
+	boolean startRebuild();
+
+	/**
+	 * Starts a rebuild with the given number of loader threads, ID fetch size and entity batch size.
+	 *
+	 * @return false if a rebuild is already running
+	 */
+	boolean startRebuild(int loaderThreads, int fetchSize, int batchSize);
+
+	String getState();
+
+	long getTotalEntities();
+
+	long getEntitiesProcessed();
+
+	long getDocumentsIndexed();
+
+	long getDocumentsPerSecond();
+
+	long getEtaSeconds();
+
+	int getPercentComplete();
+
+}
@@ -0,0 +1,55 @@
+package net.steveperkins.hibernatesearchdemo.search;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.function.CustomScoreProvider;
+import org.apache.lucene.search.function.CustomScoreQuery;
+
+/**
+ * Wraps a query, multiplying the relevance score of each hit by the popularity boost of its app (see
+ * "PopularitySignals").  The boost is read from the segment's array of signals by document number, so scoring a hit
+ * costs an array lookup and a logarithm... there's no per-hit query, and nothing is loaded from the documents.
+ */
+public class PopularityBoostQuery extends CustomScoreQuery {
+
+	private static final long serialVersionUID = 1L;
+
+	private final transient PopularitySignals signals;
+
+	public PopularityBoostQuery(Query subQuery, PopularitySignals signals) {
+		super(subQuery);
+		this.signals = signals;
+	}
+
+	@Override
+	protected CustomScoreProvider getCustomScoreProvider(IndexReader segmentReader) throws IOException {
+		final float[] values = signals.getSignals(segmentReader);
+		return new CustomScoreProvider(segmentReader) {
+
+			@Override
+			public float customScore(int doc, float subQueryScore, float[] valSrcScores) {
+				return subQueryScore * signals.getBoost(values[doc]);
+			}
+
+			@Override
+			public Explanation customExplain(int doc, Explanation subQueryExpl, Explanation[] valSrcExpls) {
+				float boost = signals.getBoost(values[doc]);
+				Explanation explanation = new Explanation(subQueryExpl.getValue() * boost, "popularity boosted, product of:");
+				explanation.addDetail(subQueryExpl);
+				explanation.addDetail(new Explanation(boost, "popularity boost, 1 + " + signals.getWeight() + " * ln(1 + "
+						+ signals.getSignal().name().toLowerCase() + " " + values[doc] + ")"));
+				return explanation;
+			}
+
+		};
+	}
+
+	@Override
+	public String name() {
+		return "popularity";
+	}
+
+}
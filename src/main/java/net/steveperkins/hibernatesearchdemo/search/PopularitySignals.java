@@ -0,0 +1,245 @@
+package net.steveperkins.hibernatesearchdemo.search;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.steveperkins.hibernatesearchdemo.domain.CustomerReview;
+import net.steveperkins.hibernatesearchdemo.util.ReviewStatisticsBridge;
+import net.steveperkins.hibernatesearchdemo.util.Settings;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.Query;
+
+/**
+ * Holds a popularity signal for every app (its average rating, or its number of five-star reviews), for boosting the
+ * relevance of popular apps at query time (see "PopularityBoostQuery").
+ *
+ * The index-time alternative is a @DynamicBoost (see "FiveStarBoostStrategy"), which is baked into the App document... so
+ * the boost only moves when the whole document is rewritten.  Here instead, the signal lives in a plain float array per
+ * index segment, indexed by document number like a FieldCache entry.  Each array starts out as the value computed when
+ * the app was indexed (see "ReviewStatisticsBridge"), and "update()" patches it in place afterwards:  the new value is
+ * kept in a small side table by app ID, and applied to every segment's array the next time that segment is searched.
+ * Finding an app's document in a segment is a single term lookup on the "id" field, so applying an update costs next to
+ * nothing, and no document is reindexed.  A segment created after an update (e.g. by a merge) starts from the index's
+ * values, and has the side table applied to it in full.
+ *
+ * Each update bumps a version number, which search results are cached under (see "AppSearchService"), so that a cached
+ * result never outlives the signals it was ranked with.
+ *
+ * The signal is chosen by "search.popularity.signal" ("rating", "fiveStars", or "none" to leave relevance alone), and
+ * how far it can lift an app by "search.popularity.weight".
+ */
+public class PopularitySignals {
+
+	public enum Signal { NONE, RATING, FIVE_STARS }
+
+	private static final PopularitySignals instance = new PopularitySignals(
+			parseSignal(Settings.getString("search.popularity.signal", "none")),
+			Settings.getFloat("search.popularity.weight", 0.5f));
+
+	private final Signal signal;
+
+	private final float weight;
+
+	private final AtomicLong version = new AtomicLong();
+
+	/** The signal of every app updated since startup, by app ID */
+	private final ConcurrentMap<Long, Update> updates = new ConcurrentHashMap<Long, Update>();
+
+	/** Signals per document, per segment.  Keyed on the segment's core cache key, like the FieldCache. */
+	private final Map<Object, SegmentSignals> segments = Collections.synchronizedMap(new WeakHashMap<Object, SegmentSignals>());
+
+	public PopularitySignals(Signal signal, float weight) {
+		this.signal = signal;
+		this.weight = weight;
+	}
+
+	/**
+	 * @return the popularity signals used by the search page and JSON search API, configured in "vaporware.properties"
+	 */
+	public static PopularitySignals getInstance() {
+		return instance;
+	}
+
+	private static Signal parseSignal(String value) {
+		if("rating".equalsIgnoreCase(value.trim())) {
+			return Signal.RATING;
+		} else if("fiveStars".equalsIgnoreCase(value.trim())) {
+			return Signal.FIVE_STARS;
+		} else if("none".equalsIgnoreCase(value.trim())) {
+			return Signal.NONE;
+		}
+		throw new IllegalArgumentException("Setting \"search.popularity.signal\" must be \"rating\", \"fiveStars\" or \"none\", not \"" + value + "\"");
+	}
+
+	/**
+	 * @return true if relevance is boosted by popularity at all
+	 */
+	public boolean isEnabled() {
+		return signal != Signal.NONE && weight != 0;
+	}
+
+	/**
+	 * Wraps a query so that each hit's relevance is multiplied by its popularity boost, or returns the query as it is if
+	 * popularity boosting is disabled.
+	 */
+	public Query boost(Query query) {
+		return isEnabled() ? new PopularityBoostQuery(query, this) : query;
+	}
+
+	/**
+	 * Recomputes an app's signal from its current reviews.
+	 */
+	public void update(long appId, Collection<CustomerReview> reviews) {
+		if(signal == Signal.FIVE_STARS) {
+			update(appId, ReviewStatisticsBridge.getFiveStarCount(reviews));
+		} else {
+			update(appId, ReviewStatisticsBridge.getRating(reviews));
+		}
+	}
+
+	/**
+	 * Sets an app's signal, which takes effect from the next search on.
+	 */
+	public synchronized void update(long appId, float value) {
+		if(value < 0 || Float.isNaN(value) || Float.isInfinite(value)) {
+			throw new IllegalArgumentException("A popularity signal must be a non-negative number, not " + value);
+		}
+		// The version only moves once the update is in the table, so a segment brought up to a version never misses one
+		long next = version.get() + 1;
+		updates.put(appId, new Update(value, next));
+		version.set(next);
+	}
+
+	/**
+	 * @return a number that changes whenever any app's signal does
+	 */
+	public long getVersion() {
+		return version.get();
+	}
+
+	/**
+	 * The multiplier applied to the relevance of a hit with the given signal:  1 for a signal of zero, rising with the
+	 * logarithm of the signal so that a few very popular apps can't drown out relevance altogether.
+	 */
+	public float getBoost(float value) {
+		return 1 + weight * (float) Math.log1p(value);
+	}
+
+	/**
+	 * Returns the signal of every document in one index segment, with any updates applied.  The array is shared, and must
+	 * not be modified.
+	 */
+	public float[] getSignals(IndexReader segmentReader) throws IOException {
+		Object key = segmentReader.getCoreCacheKey();
+		SegmentSignals segment = segments.get(key);
+		if(segment == null) {
+			segment = new SegmentSignals(loadIndexedSignals(segmentReader));
+			segments.put(key, segment);
+		}
+		long current = version.get();
+		if(segment.appliedVersion < current) {
+			applyUpdates(segmentReader, segment, current);
+		}
+		return segment.values;
+	}
+
+	/**
+	 * Copies the signals computed at index time out of the FieldCache, since they'll be patched in place.
+	 */
+	private float[] loadIndexedSignals(IndexReader segmentReader) throws IOException {
+		if(signal == Signal.FIVE_STARS) {
+			int[] counts = FieldCache.DEFAULT.getInts(segmentReader, ReviewStatisticsBridge.FIVE_STAR_COUNT_FIELD, FieldCache.NUMERIC_UTILS_INT_PARSER);
+			float[] values = new float[counts.length];
+			for(int doc = 0; doc < counts.length; doc++) {
+				values[doc] = counts[doc];
+			}
+			return values;
+		}
+		return FieldCache.DEFAULT.getFloats(segmentReader, ReviewStatisticsBridge.RATING_FIELD, FieldCache.NUMERIC_UTILS_FLOAT_PARSER).clone();
+	}
+
+	/**
+	 * Writes the updates the segment hasn't seen yet into its array, finding each app's document by its ID.
+	 */
+	private void applyUpdates(IndexReader segmentReader, SegmentSignals segment, long current) throws IOException {
+		synchronized(segment) {
+			if(segment.appliedVersion >= current) {
+				return;
+			}
+			TermDocs termDocs = segmentReader.termDocs();
+			try {
+				for(Map.Entry<Long, Update> entry : updates.entrySet()) {
+					Update update = entry.getValue();
+					if(update.version <= segment.appliedVersion) {
+						continue;
+					}
+					termDocs.seek(new Term("id", entry.getKey().toString()));
+					while(termDocs.next()) {
+						segment.values[termDocs.doc()] = update.value;
+					}
+				}
+			} finally {
+				termDocs.close();
+			}
+			segment.appliedVersion = current;
+		}
+	}
+
+	//
+	// GETTERS
+	//
+
+	public Signal getSignal() {
+		return signal;
+	}
+
+	public float getWeight() {
+		return weight;
+	}
+
+	public int getUpdateCount() {
+		return updates.size();
+	}
+
+	/**
+	 * An app's signal, and the version at which it was set.
+	 */
+	private static class Update {
+
+		final float value;
+
+		final long version;
+
+		Update(float value, long version) {
+			this.value = value;
+			this.version = version;
+		}
+
+	}
+
+	/**
+	 * The signals of one segment's documents, and the version of the updates applied to them so far.
+	 */
+	private static class SegmentSignals {
+
+		final float[] values;
+
+		volatile long appliedVersion;
+
+		SegmentSignals(float[] values) {
+			this.values = values;
+		}
+
+	}
+
+}
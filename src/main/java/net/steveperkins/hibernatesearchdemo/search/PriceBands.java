@@ -0,0 +1,131 @@
+package net.steveperkins.hibernatesearchdemo.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.steveperkins.hibernatesearchdemo.util.Settings;
+
+/**
+ * Decides the bands of the price range facet, given how many hits there are at each price.
+ *
+ * With fixed bands, the hits are simply counted into the same bands for every search (by default "below $1", "$1 - $5"
+ * and "above $5", or split wherever "search.priceBands.boundaries" says).  Real catalogs rarely suit fixed bands, though...
+ * most apps are free or very cheap, so nearly every hit lands in the bottom band.  Quantile bands instead split each
+ * result set's own prices into "search.priceBands.count" bands holding roughly equal numbers of hits (e.g. "free",
+ * "$0.99", "$1.99 - $4.99" and "$5.99 - $49.99").  A band never splits the hits at one price, so there may be fewer
+ * bands than asked for when the prices are few.
+ *
+ * Either way, the bands are worked out from a count of hits per distinct price, which "FacetCountingCollector" gathers
+ * in the same pass over the hits as the other facets.  So quantile bands cost no extra queries, nor a second look at
+ * the hits.
+ */
+public class PriceBands {
+
+	private static final PriceBands instance = fromSettings();
+
+	/** The fixed bands, or null for quantile bands */
+	private final List<PriceRange> fixedRanges;
+
+	private final int quantiles;
+
+	private PriceBands(List<PriceRange> fixedRanges, int quantiles) {
+		this.fixedRanges = fixedRanges;
+		this.quantiles = quantiles;
+	}
+
+	/**
+	 * @return the same bands for every search
+	 */
+	public static PriceBands fixed(List<PriceRange> ranges) {
+		return new PriceBands(ranges, 0);
+	}
+
+	/**
+	 * @return bands computed for each search, splitting its hits into "count" bands of roughly equal size
+	 */
+	public static PriceBands quantiles(int count) {
+		if(count < 1) {
+			throw new IllegalArgumentException("There must be at least one price band, not " + count);
+		}
+		return new PriceBands(null, count);
+	}
+
+	/**
+	 * @return the price bands configured in "vaporware.properties", used by the search page and JSON search API
+	 */
+	public static PriceBands getInstance() {
+		return instance;
+	}
+
+	private static PriceBands fromSettings() {
+		if("quantile".equalsIgnoreCase(Settings.getString("search.priceBands.mode", "fixed"))) {
+			return quantiles(Settings.getInt("search.priceBands.count", 4));
+		}
+		String[] values = Settings.getString("search.priceBands.boundaries", "1,5").split(",");
+		float[] boundaries = new float[values.length];
+		for(int index = 0; index < values.length; index++) {
+			boundaries[index] = Float.parseFloat(values[index].trim());
+		}
+		Arrays.sort(boundaries);
+		return fixed(PriceRange.fromBoundaries(boundaries));
+	}
+
+	/**
+	 * Counts hits into price bands.
+	 *
+	 * @param prices every distinct price among the hits, in ascending order
+	 * @param counts the number of hits at each of those prices
+	 * @return the number of hits in each band, keyed by band label, from the cheapest band up
+	 */
+	public Map<String, Integer> count(float[] prices, int[] counts) {
+		List<PriceRange> ranges = fixedRanges != null ? fixedRanges : splitQuantiles(prices, counts);
+		Map<String, Integer> bands = new LinkedHashMap<String, Integer>();
+		for(PriceRange range : ranges) {
+			int count = 0;
+			for(int index = 0; index < prices.length; index++) {
+				if(range.contains(prices[index])) {
+					count += counts[index];
+				}
+			}
+			bands.put(range.getLabel(), count);
+		}
+		return bands;
+	}
+
+	/**
+	 * Walks up the prices, closing each band at the price that brings it closest to an equal share of the hits not
+	 * yet in a band.  Each band runs from its lowest price to its highest, both inclusive.
+	 */
+	private List<PriceRange> splitQuantiles(float[] prices, int[] counts) {
+		int remaining = 0;
+		for(int count : counts) {
+			remaining += count;
+		}
+		int bands = Math.min(quantiles, prices.length);
+		List<PriceRange> ranges = new ArrayList<PriceRange>(bands);
+		int start = 0;
+		for(int band = 0; band < bands; band++) {
+			int bandsLeft = bands - band;
+			double target = (double) remaining / bandsLeft;
+			int end = start + 1;
+			int size = counts[start];
+			if(bandsLeft == 1) {
+				end = prices.length;
+			} else {
+				// Leave at least one price for each of the bands still to come
+				while(end < prices.length - (bandsLeft - 1) && size + counts[end] / 2.0 <= target) {
+					size += counts[end];
+					end++;
+				}
+			}
+			ranges.add(new PriceRange(prices[start], true, prices[end - 1], true));
+			remaining -= size;
+			start = end;
+		}
+		return ranges;
+	}
+
+}
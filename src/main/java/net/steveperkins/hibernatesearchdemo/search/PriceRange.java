@@ -0,0 +1,141 @@
+package net.steveperkins.hibernatesearchdemo.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A band of app prices, used for the price range facet.  Either end of the band may be open (i.e. null).  
+ * 
+ * The label of each band uses the same format as a Hibernate Search range facet value (e.g. "[1.0, 5.0]"), which is 
+ * what the search results JSP expects to receive and send back as the "selectedPriceRange" parameter.  Because the 
+ * bands can be computed afresh for each result set (see "PriceBands"), a selected band is parsed back from its label 
+ * rather than looked up among known bands.
+ */
+public class PriceRange {
+
+	/**
+	 * The standard price bands of "under $1", "$1-$5", and "above $5".
+	 */
+	public static final List<PriceRange> DEFAULT_RANGES = fromBoundaries(1f, 5f);
+	
+	private static final Pattern LABEL = Pattern.compile("([\\[(])\\s*([^,]*?)\\s*,\\s*([^\\])]*?)\\s*([\\])])");
+	
+	private final Float min;
+	
+	private final boolean includeMin;
+	
+	private final Float max;
+	
+	private final boolean includeMax;
+	
+	private final String label;
+
+	public PriceRange(Float min, boolean includeMin, Float max, boolean includeMax) {
+		this.min = min;
+		this.includeMin = includeMin;
+		this.max = max;
+		this.includeMax = includeMax;
+		this.label = (includeMin ? "[" : "(") + (min == null ? "" : min.toString()) + ", " 
+				+ (max == null ? "" : max.toString()) + (includeMax ? "]" : ")");
+	}
+	
+	/**
+	 * Builds bands split at each of the given prices, in ascending order.  A price that's exactly on a boundary falls 
+	 * in the band below it, except for the lowest boundary... so boundaries of 1 and 5 make the standard bands of 
+	 * "below $1", "$1 - $5" and "above $5".
+	 */
+	public static List<PriceRange> fromBoundaries(float... boundaries) {
+		List<PriceRange> ranges = new ArrayList<PriceRange>(boundaries.length + 1);
+		Float lower = null;
+		for(int index = 0; index <= boundaries.length; index++) {
+			Float upper = index < boundaries.length ? boundaries[index] : null;
+			ranges.add(new PriceRange(lower, lower == null || index == 1, upper, upper == null || index > 0));
+			lower = upper;
+		}
+		return Collections.unmodifiableList(ranges);
+	}
+	
+	/**
+	 * Parses a band from its label, returning null if the label isn't one (e.g. "all").
+	 */
+	public static PriceRange parse(String label) {
+		Matcher matcher = label == null ? null : LABEL.matcher(label.trim());
+		if(matcher == null || !matcher.matches()) {
+			return null;
+		}
+		try {
+			return new PriceRange(
+					matcher.group(2).isEmpty() ? null : Float.valueOf(matcher.group(2)), matcher.group(1).equals("["), 
+					matcher.group(3).isEmpty() ? null : Float.valueOf(matcher.group(3)), matcher.group(4).equals("]"));
+		} catch(NumberFormatException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * @return true if the given price falls within this band
+	 */
+	public boolean contains(float price) {
+		if(min != null && (includeMin ? price < min : price <= min)) {
+			return false;
+		}
+		if(max != null && (includeMax ? price > max : price >= max)) {
+			return false;
+		}
+		return true;
+	}
+
+	//
+	// GETTERS
+	//
+	
+	public Float getMin() {
+		return min;
+	}
+
+	public boolean isIncludeMin() {
+		return includeMin;
+	}
+
+	public Float getMax() {
+		return max;
+	}
+
+	public boolean isIncludeMax() {
+		return includeMax;
+	}
+
+	public String getLabel() {
+		return label;
+	}
+	
+	/**
+	 * @return the band in words for the search page, e.g. "below $1", "$1.99 - $4.99" or "free"
+	 */
+	public String getDescription() {
+		if(min == null && max == null) {
+			return "any price";
+		} else if(min == null) {
+			return (includeMax ? "up to " : "below ") + formatPrice(max);
+		} else if(max == null) {
+			return includeMin ? formatPrice(min) + " and up" : "above " + formatPrice(min);
+		} else if(min.equals(max)) {
+			return min == 0 ? "free" : formatPrice(min);
+		}
+		return formatPrice(min) + " - " + formatPrice(max);
+	}
+	
+	private static String formatPrice(float price) {
+		return price == Math.rint(price) ? "$" + (long) price : String.format(Locale.ENGLISH, "$%.2f", price);
+	}
+
+	@Override
+	public String toString() {
+		return label;
+	}
+
+}
@@ -0,0 +1,80 @@
+package net.steveperkins.hibernatesearchdemo.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.locks.Lock;
+
+import org.hibernate.search.backend.AddLuceneWork;
+import org.hibernate.search.backend.IndexingMonitor;
+import org.hibernate.search.backend.LuceneWork;
+import org.hibernate.search.backend.UpdateLuceneWork;
+import org.hibernate.search.backend.impl.lucene.LuceneBackendQueueProcessor;
+import org.hibernate.search.backend.spi.BackendQueueProcessor;
+import org.hibernate.search.indexes.impl.DirectoryBasedIndexManager;
+import org.hibernate.search.spi.WorkerBuildContext;
+
+/**
+ * The standard Lucene backend, except that every document added replaces any document already in the index with the
+ * same ID.  It's the backend of every index in synchronous mode, and the delegate of "BatchingBackendQueueProcessor" in
+ * asynchronous mode (see "HibernateContext").
+ *
+ * The MassIndexer can only add documents... it assumes that the index was purged before it started.  But a purged
+ * index leaves searches with only part of the catalog until the rebuild completes.  So "IndexRebuilder" rebuilds the
+ * App index without purging it, and this backend turns each document the MassIndexer streams in into an update of the
+ * document with the same ID.  The old document is replaced by the new one in a single step, so a search always finds
+ * an app exactly once, before and after it's rebuilt.
+ *
+ * The same goes for the documents of newly saved apps.  An app saved while a rebuild runs may reach the index through
+ * the MassIndexer first, and through its own transaction (which, in asynchronous mode, may wait in the queue for a
+ * while) second.  Added as is, it would be found twice.  Replacing a document that isn't there yet costs one extra
+ * term lookup.
+ */
+public class ReplacingBackendQueueProcessor implements BackendQueueProcessor {
+
+	private final LuceneBackendQueueProcessor delegate = new LuceneBackendQueueProcessor();
+
+	public void initialize(Properties props, WorkerBuildContext context, DirectoryBasedIndexManager indexManager) {
+		delegate.initialize(props, context, indexManager);
+	}
+
+	public void applyWork(List<LuceneWork> workList, IndexingMonitor monitor) {
+		List<LuceneWork> replacing = new ArrayList<LuceneWork>(workList.size());
+		for(LuceneWork work : workList) {
+			replacing.add(replacing(work));
+		}
+		delegate.applyWork(replacing, monitor);
+	}
+
+	/**
+	 * The MassIndexer streams its documents in one at a time through here.
+	 */
+	public void applyStreamWork(LuceneWork singleOperation, IndexingMonitor monitor) {
+		delegate.applyStreamWork(replacing(singleOperation), monitor);
+	}
+
+	public Lock getExclusiveWriteLock() {
+		return delegate.getExclusiveWriteLock();
+	}
+
+	public void indexMappingChanged() {
+		delegate.indexMappingChanged();
+	}
+
+	public void close() {
+		delegate.close();
+	}
+
+	/**
+	 * @return an update of the same document in place of an add, or any other work unchanged
+	 */
+	private static LuceneWork replacing(LuceneWork work) {
+		if(!(work instanceof AddLuceneWork)) {
+			return work;
+		}
+		AddLuceneWork add = (AddLuceneWork) work;
+		return new UpdateLuceneWork(add.getId(), add.getIdInString(), add.getEntityClass(), add.getDocument(),
+				add.getFieldToAnalyzerMap());
+	}
+
+}
@@ -0,0 +1,369 @@
+package net.steveperkins.hibernatesearchdemo.search;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.steveperkins.hibernatesearchdemo.domain.CustomerReview;
+import net.steveperkins.hibernatesearchdemo.util.HibernateContext;
+import net.steveperkins.hibernatesearchdemo.util.Settings;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.NumericRangeFilter;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A Lucene index of every customer review of every active app, one document per review, kept apart from the App index.
+ *
+ * The App index only holds a bounded sample of each app's reviews (see "ReviewSample"), so that a popular app's
+ * document stays a sensible size.  The rest of the review text is searchable here instead, but only when a search
+ * asks for it:  either a search of the reviews themselves (see "ReviewResource"), or an app search with "allReviews"
+ * set, which also matches apps whose reviews contain the search words (see "AppSearchService").  Ordinary searches
+ * never touch this index, and don't pay for its size.
+ *
+ * Hibernate Search can only index entities (or objects embedded in them), and a review is neither... so this index is
+ * maintained by hand, with a plain IndexWriter.  It's rebuilt from the database at startup (unless a persistent copy is
+ * still complete, see "StartupDataLoader") and along with every rebuild of the App index (see "IndexRebuilder"), and
+ * reviews written by the "ReviewIngester" are added as they arrive.  Each document is keyed on the whole review, so
+ * adding a review that's already there just replaces it.  Comments are analyzed by the same "customerReviewAnalyzer"
+ * as in the App index, so a search matches the same words in either.
+ *
+ * Like the App index, it lives on the heap or in memory-mapped files under "index.base", according to
+ * "index.directory".  Searches go through a SearcherManager, which reopens the reader after each change.
+ */
+public class ReviewIndex {
+
+	private static Logger logger = LoggerFactory.getLogger(ReviewIndex.class);
+
+	public static final String APP_ID_FIELD = "appId";
+
+	public static final String USERNAME_FIELD = "username";
+
+	public static final String STARS_FIELD = "stars";
+
+	public static final String COMMENTS_FIELD = "comments";
+
+	private static final String KEY_FIELD = "key";
+
+	private static final String INDEX_NAME = "reviews";
+
+	private static final String ANALYZER_NAME = "customerReviewAnalyzer";
+
+	private static final ReviewIndex instance = new ReviewIndex();
+
+	/** Bumped whenever the index changes, for search results that depend on it to be cached under */
+	private final AtomicLong version = new AtomicLong();
+
+	private Analyzer analyzer;
+
+	private Directory directory;
+
+	private IndexWriter writer;
+
+	private volatile SearcherManager searcherManager;
+
+	private ReviewIndex() {
+	}
+
+	/**
+	 * @return the single, shared review index
+	 */
+	public static ReviewIndex getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Opens the index, creating it if need be.  Safe to call more than once.
+	 */
+	public synchronized void open() {
+		if(searcherManager != null) {
+			return;
+		}
+		try {
+			analyzer = HibernateContext.getSearchFactory().getAnalyzer(ANALYZER_NAME);
+			if(Settings.getString("index.directory", "ram").equalsIgnoreCase("mmap")) {
+				directory = new MMapDirectory(new File(Settings.getString("index.base", "indexes"), INDEX_NAME));
+			} else {
+				directory = new RAMDirectory();
+			}
+			writer = new IndexWriter(directory, new IndexWriterConfig(Version.LUCENE_36, analyzer));
+			writer.commit();
+			searcherManager = new SearcherManager(writer, true, null);
+		} catch(IOException e) {
+			throw new IllegalStateException("Unable to open the review index", e);
+		}
+	}
+
+	/**
+	 * Closes the index, if it's open.
+	 */
+	public synchronized void close() {
+		if(searcherManager == null) {
+			return;
+		}
+		try {
+			searcherManager.close();
+			writer.close();
+			directory.close();
+		} catch(IOException e) {
+			logger.warn("Unable to close the review index", e);
+		} finally {
+			searcherManager = null;
+		}
+	}
+
+	/**
+	 * Replaces the whole index with the reviews of every active app in the database.  The reviews are streamed from the
+	 * database rather than loaded with their apps, so this never holds more than one row in memory.
+	 */
+	public synchronized void rebuild() {
+		open();
+		long start = System.currentTimeMillis();
+		int count = 0;
+		Session session = HibernateContext.openSession();
+		try {
+			writer.deleteAll();
+			ScrollableResults rows = session.createQuery("select app.id, review.username, review.stars, review.comments "
+						+ "from App app join app.customerReviews review where app.active = true")
+					.setReadOnly(true)
+					.setFetchSize(IndexRebuilder.DEFAULT_FETCH_SIZE)
+					.scroll(ScrollMode.FORWARD_ONLY);
+			try {
+				while(rows.next()) {
+					writer.addDocument(toDocument((Long) rows.get(0),
+							new CustomerReview((String) rows.get(1), (Integer) rows.get(2), (String) rows.get(3))));
+					count++;
+				}
+			} finally {
+				rows.close();
+			}
+			commit();
+		} catch(IOException e) {
+			throw new IllegalStateException("Unable to rebuild the review index", e);
+		} finally {
+			session.close();
+		}
+		logger.info("Review index rebuilt with " + count + " reviews in " + (System.currentTimeMillis() - start) + " ms");
+	}
+
+	/**
+	 * Adds new reviews to the index, by app ID, making them searchable straight away.
+	 */
+	public synchronized void add(Map<Long, ? extends Collection<CustomerReview>> reviewsByApp) throws IOException {
+		if(reviewsByApp.isEmpty()) {
+			return;
+		}
+		open();
+		for(Map.Entry<Long, ? extends Collection<CustomerReview>> entry : reviewsByApp.entrySet()) {
+			for(CustomerReview review : entry.getValue()) {
+				Document document = toDocument(entry.getKey(), review);
+				writer.updateDocument(new Term(KEY_FIELD, document.get(KEY_FIELD)), document);
+			}
+		}
+		commit();
+	}
+
+	private void commit() throws IOException {
+		writer.commit();
+		searcherManager.maybeRefresh();
+		version.incrementAndGet();
+	}
+
+	private static Document toDocument(long appId, CustomerReview review) {
+		Document document = new Document();
+		document.add(new Field(KEY_FIELD, appId + "\u0000" + review.getStars() + "\u0000" + review.getUsername() + "\u0000"
+				+ review.getComments(), Field.Store.NO, Field.Index.NOT_ANALYZED_NO_NORMS));
+		document.add(new NumericField(APP_ID_FIELD, Field.Store.YES, true).setLongValue(appId));
+		document.add(new Field(USERNAME_FIELD, review.getUsername(), Field.Store.YES, Field.Index.NO));
+		document.add(new NumericField(STARS_FIELD, Field.Store.YES, true).setIntValue(review.getStars()));
+		document.add(new Field(COMMENTS_FIELD, review.getComments(), Field.Store.YES, Field.Index.ANALYZED));
+		return document;
+	}
+
+	/**
+	 * Searches the comments of every review, or of one app's reviews, and returns the most relevant.  A search string
+	 * in double-quotes is matched as a phrase, and otherwise any of its words may match.
+	 *
+	 * @param appId the app whose reviews to search, or null for every app
+	 */
+	public ReviewSearchResult search(String searchString, Long appId, int maxResults) throws IOException {
+		Query query = buildQuery(searchString);
+		if(query == null) {
+			return new ReviewSearchResult(new ArrayList<ReviewSearchHit>(), 0);
+		}
+		SearcherManager manager = getSearcherManager();
+		IndexSearcher searcher = manager.acquire();
+		try {
+			TopDocs topDocs = appId == null
+					? searcher.search(query, maxResults)
+					: searcher.search(query, NumericRangeFilter.newLongRange(APP_ID_FIELD, appId, appId, true, true), maxResults);
+			List<ReviewSearchHit> reviews = new ArrayList<ReviewSearchHit>(topDocs.scoreDocs.length);
+			for(ScoreDoc scoreDoc : topDocs.scoreDocs) {
+				Document document = searcher.doc(scoreDoc.doc);
+				reviews.add(new ReviewSearchHit(Long.valueOf(document.get(APP_ID_FIELD)), document.get(USERNAME_FIELD),
+						Integer.parseInt(document.get(STARS_FIELD)), document.get(COMMENTS_FIELD)));
+			}
+			return new ReviewSearchResult(reviews, topDocs.totalHits);
+		} finally {
+			manager.release(searcher);
+		}
+	}
+
+	/**
+	 * Returns the ID's of the apps with reviews matching the search string (as for "search()"), up to "maxApps" of them.
+	 */
+	public Set<Long> findApps(String searchString, final int maxApps) throws IOException {
+		final Set<Long> appIds = new LinkedHashSet<Long>();
+		Query query = buildQuery(searchString);
+		if(query == null) {
+			return appIds;
+		}
+		SearcherManager manager = getSearcherManager();
+		IndexSearcher searcher = manager.acquire();
+		try {
+			// Every matching review is visited, but only its app ID is read (from the FieldCache), and scores aren't needed
+			searcher.search(query, new Collector() {
+				private long[] segmentAppIds;
+
+				@Override
+				public void setScorer(Scorer scorer) {
+				}
+
+				@Override
+				public void setNextReader(IndexReader segmentReader, int docBase) throws IOException {
+					segmentAppIds = FieldCache.DEFAULT.getLongs(segmentReader, APP_ID_FIELD, FieldCache.NUMERIC_UTILS_LONG_PARSER);
+				}
+
+				@Override
+				public void collect(int doc) {
+					if(appIds.size() < maxApps) {
+						appIds.add(segmentAppIds[doc]);
+					}
+				}
+
+				@Override
+				public boolean acceptsDocsOutOfOrder() {
+					return true;
+				}
+			});
+			return appIds;
+		} finally {
+			manager.release(searcher);
+		}
+	}
+
+	private SearcherManager getSearcherManager() {
+		SearcherManager manager = searcherManager;
+		if(manager == null) {
+			open();
+			manager = searcherManager;
+		}
+		return manager;
+	}
+
+	/**
+	 * Analyzes the search string as the comments were, into a phrase query for a quoted search string or a query for
+	 * any of the words otherwise.  Returns null if no words are left (e.g. they were all stop words).
+	 */
+	private Query buildQuery(String searchString) throws IOException {
+		if(searchString == null) {
+			return null;
+		}
+		String text = searchString.trim();
+		boolean phrase = text.length() > 2 && text.startsWith("\"") && text.endsWith("\"");
+		if(phrase) {
+			text = text.substring(1, text.length() - 1);
+		}
+		getSearcherManager();
+		PhraseQuery phraseQuery = new PhraseQuery();
+		BooleanQuery wordsQuery = new BooleanQuery();
+		int position = -1;
+		boolean empty = true;
+		TokenStream tokens = analyzer.tokenStream(COMMENTS_FIELD, new StringReader(text));
+		CharTermAttribute termAttribute = tokens.addAttribute(CharTermAttribute.class);
+		PositionIncrementAttribute positionAttribute = tokens.addAttribute(PositionIncrementAttribute.class);
+		try {
+			tokens.reset();
+			while(tokens.incrementToken()) {
+				Term term = new Term(COMMENTS_FIELD, termAttribute.toString());
+				position += positionAttribute.getPositionIncrement();
+				phraseQuery.add(term, position);
+				wordsQuery.add(new TermQuery(term), BooleanClause.Occur.SHOULD);
+				empty = false;
+			}
+			tokens.end();
+		} finally {
+			tokens.close();
+		}
+		if(empty) {
+			return null;
+		}
+		return phrase ? phraseQuery : wordsQuery;
+	}
+
+	//
+	// GETTERS
+	//
+
+	/**
+	 * @return the number of reviews in the index
+	 */
+	public int getDocumentCount() {
+		SearcherManager manager = getSearcherManager();
+		IndexSearcher searcher = manager.acquire();
+		try {
+			return searcher.getIndexReader().numDocs();
+		} finally {
+			try {
+				manager.release(searcher);
+			} catch(IOException e) {
+				logger.debug("Unable to release a review index searcher", e);
+			}
+		}
+	}
+
+	/**
+	 * @return a number that changes whenever the index does
+	 */
+	public long getVersion() {
+		return version.get();
+	}
+
+}
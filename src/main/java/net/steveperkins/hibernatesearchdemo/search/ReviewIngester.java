@@ -0,0 +1,338 @@
+package net.steveperkins.hibernatesearchdemo.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.steveperkins.hibernatesearchdemo.domain.App;
+import net.steveperkins.hibernatesearchdemo.domain.CustomerReview;
+import net.steveperkins.hibernatesearchdemo.util.HibernateContext;
+import net.steveperkins.hibernatesearchdemo.util.Settings;
+
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Appends customer reviews to apps in batches, so that a burst of reviews for one app costs one index update rather
+ * than one per review.
+ *
+ * Reviews are an @ElementCollection of App, so adding one the obvious way means loading the app and all of its reviews,
+ * adding to the set, and committing... at which point Hibernate Search reindexes the entire App document (see
+ * "IndexWhenActiveInterceptor.onCollectionUpdate()").  A popular app getting a review every few milliseconds would be
+ * loaded and reindexed just as often.
+ *
+ * Instead, "append()" only queues the reviews and returns.  A background thread drains the queue, collecting reviews
+ * until "reviews.batchSize" of them have arrived, or "reviews.windowMillis" has passed since the first one... whichever
+ * comes first.  The whole batch is then written in a single transaction:  each app it touches is loaded once (with its
+ * reviews, in the same query), all of its new reviews are added at once, and the commit inserts just the new rows (in
+ * JDBC batches) and reindexes each app once.  Reviews already on the app (the same user, stars and comments) are
+ * skipped, so a client can safely resend reviews it isn't sure were accepted.  Once committed, the apps' popularity
+ * signals are updated as well (see "PopularitySignals"), and the new reviews are added to the review index (see
+ * "ReviewIndex").
+ *
+ * The queue holds at most "reviews.queueSize" submissions.  When it's full, "append()" refuses the reviews rather than
+ * holding up the caller, who can try again later.  Reviews for apps that don't exist are dropped when their batch is
+ * written, and counted as rejected.
+ */
+public class ReviewIngester {
+
+	private static Logger logger = LoggerFactory.getLogger(ReviewIngester.class);
+
+	/** As declared on "CustomerReview.comments" */
+	public static final int MAX_COMMENTS_LENGTH = 1000;
+
+	/** The default length of the "CustomerReview.username" column */
+	public static final int MAX_USERNAME_LENGTH = 255;
+
+	private static final ReviewIngester instance = new ReviewIngester(
+			Settings.getInt("reviews.batchSize", 500),
+			Settings.getLong("reviews.windowMillis", 1000),
+			Settings.getInt("reviews.queueSize", 10000));
+
+	private final int batchSize;
+
+	private final long windowMillis;
+
+	private final BlockingQueue<Submission> queue;
+
+	private final AtomicLong reviewsQueued = new AtomicLong();
+
+	private final AtomicLong reviewsWritten = new AtomicLong();
+
+	private final AtomicLong reviewsRejected = new AtomicLong();
+
+	private final AtomicLong reviewsDuplicated = new AtomicLong();
+
+	private final AtomicLong appsUpdated = new AtomicLong();
+
+	private final AtomicLong batchesWritten = new AtomicLong();
+
+	private final AtomicLong batchesFailed = new AtomicLong();
+
+	private volatile boolean running;
+
+	private Thread writer;
+
+	public ReviewIngester(int batchSize, long windowMillis, int queueSize) {
+		this.batchSize = batchSize;
+		this.windowMillis = windowMillis;
+		this.queue = new ArrayBlockingQueue<Submission>(queueSize);
+	}
+
+	/**
+	 * @return the review ingester used by the review service, configured in "vaporware.properties"
+	 */
+	public static ReviewIngester getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Starts the background thread that writes queued reviews.
+	 */
+	public synchronized void start() {
+		if(running) {
+			return;
+		}
+		running = true;
+		writer = new Thread(new Runnable() {
+			public void run() {
+				writeLoop();
+			}
+		}, "review-ingester");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Stops accepting reviews, and writes whatever is still queued.
+	 */
+	public synchronized void stop() {
+		if(!running) {
+			return;
+		}
+		running = false;
+		try {
+			// Not interrupted, because interrupting a thread in the middle of indexing would close the index files
+			// underneath it.  Instead it notices the flag within one window.
+			writer.join(windowMillis * 10);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		logger.info("Reviews: " + reviewsWritten.get() + " written to " + appsUpdated.get() + " apps in " + batchesWritten.get()
+				+ " batches, " + reviewsDuplicated.get() + " duplicates skipped, " + reviewsRejected.get() + " rejected");
+	}
+
+	/**
+	 * Queues reviews to be added to an app.
+	 *
+	 * @return false if the queue is full (or the ingester isn't running), in which case none of the reviews were queued
+	 * @throws IllegalArgumentException if any of the reviews is invalid, in which case none of them were queued
+	 */
+	public boolean append(long appId, List<CustomerReview> reviews) {
+		for(CustomerReview review : reviews) {
+			validate(review);
+		}
+		if(reviews.isEmpty()) {
+			return true;
+		}
+		if(!running || !queue.offer(new Submission(appId, new ArrayList<CustomerReview>(reviews)))) {
+			return false;
+		}
+		reviewsQueued.addAndGet(reviews.size());
+		return true;
+	}
+
+	private static void validate(CustomerReview review) {
+		if(review == null) {
+			throw new IllegalArgumentException("A review is missing");
+		}
+		if(review.getStars() < 1 || review.getStars() > 5) {
+			throw new IllegalArgumentException("A review must give from 1 to 5 stars, not " + review.getStars());
+		}
+		if(review.getUsername() == null || review.getUsername().trim().isEmpty() || review.getUsername().length() > MAX_USERNAME_LENGTH) {
+			throw new IllegalArgumentException("A review needs a username of up to " + MAX_USERNAME_LENGTH + " characters");
+		}
+		if(review.getComments() == null || review.getComments().length() > MAX_COMMENTS_LENGTH) {
+			throw new IllegalArgumentException("A review needs comments of up to " + MAX_COMMENTS_LENGTH + " characters");
+		}
+	}
+
+	private void writeLoop() {
+		while(running || !queue.isEmpty()) {
+			try {
+				Submission first = queue.poll(windowMillis, TimeUnit.MILLISECONDS);
+				if(first == null) {
+					continue;
+				}
+				// Keep collecting until the batch is big enough, or the window since the first submission runs out
+				List<Submission> batch = new ArrayList<Submission>();
+				batch.add(first);
+				int reviewCount = first.reviews.size();
+				long deadline = System.currentTimeMillis() + windowMillis;
+				while(reviewCount < batchSize) {
+					long remaining = deadline - System.currentTimeMillis();
+					Submission next = remaining > 0 ? queue.poll(remaining, TimeUnit.MILLISECONDS) : queue.poll();
+					if(next == null) {
+						break;
+					}
+					batch.add(next);
+					reviewCount += next.reviews.size();
+				}
+				write(batch, reviewCount);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Adds a batch of reviews to their apps in one transaction, loading and reindexing each app once.
+	 */
+	private void write(List<Submission> batch, int reviewCount) {
+		long start = System.currentTimeMillis();
+		Map<Long, List<CustomerReview>> reviewsByApp = new LinkedHashMap<Long, List<CustomerReview>>();
+		for(Submission submission : batch) {
+			List<CustomerReview> reviews = reviewsByApp.get(submission.appId);
+			if(reviews == null) {
+				reviews = new ArrayList<CustomerReview>();
+				reviewsByApp.put(submission.appId, reviews);
+			}
+			reviews.addAll(submission.reviews);
+		}
+
+		Session session = HibernateContext.openSession();
+		Map<App, List<CustomerReview>> addedReviews = new LinkedHashMap<App, List<CustomerReview>>();
+		int written = 0;
+		int duplicated = 0;
+		int rejected = 0;
+		try {
+			session.beginTransaction();
+
+			// Load every app in the batch along with its reviews, in one query
+			List<?> apps = session.createQuery("select distinct app from App app left join fetch app.customerReviews where app.id in (:ids)")
+					.setParameterList("ids", reviewsByApp.keySet())
+					.list();
+			for(Object loaded : apps) {
+				App app = (App) loaded;
+				if(app.getCustomerReviews() == null) {
+					app.setCustomerReviews(new HashSet<CustomerReview>());
+				}
+				List<CustomerReview> added = new ArrayList<CustomerReview>();
+				for(CustomerReview review : reviewsByApp.remove(app.getId())) {
+					if(app.getCustomerReviews().add(review)) {
+						added.add(review);
+					} else {
+						duplicated++;
+					}
+				}
+				if(!added.isEmpty()) {
+					written += added.size();
+					addedReviews.put(app, added);
+				}
+			}
+			// Whatever is left is for apps that don't exist
+			for(List<CustomerReview> orphans : reviewsByApp.values()) {
+				rejected += orphans.size();
+			}
+
+			// Inserts only the new review rows, and reindexes each updated app once
+			session.getTransaction().commit();
+		} catch(RuntimeException e) {
+			if(session.getTransaction().isActive()) {
+				session.getTransaction().rollback();
+			}
+			batchesFailed.incrementAndGet();
+			reviewsRejected.addAndGet(reviewCount);
+			logger.error("Unable to write a batch of " + reviewCount + " reviews", e);
+			return;
+		} finally {
+			session.close();
+		}
+
+		// Inactive apps are left out of the review index, just as they are out of the App index
+		Map<Long, List<CustomerReview>> indexedReviews = new LinkedHashMap<Long, List<CustomerReview>>();
+		for(Map.Entry<App, List<CustomerReview>> entry : addedReviews.entrySet()) {
+			App app = entry.getKey();
+			PopularitySignals.getInstance().update(app.getId(), app.getCustomerReviews());
+			if(app.isActive()) {
+				indexedReviews.put(app.getId(), entry.getValue());
+			}
+		}
+		try {
+			ReviewIndex.getInstance().add(indexedReviews);
+		} catch(IOException e) {
+			logger.error("Unable to add the reviews of " + indexedReviews.size() + " apps to the review index", e);
+		}
+		reviewsWritten.addAndGet(written);
+		reviewsDuplicated.addAndGet(duplicated);
+		reviewsRejected.addAndGet(rejected);
+		appsUpdated.addAndGet(addedReviews.size());
+		batchesWritten.incrementAndGet();
+		if(logger.isDebugEnabled()) {
+			logger.debug("Wrote " + written + " of " + reviewCount + " reviews to " + addedReviews.size() + " apps in "
+					+ (System.currentTimeMillis() - start) + " ms, " + queue.size() + " submissions still queued");
+		}
+	}
+
+	//
+	// GETTERS
+	//
+
+	public int getQueueSize() {
+		return queue.size();
+	}
+
+	public long getReviewsQueued() {
+		return reviewsQueued.get();
+	}
+
+	public long getReviewsWritten() {
+		return reviewsWritten.get();
+	}
+
+	public long getReviewsRejected() {
+		return reviewsRejected.get();
+	}
+
+	public long getReviewsDuplicated() {
+		return reviewsDuplicated.get();
+	}
+
+	public long getAppsUpdated() {
+		return appsUpdated.get();
+	}
+
+	public long getBatchesWritten() {
+		return batchesWritten.get();
+	}
+
+	public long getBatchesFailed() {
+		return batchesFailed.get();
+	}
+
+	/**
+	 * The reviews from one call to "append()".
+	 */
+	private static class Submission {
+
+		private final long appId;
+
+		private final List<CustomerReview> reviews;
+
+		Submission(long appId, List<CustomerReview> reviews) {
+			this.appId = appId;
+			this.reviews = reviews;
+		}
+
+	}
+
+}
@@ -0,0 +1,44 @@
+package net.steveperkins.hibernatesearchdemo.search;
+
+/**
+ * One customer review in a page of review search results, projected from the fields stored in the review index (see 
+ * "ReviewIndex"), along with the ID of the app it's for.
+ */
+public class ReviewSearchHit {
+
+	private final Long appId;
+	
+	private final String username;
+	
+	private final int stars;
+	
+	private final String comments;
+
+	public ReviewSearchHit(Long appId, String username, int stars, String comments) {
+		this.appId = appId;
+		this.username = username;
+		this.stars = stars;
+		this.comments = comments;
+	}
+
+	//
+	// GETTERS
+	//
+	
+	public Long getAppId() {
+		return appId;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public int getStars() {
+		return stars;
+	}
+
+	public String getComments() {
+		return comments;
+	}
+
+}
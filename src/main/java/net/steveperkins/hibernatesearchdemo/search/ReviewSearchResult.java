@@ -0,0 +1,33 @@
+package net.steveperkins.hibernatesearchdemo.search;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of a search of the review index (see "ReviewIndex"):  the top matching reviews, most relevant first, and 
+ * the total number of matching reviews.
+ */
+public class ReviewSearchResult {
+
+	private final List<ReviewSearchHit> reviews;
+	
+	private final int resultSize;
+
+	public ReviewSearchResult(List<ReviewSearchHit> reviews, int resultSize) {
+		this.reviews = Collections.unmodifiableList(reviews);
+		this.resultSize = resultSize;
+	}
+
+	//
+	// GETTERS
+	//
+	
+	public List<ReviewSearchHit> getReviews() {
+		return reviews;
+	}
+
+	public int getResultSize() {
+		return resultSize;
+	}
+
+}
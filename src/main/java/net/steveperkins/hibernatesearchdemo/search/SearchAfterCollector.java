@@ -0,0 +1,151 @@
+package net.steveperkins.hibernatesearchdemo.search;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.SortField;
+
+/**
+ * A Lucene Collector that passes along to another Collector only those documents that sort after a given cursor, on a
+ * single field (see "SearchCursor").  Lucene 3.6 can only search after a cursor when sorting by relevance (see
+ * "TopScoreDocCollector"), so this fills the gap for the sorts by name, rating, review count, price and release date.
+ *
+ * Documents are compared the same way Lucene's own field sorts compare them:  by the field value, and then by document
+ * number.  The comparison is cheap, and reads the same FieldCache entry the sort itself uses, so nothing extra is
+ * loaded.  For a string field, the cursor's value is looked up once per index segment in the FieldCache's sorted table
+ * of values (where documents with no value come first), after which each document only needs an integer comparison
+ * of its ordinal.  For a numeric field, each document's value is compared with the cursor's directly.
+ */
+public class SearchAfterCollector extends Collector {
+
+	private final Collector delegate;
+
+	private final SortField sortField;
+
+	private final String afterValue;
+
+	/** The cursor's value of a numeric sort field, which holds any int or float exactly */
+	private final double afterNumber;
+
+	private final int afterDoc;
+
+	private int docBase;
+
+	private int[] order;
+
+	private int[] ints;
+
+	private float[] floats;
+
+	/**
+	 * The ordinal of the cursor's value within the current segment, or if that value doesn't appear in the segment,
+	 * the ordinal at which it would be inserted
+	 */
+	private int afterOrd;
+
+	private boolean afterOrdExact;
+
+	/**
+	 * @param delegate the Collector receiving documents that sort after the cursor
+	 * @param sortField the field the results are sorted on, which must be a STRING, INT or FLOAT sort
+	 * @param afterValue the cursor's value of the sort field, or null if the last hit had none
+	 * @param afterDoc the cursor's document number, for breaking ties
+	 */
+	public SearchAfterCollector(Collector delegate, SortField sortField, String afterValue, int afterDoc) {
+		int type = sortField.getType();
+		if(type != SortField.STRING && type != SortField.INT && type != SortField.FLOAT) {
+			throw new IllegalArgumentException("Unsupported sort for searching after a cursor: " + sortField);
+		}
+		this.delegate = delegate;
+		this.sortField = sortField;
+		this.afterValue = afterValue;
+		this.afterNumber = type == SortField.STRING || afterValue == null ? 0 : parseNumber(type, afterValue);
+		this.afterDoc = afterDoc;
+	}
+
+	/**
+	 * Parses the cursor's value as the same type as the field, since e.g. the float 4.3 is not the double 4.3.
+	 */
+	private static double parseNumber(int type, String value) {
+		try {
+			return type == SortField.INT ? Integer.parseInt(value) : Float.parseFloat(value);
+		} catch(NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid cursor value for a numeric sort: " + value, e);
+		}
+	}
+
+	@Override
+	public void setScorer(Scorer scorer) throws IOException {
+		delegate.setScorer(scorer);
+	}
+
+	@Override
+	public void setNextReader(IndexReader reader, int docBase) throws IOException {
+		this.docBase = docBase;
+		String field = sortField.getField();
+		switch(sortField.getType()) {
+		case SortField.INT:
+			ints = FieldCache.DEFAULT.getInts(reader, field, (FieldCache.IntParser) sortField.getParser());
+			break;
+		case SortField.FLOAT:
+			floats = FieldCache.DEFAULT.getFloats(reader, field, (FieldCache.FloatParser) sortField.getParser());
+			break;
+		default:
+			FieldCache.StringIndex index = FieldCache.DEFAULT.getStringIndex(reader, field);
+			this.order = index.order;
+
+			// Ordinal 0 is reserved for documents without a value, and the rest of the lookup table is sorted
+			if(afterValue == null) {
+				afterOrd = 0;
+				afterOrdExact = true;
+			} else {
+				int position = Arrays.binarySearch(index.lookup, 1, index.lookup.length, afterValue);
+				afterOrdExact = position >= 0;
+				afterOrd = afterOrdExact ? position : -position - 1;
+			}
+		}
+		delegate.setNextReader(reader, docBase);
+	}
+
+	@Override
+	public void collect(int doc) throws IOException {
+		int comparison = compareToCursor(doc);
+		boolean after;
+		if(comparison == 0) {
+			// Same value as the cursor, so Lucene would have sorted on document number (always ascending)
+			after = docBase + doc > afterDoc;
+		} else {
+			after = sortField.getReverse() ? comparison < 0 : comparison > 0;
+		}
+		if(after) {
+			delegate.collect(doc);
+		}
+	}
+
+	/**
+	 * Compares a document's value of the sort field with the cursor's, in ascending order.
+	 */
+	private int compareToCursor(int doc) {
+		if(ints != null || floats != null) {
+			double value = ints != null ? ints[doc] : floats[doc];
+			return value > afterNumber ? 1 : value < afterNumber ? -1 : 0;
+		}
+		int ord = order[doc];
+		if(afterOrdExact) {
+			return ord > afterOrd ? 1 : ord < afterOrd ? -1 : 0;
+		}
+		// When the cursor's value isn't in this segment, "afterOrd" is where it would go, so that ordinal and every one
+		// above it sorts after the cursor
+		return ord >= afterOrd ? 1 : -1;
+	}
+
+	@Override
+	public boolean acceptsDocsOutOfOrder() {
+		return delegate.acceptsDocsOutOfOrder();
+	}
+
+}
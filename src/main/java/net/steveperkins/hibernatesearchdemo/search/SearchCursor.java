@@ -0,0 +1,129 @@
+package net.steveperkins.hibernatesearchdemo.search;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.ScoreDoc;
+
+/**
+ * The position of the last hit on a page of search results, from which the next page carries on (i.e. "search after").
+ * It holds whatever the results are sorted by... the relevance score, or the value of the sort field (e.g. the name or 
+ * the price, as a string)... along with the Lucene document number to break ties.
+ *
+ * Paging with a cursor rather than an offset keeps the cost of each page flat.  To serve page 500 from an offset, the
+ * search must gather the top 2,500 hits and then throw away all but the last 5.  Starting after a cursor, it only ever
+ * gathers the top 5 hits among those that sort after the cursor.
+ *
+ * Cursors are handed to clients as opaque, URL-safe strings (see "encode()" and "decode()").  Document numbers only
+ * hold steady until the index is next merged, so a cursor is exact for the index it came from, and a close approximation
+ * after the index changes (i.e. the next page picks up after the same sort value, but ties may be skipped or repeated).
+ */
+public class SearchCursor {
+
+	private static final byte FORMAT_VERSION = 1;
+
+	private final String sortField;
+
+	private final float score;
+
+	private final int doc;
+
+	private final String sortValue;
+
+	public SearchCursor(String sortField, float score, int doc, String sortValue) {
+		this.sortField = sortField;
+		this.score = score;
+		this.doc = doc;
+		this.sortValue = sortValue;
+	}
+
+	/**
+	 * Builds the cursor for a hit returned by a Lucene TopDocsCollector.  For field sorts, the hit must be a FieldDoc
+	 * (i.e. the collector was created with "fillFields" enabled).
+	 */
+	public static SearchCursor after(String sortField, ScoreDoc hit) {
+		String sortValue = null;
+		if(hit instanceof FieldDoc && ((FieldDoc) hit).fields.length > 0) {
+			Object value = ((FieldDoc) hit).fields[0];
+			sortValue = value == null ? null : value.toString();
+		}
+		return new SearchCursor(sortField, hit.score, hit.doc, sortValue);
+	}
+
+	/**
+	 * @return this cursor as an opaque string, safe for use in a URL without further encoding
+	 */
+	public String encode() {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeByte(FORMAT_VERSION);
+			out.writeUTF(sortField);
+			out.writeFloat(score);
+			out.writeInt(doc);
+			out.writeBoolean(sortValue != null);
+			if(sortValue != null) {
+				out.writeUTF(sortValue);
+			}
+			out.close();
+			return Base64.encodeBase64URLSafeString(bytes.toByteArray());
+		} catch(IOException e) {
+			// Can't happen when writing to memory
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Parses a string produced by "encode()".
+	 *
+	 * @throws IllegalArgumentException if the string is not a valid cursor
+	 */
+	public static SearchCursor decode(String encoded) {
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.decodeBase64(encoded)));
+			if(in.readByte() != FORMAT_VERSION) {
+				throw new IllegalArgumentException("Unsupported cursor: " + encoded);
+			}
+			String sortField = in.readUTF();
+			float score = in.readFloat();
+			int doc = in.readInt();
+			String sortValue = in.readBoolean() ? in.readUTF() : null;
+			return new SearchCursor(sortField, score, doc, sortValue);
+		} catch(IOException e) {
+			throw new IllegalArgumentException("Invalid cursor: " + encoded, e);
+		}
+	}
+
+	/**
+	 * @return this cursor as a Lucene ScoreDoc, for searching after it by relevance
+	 */
+	public ScoreDoc toScoreDoc() {
+		return new ScoreDoc(doc, score);
+	}
+
+	//
+	// GETTERS
+	//
+
+	public String getSortField() {
+		return sortField;
+	}
+
+	public float getScore() {
+		return score;
+	}
+
+	public int getDoc() {
+		return doc;
+	}
+
+	public String getSortValue() {
+		return sortValue;
+	}
+
+}
@@ -0,0 +1,104 @@
+package net.steveperkins.hibernatesearchdemo.search;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.steveperkins.hibernatesearchdemo.util.Settings;
+
+/**
+ * A dedicated, bounded pool of threads for running searches, so that searches never tie up the servlet container's own 
+ * request threads (see "SearchServlet", which hands each search over using Servlet 3.0 asynchronous processing).
+ * 
+ * Searching is CPU-bound, so there's little to gain from running more searches at once than there are CPU's... 
+ * "search.pool.threads" defaults to the number of CPU's.  Searches beyond that wait in a queue of at most 
+ * "search.pool.queueSize".  Once the queue is full, "submit()" refuses further searches right away, so that the 
+ * caller can shed the load (i.e. answer "503 Service Unavailable") rather than letting requests pile up.  Meanwhile the 
+ * container's threads stay free for static content and the lightweight RESTful services.
+ */
+public class SearchExecutor implements SearchExecutorMBean {
+
+	private static final SearchExecutor instance = new SearchExecutor(
+			Settings.getInt("search.pool.threads", Runtime.getRuntime().availableProcessors()),
+			Settings.getInt("search.pool.queueSize", 100));
+
+	private final ThreadPoolExecutor executor;
+
+	private final int queueCapacity;
+
+	private final AtomicLong rejected = new AtomicLong();
+
+	public SearchExecutor(int threads, int queueCapacity) {
+		this.queueCapacity = queueCapacity;
+		this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, 
+				new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "search-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	/**
+	 * @return the shared pool used by the search page
+	 */
+	public static SearchExecutor getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Queues a search to run on one of the pool's threads.
+	 * 
+	 * @throws RejectedExecutionException if the queue is full (or the pool has been shut down)
+	 */
+	public void submit(Runnable search) {
+		try {
+			executor.execute(search);
+		} catch(RejectedExecutionException e) {
+			rejected.incrementAndGet();
+			throw e;
+		}
+	}
+
+	/**
+	 * Stops accepting searches, and lets those already queued finish.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	//
+	// GETTERS
+	//
+
+	public int getThreads() {
+		return executor.getMaximumPoolSize();
+	}
+
+	public int getActiveThreads() {
+		return executor.getActiveCount();
+	}
+
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	public int getQueueSize() {
+		return executor.getQueue().size();
+	}
+
+	public long getCompletedSearches() {
+		return executor.getCompletedTaskCount();
+	}
+
+	public long getRejectedSearches() {
+		return rejected.get();
+	}
+
+}
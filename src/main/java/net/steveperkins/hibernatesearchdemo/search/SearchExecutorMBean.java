@@ -0,0 +1,25 @@
+package net.steveperkins.hibernatesearchdemo.search;
+
+/**
+ * The JMX management interface for "SearchExecutor", exposing how busy the pool of search threads is.  It's registered 
+ * with the platform MBean server by "StartupDataLoader", under the name 
+ * "net.steveperkins.hibernatesearchdemo:type=SearchExecutor".
+ */
+public interface SearchExecutorMBean {
+
+	int getThreads();
+
+	int getActiveThreads();
+
+	int getQueueCapacity();
+
+	int getQueueSize();
+
+	long getCompletedSearches();
+
+	/**
+	 * @return the number of searches turned away because the queue was full
+	 */
+	long getRejectedSearches();
+
+}
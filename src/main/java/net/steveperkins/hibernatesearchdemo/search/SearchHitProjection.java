@@ -0,0 +1,68 @@
+package net.steveperkins.hibernatesearchdemo.search;
+
+import java.io.IOException;
+
+import net.steveperkins.hibernatesearchdemo.util.StoredStringBridge;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.FieldSelectorResult;
+import org.apache.lucene.index.IndexReader;
+
+/**
+ * Projects a search hit straight from the fields stored in its App document, with no reflection and nothing loaded 
+ * that isn't needed.
+ * 
+ * Lucene reads a document's stored fields one after another, in the order they were added.  So rather than reading 
+ * every stored field and keeping only the wanted ones, the field selector here stops reading as soon as it has all 
+ * four... skipping the stored device ID's and anything else that follows them in the document.  Each field may be 
+ * stored either plainly or compressed (see "StoredStringBridge"), and is read back by that bridge, which decompresses 
+ * it if need be... so a switch between the two needs no immediate reindex.
+ */
+public final class SearchHitProjection {
+
+	private static final String[] FIELDS = { "id", "name", "description", "image" };
+
+	private static final StoredStringBridge STORED_STRINGS = new StoredStringBridge();
+
+	private SearchHitProjection() {
+	}
+
+	/**
+	 * Loads the hit for the given document.
+	 */
+	public static AppSearchHit load(IndexReader reader, int doc) throws IOException {
+		Document document = reader.document(doc, new HitFieldSelector());
+		return new AppSearchHit(
+				Long.valueOf(document.get("id")), 
+				getStoredString(document, "name"), 
+				getStoredString(document, "description"), 
+				getStoredString(document, "image"));
+	}
+
+	private static String getStoredString(Document document, String name) {
+		return (String) STORED_STRINGS.get(name, document);
+	}
+
+	/**
+	 * Loads the projected fields, and stops at the last of them.  Keeps count of the fields loaded, so a new one is 
+	 * needed for each document.
+	 */
+	private static class HitFieldSelector implements FieldSelector {
+
+		private static final long serialVersionUID = 1L;
+
+		private int remaining = FIELDS.length;
+
+		public FieldSelectorResult accept(String fieldName) {
+			for(String field : FIELDS) {
+				if(field.equals(fieldName)) {
+					return --remaining == 0 ? FieldSelectorResult.LOAD_AND_BREAK : FieldSelectorResult.LOAD;
+				}
+			}
+			return FieldSelectorResult.NO_LOAD;
+		}
+
+	}
+
+}
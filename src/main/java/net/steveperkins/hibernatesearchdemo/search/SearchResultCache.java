@@ -0,0 +1,203 @@
+package net.steveperkins.hibernatesearchdemo.search;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.steveperkins.hibernatesearchdemo.util.Settings;
+
+import org.apache.lucene.index.IndexReader;
+
+/**
+ * A bounded, in-memory cache of search results, keyed by the normalized search parameters (see 
+ * "AppSearchRequest.getNormalizedKey()").  Entries are evicted least-recently-used first once either the maximum number 
+ * of entries or the approximate memory cap is exceeded, and expire after a fixed time-to-live.
+ * 
+ * Each entry remembers the version of the App index it was computed from, and is never returned once the index has 
+ * changed.  On top of that, "invalidateAll()" is called by "IndexWhenActiveInterceptor" whenever an App is added to, 
+ * updated in, or removed from the index... so that entries for a stale index are dropped right away, rather than 
+ * lingering until they're evicted.
+ * 
+ * The limits are read from "vaporware.properties" ("search.cache.*").
+ */
+public class SearchResultCache {
+
+	private static final SearchResultCache instance = new SearchResultCache(
+			Settings.getBoolean("search.cache.enabled", true),
+			Settings.getInt("search.cache.maxEntries", 1000),
+			Settings.getLong("search.cache.maxBytes", 16L * 1024 * 1024),
+			Settings.getLong("search.cache.ttlSeconds", 300) * 1000);
+	
+	private final boolean enabled;
+	
+	private final int maxEntries;
+	
+	private final long maxBytes;
+	
+	private final long ttlMillis;
+	
+	/**
+	 * An access-ordered LinkedHashMap, so that iteration starts with the least-recently-used entry.  Guarded by "this".
+	 */
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	
+	private long totalBytes;
+	
+	private final AtomicLong hits = new AtomicLong();
+	
+	private final AtomicLong misses = new AtomicLong();
+	
+	private final AtomicLong evictions = new AtomicLong();
+
+	public SearchResultCache(boolean enabled, int maxEntries, long maxBytes, long ttlMillis) {
+		this.enabled = enabled;
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+		this.ttlMillis = ttlMillis;
+	}
+	
+	/**
+	 * @return the shared cache used by AppSearchService
+	 */
+	public static SearchResultCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Returns the cached result for the given key, or null if there is none that is still fresh and was computed from 
+	 * the given version of the index.
+	 */
+	public synchronized AppSearchResult get(String key, long[] indexVersion) {
+		if(!enabled) {
+			return null;
+		}
+		Entry entry = entries.get(key);
+		if(entry == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		if(entry.expiresAt < System.currentTimeMillis() || !Arrays.equals(entry.indexVersion, indexVersion)) {
+			remove(key);
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return entry.result;
+	}
+
+	/**
+	 * Caches a result computed from the given version of the index, evicting the least-recently-used entries as needed.
+	 */
+	public synchronized void put(String key, long[] indexVersion, AppSearchResult result) {
+		if(!enabled) {
+			return;
+		}
+		remove(key);
+		Entry entry = new Entry(result, indexVersion, System.currentTimeMillis() + ttlMillis, estimateBytes(key, result));
+		if(entry.bytes > maxBytes) {
+			return;
+		}
+		entries.put(key, entry);
+		totalBytes += entry.bytes;
+		
+		Iterator<Entry> iterator = entries.values().iterator();
+		while((entries.size() > maxEntries || totalBytes > maxBytes) && iterator.hasNext()) {
+			Entry eldest = iterator.next();
+			iterator.remove();
+			totalBytes -= eldest.bytes;
+			evictions.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Drops every cached result.  Called when the App index changes.
+	 */
+	public synchronized void invalidateAll() {
+		entries.clear();
+		totalBytes = 0;
+	}
+	
+	private void remove(String key) {
+		Entry entry = entries.remove(key);
+		if(entry != null) {
+			totalBytes -= entry.bytes;
+		}
+	}
+
+	/**
+	 * Returns the version of each index underlying the given reader.  Any commit to the index changes its version.
+	 */
+	public static long[] getIndexVersion(IndexReader reader) {
+		IndexReader[] subReaders = reader.getSequentialSubReaders();
+		if(subReaders == null) {
+			return new long[] { reader.getVersion() };
+		}
+		long[] version = new long[subReaders.length];
+		for(int index = 0; index < subReaders.length; index++) {
+			version[index] = subReaders[index].getVersion();
+		}
+		return version;
+	}
+	
+	/**
+	 * A rough estimate of the heap used by a cached result, counting two bytes per character plus a fixed overhead 
+	 * per object.
+	 */
+	private static int estimateBytes(String key, AppSearchResult result) {
+		int bytes = 128 + key.length() * 2 + length(result.getNextCursor()) * 2 + length(result.getSuggestion()) * 2;
+		for(AppSearchHit app : result.getApps()) {
+			bytes += 96 + length(app.getName()) * 2 + length(app.getDescription()) * 2 + length(app.getImage()) * 2;
+		}
+		for(Map<String, Integer> facets : Arrays.asList(result.getCategories(), result.getPriceRanges())) {
+			for(String value : facets.keySet()) {
+				bytes += 96 + value.length() * 2;
+			}
+		}
+		return bytes;
+	}
+	
+	private static int length(String value) {
+		return value == null ? 0 : value.length();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public synchronized int getSize() {
+		return entries.size();
+	}
+
+	public synchronized long getEstimatedBytes() {
+		return totalBytes;
+	}
+
+	private static class Entry {
+		
+		final AppSearchResult result;
+		
+		final long[] indexVersion;
+		
+		final long expiresAt;
+		
+		final int bytes;
+
+		Entry(AppSearchResult result, long[] indexVersion, long expiresAt, int bytes) {
+			this.result = result;
+			this.indexVersion = indexVersion;
+			this.expiresAt = expiresAt;
+			this.bytes = bytes;
+		}
+	}
+
+}
@@ -0,0 +1,211 @@
+package net.steveperkins.hibernatesearchdemo.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.steveperkins.hibernatesearchdemo.search.IndexRebuildStatus.State;
+import net.steveperkins.hibernatesearchdemo.util.LatencyMetrics;
+import net.steveperkins.hibernatesearchdemo.util.Settings;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Warms up a freshly started node, by running a set of representative searches before it reports itself ready for
+ * traffic (see "HealthResource").
+ *
+ * Much of what makes a search fast is loaded lazily by the first search that needs it:  the device filter bitsets
+ * (see DeviceFilterCache), the FieldCache entries for the category and price facets and for each sort field, the
+ * per-segment price ordinals (see FacetCountingCollector), and the index files themselves, which a memory-mapped
+ * index only pages in as they're read.  Without a warm-up, the first users after a restart pay for all of that.
+ *
+ * Each search in "warmup.searches" is run with each sort order in "warmup.sorts", then with each device in
+ * "warmup.devices" as a filter, and then with its largest category and price band selected as facets.  The warm-up
+ * runs in the background once "StartupDataLoader" has finished, so that the readiness endpoint can answer (with
+ * "503 Service Unavailable") in the meantime.  A warm-up search that fails is logged and skipped... it's the next
+ * real search's problem, not a reason to keep the node out of service for good.
+ *
+ * Warm-up searches are recorded in the latency metrics like any others, and would skew them with cold latencies, so
+ * the metrics are reset once the warm-up is done.
+ */
+public class SearchWarmer {
+
+	private static Logger logger = LoggerFactory.getLogger(SearchWarmer.class);
+
+	private static final SearchWarmer instance = new SearchWarmer(
+			Settings.getBoolean("warmup.enabled", true),
+			split(Settings.getString("warmup.searches", "cloud game|\"web browser\"|clowd"), "\\|"),
+			split(Settings.getString("warmup.sorts", "relevance,name,rating,reviews,price,newest"), ","),
+			split(Settings.getString("warmup.devices", "xPhone,xTablet,Solar System Phone,Flame Book Reader,Personal Computer"), ","));
+
+	private final boolean enabled;
+
+	private final List<String> searches;
+
+	private final List<String> sorts;
+
+	private final List<String> devices;
+
+	private final AtomicInteger searchesRun = new AtomicInteger();
+
+	private final AtomicInteger searchesFailed = new AtomicInteger();
+
+	private volatile WarmupStatus.State state = WarmupStatus.State.PENDING;
+
+	private volatile long startedAt;
+
+	private volatile long elapsedMillis;
+
+	private volatile boolean stopping;
+
+	private Thread warmer;
+
+	public SearchWarmer(boolean enabled, List<String> searches, List<String> sorts, List<String> devices) {
+		this.enabled = enabled;
+		this.searches = searches;
+		this.sorts = sorts;
+		this.devices = devices;
+	}
+
+	/**
+	 * @return the warmer for the App index, configured in "vaporware.properties"
+	 */
+	public static SearchWarmer getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Starts the warm-up in the background, or declares the node warm straight away if warm-up is disabled.
+	 */
+	public synchronized void start() {
+		if(state != WarmupStatus.State.PENDING) {
+			return;
+		}
+		startedAt = System.currentTimeMillis();
+		if(!enabled) {
+			state = WarmupStatus.State.WARM;
+			return;
+		}
+		state = WarmupStatus.State.WARMING;
+		warmer = new Thread(new Runnable() {
+			public void run() {
+				warm();
+			}
+		}, "search-warmup");
+		warmer.setDaemon(true);
+		warmer.start();
+	}
+
+	/**
+	 * Abandons a warm-up in progress, waiting for its current search to finish.
+	 */
+	public void stop() {
+		stopping = true;
+		Thread thread = warmer;
+		if(thread != null) {
+			try {
+				// Not interrupted, since interrupting a thread that's reading a memory-mapped or NIO index would close the
+				// index files underneath it
+				thread.join(10000);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * @return the progress of the warm-up, and whether the node is ready
+	 */
+	public WarmupStatus getStatus() {
+		WarmupStatus.State current = state;
+		long elapsed = current == WarmupStatus.State.WARMING ? System.currentTimeMillis() - startedAt : elapsedMillis;
+		boolean rebuilding = IndexRebuilder.getInstance().getStatus().getState() == State.RUNNING;
+		return new WarmupStatus(current, rebuilding, searchesRun.get(), searchesFailed.get(), getSearchesTotal(), elapsed);
+	}
+
+	private int getSearchesTotal() {
+		return enabled ? searches.size() * (sorts.size() + devices.size() + 2) : 0;
+	}
+
+	private void warm() {
+		logger.info("Warming up with " + getSearchesTotal() + " searches");
+		AppSearchService searchService = AppSearchService.getInstance();
+		for(String search : searches) {
+			AppSearchResult result = null;
+			for(String sort : sorts) {
+				AppSearchResult sorted = run(searchService, new AppSearchRequest(search, "all", "all", "all", sort, 0, 5));
+				result = result == null ? sorted : result;
+			}
+			for(String device : devices) {
+				run(searchService, new AppSearchRequest(search, device, "all", "all", "relevance", 0, 5));
+			}
+
+			// Facet selections narrow the hits in the collector, which is a different code path from counting them.  A
+			// search with no hits has no facets to select, but counts as run all the same.
+			String category = result == null ? null : largest(result.getCategories());
+			String priceRange = result == null ? null : largest(result.getPriceRanges());
+			if(category != null) {
+				run(searchService, new AppSearchRequest(search, "all", category, "all", "relevance", 0, 5));
+			} else {
+				searchesRun.incrementAndGet();
+			}
+			if(priceRange != null) {
+				run(searchService, new AppSearchRequest(search, "all", "all", priceRange, "relevance", 0, 5));
+			} else {
+				searchesRun.incrementAndGet();
+			}
+		}
+		elapsedMillis = System.currentTimeMillis() - startedAt;
+		if(!stopping) {
+			LatencyMetrics.getInstance().reset();
+		}
+		state = WarmupStatus.State.WARM;
+		logger.info("Warm-up complete, ready for traffic: " + getStatus());
+	}
+
+	/**
+	 * Runs one warm-up search, returning its result, or null if it failed (or the warm-up is being abandoned).
+	 */
+	private AppSearchResult run(AppSearchService searchService, AppSearchRequest request) {
+		if(stopping) {
+			return null;
+		}
+		try {
+			return searchService.search(request);
+		} catch(RuntimeException e) {
+			searchesFailed.incrementAndGet();
+			logger.warn("Warm-up search failed: " + request, e);
+			return null;
+		} finally {
+			searchesRun.incrementAndGet();
+		}
+	}
+
+	/**
+	 * @return the facet value with the most hits, or null if there are none
+	 */
+	private static String largest(Map<String, Integer> facets) {
+		String largest = null;
+		int largestCount = 0;
+		for(Map.Entry<String, Integer> entry : facets.entrySet()) {
+			if(entry.getValue() > largestCount) {
+				largest = entry.getKey();
+				largestCount = entry.getValue();
+			}
+		}
+		return largest;
+	}
+
+	private static List<String> split(String value, String separator) {
+		List<String> values = new ArrayList<String>();
+		for(String part : value.split(separator)) {
+			if(!part.trim().isEmpty()) {
+				values.add(part.trim());
+			}
+		}
+		return values;
+	}
+
+}
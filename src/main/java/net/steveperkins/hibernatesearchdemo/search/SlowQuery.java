@@ -0,0 +1,89 @@
+package net.steveperkins.hibernatesearchdemo.search;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One entry in the "SlowQueryLog":  a search that took longer than the slow query threshold, or that ran out of time 
+ * and returned partial results.
+ * 
+ * Along with the search parameters, it holds the Lucene query as actually run (i.e. rewritten, so a fuzzy query shows 
+ * every term it expanded into), Lucene's explanation of how the top hits were scored, and how long each phase of the 
+ * search took in microseconds (see "PhaseTimer").
+ */
+public class SlowQuery {
+
+	private final Date timestamp;
+
+	private final String request;
+
+	private final String query;
+
+	private final long elapsedMillis;
+
+	private final boolean partial;
+
+	private final int totalHits;
+
+	private final Map<String, Long> timingsMicros;
+
+	private final List<String> explanations;
+
+	public SlowQuery(Date timestamp, String request, String query, long elapsedMillis, boolean partial, int totalHits, 
+			Map<String, Long> timingsMicros, List<String> explanations) {
+		this.timestamp = timestamp;
+		this.request = request;
+		this.query = query;
+		this.elapsedMillis = elapsedMillis;
+		this.partial = partial;
+		this.totalHits = totalHits;
+		this.timingsMicros = Collections.unmodifiableMap(new LinkedHashMap<String, Long>(timingsMicros));
+		this.explanations = Collections.unmodifiableList(explanations);
+	}
+
+	//
+	// GETTERS
+	//
+
+	public Date getTimestamp() {
+		return timestamp;
+	}
+
+	public String getRequest() {
+		return request;
+	}
+
+	public String getQuery() {
+		return query;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/**
+	 * @return true if the search hit its time limit, so that its results were incomplete
+	 */
+	public boolean isPartial() {
+		return partial;
+	}
+
+	/**
+	 * @return the number of hits found (before any selected facets were applied), as far as the search got
+	 */
+	public int getTotalHits() {
+		return totalHits;
+	}
+
+	public Map<String, Long> getTimingsMicros() {
+		return timingsMicros;
+	}
+
+	public List<String> getExplanations() {
+		return explanations;
+	}
+
+}
@@ -0,0 +1,107 @@
+package net.steveperkins.hibernatesearchdemo.search;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.steveperkins.hibernatesearchdemo.util.Settings;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded, in-memory log of slow searches (see "SlowQuery").  A search is logged when it takes at least 
+ * "search.slowlog.thresholdMillis", or when it hits the time limit of "search.timeLimitMillis" and so returns partial 
+ * results.  Only the most recent "search.slowlog.maxEntries" are kept, and each one is also written to the application 
+ * log as a warning.
+ * 
+ * The entries are returned as JSON by the RESTful admin service at "/rest/admin/slow-queries".
+ */
+public class SlowQueryLog {
+
+	private static final SlowQueryLog instance = new SlowQueryLog(
+			Settings.getLong("search.slowlog.thresholdMillis", 250),
+			Settings.getInt("search.slowlog.maxEntries", 100));
+
+	private static Logger logger = LoggerFactory.getLogger(SlowQueryLog.class);
+
+	private final long thresholdMillis;
+
+	private final int maxEntries;
+
+	/**
+	 * The most recent entries, newest first.  Guarded by "this".
+	 */
+	private final Deque<SlowQuery> entries = new ArrayDeque<SlowQuery>();
+
+	private final AtomicLong slowQueries = new AtomicLong();
+
+	private final AtomicLong partialResults = new AtomicLong();
+
+	public SlowQueryLog(long thresholdMillis, int maxEntries) {
+		this.thresholdMillis = thresholdMillis;
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * @return the shared log used by AppSearchService
+	 */
+	public static SlowQueryLog getInstance() {
+		return instance;
+	}
+
+	/**
+	 * @return true if a search that took the given time, and did or didn't hit its time limit, should be logged
+	 */
+	public boolean isSlow(long elapsedMillis, boolean partial) {
+		return partial || elapsedMillis >= thresholdMillis;
+	}
+
+	public void record(SlowQuery slowQuery) {
+		slowQueries.incrementAndGet();
+		if(slowQuery.isPartial()) {
+			partialResults.incrementAndGet();
+		}
+		logger.warn((slowQuery.isPartial() ? "Search hit its time limit, returning partial results" : "Slow search") + " (" 
+				+ slowQuery.getElapsedMillis() + " ms, " + slowQuery.getTotalHits() + " hits) for " + slowQuery.getRequest() 
+				+ ", phase timings in microseconds " + slowQuery.getTimingsMicros());
+		synchronized(this) {
+			entries.addFirst(slowQuery);
+			while(entries.size() > maxEntries) {
+				entries.removeLast();
+			}
+		}
+	}
+
+	/**
+	 * @return the logged searches still held, newest first
+	 */
+	public synchronized List<SlowQuery> getEntries() {
+		return new ArrayList<SlowQuery>(entries);
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * @return the number of slow searches since startup, including those no longer held in the log
+	 */
+	public long getSlowQueries() {
+		return slowQueries.get();
+	}
+
+	/**
+	 * @return the number of searches since startup that returned partial results
+	 */
+	public long getPartialResults() {
+		return partialResults.get();
+	}
+
+	public long getThresholdMillis() {
+		return thresholdMillis;
+	}
+
+}
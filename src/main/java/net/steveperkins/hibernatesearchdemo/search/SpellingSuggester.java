@@ -0,0 +1,143 @@
+package net.steveperkins.hibernatesearchdemo.search;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.FuzzyTermEnum;
+
+/**
+ * Builds "did you mean" suggestions for search strings, from the words actually found in the App index.
+ *
+ * Each word of the search string that appears nowhere in the index is swapped for the most similar word that does (by
+ * edit distance, with the more common word winning a tie), as long as it's at least as similar as the fuzzy search
+ * requires.  Words that are in the index are left alone, and so is the rest of the search string (quotes, spacing and
+ * all).  The dictionary is made of the fields that are indexed without stemming or phonetic encoding... the "description"
+ * field's terms are phonetic codes, which would make for baffling suggestions.  Each word is looked up in each field as
+ * that field's own analyzer would have indexed it... "customerReviews.comments" isn't lower-cased, for instance, so a
+ * word that only appears capitalized in reviews is found as written.
+ *
+ * Looking for similar words means walking a field's whole term dictionary, which is exactly the cost the adaptive search
+ * avoids for correctly-spelled searches.  So this is only called when a search comes up short (see AppSearchService).
+ */
+public class SpellingSuggester {
+
+	private static final String[] DICTIONARY_FIELDS = { "name", "supportedDevices.name", "customerReviews.comments" };
+
+	private static final Pattern WORD = Pattern.compile("[\\p{L}\\p{N}]+");
+
+	/**
+	 * Words shorter than this are never corrected, because almost any other short word is within the edit distance
+	 */
+	private static final int MIN_WORD_LENGTH = 3;
+
+	private final float minSimilarity;
+
+	/**
+	 * @param minSimilarity how similar (from 0 to 1) a replacement word must be, as with a fuzzy query's threshold
+	 */
+	public SpellingSuggester(float minSimilarity) {
+		this.minSimilarity = minSimilarity;
+	}
+
+	/**
+	 * Returns the search string with its unknown words corrected, or null if there is nothing to correct (or nothing
+	 * similar enough to correct it with).
+	 *
+	 * @param analyzer the App index's per-field analyzer (i.e. "SearchFactory.getAnalyzer(App.class)")
+	 */
+	public String suggest(IndexReader reader, Analyzer analyzer, String searchString) throws IOException {
+		StringBuilder suggestion = new StringBuilder();
+		boolean corrected = false;
+		int end = 0;
+		Matcher matcher = WORD.matcher(searchString);
+		while(matcher.find()) {
+			String word = matcher.group();
+			String[] terms = word.length() < MIN_WORD_LENGTH ? null : analyze(analyzer, word);
+			String replacement = terms == null || isKnown(reader, terms) ? null : findSimilar(reader, terms);
+			suggestion.append(searchString, end, matcher.start());
+			if(replacement != null) {
+				suggestion.append(replacement);
+				corrected = true;
+			} else {
+				suggestion.append(matcher.group());
+			}
+			end = matcher.end();
+		}
+		suggestion.append(searchString, end, searchString.length());
+		return corrected ? suggestion.toString() : null;
+	}
+
+	/**
+	 * Returns the word as indexed in each of the dictionary fields (null where the field's analyzer drops it, e.g. as a
+	 * stop word), or null if every field drops it.
+	 */
+	private String[] analyze(Analyzer analyzer, String word) throws IOException {
+		String[] terms = new String[DICTIONARY_FIELDS.length];
+		boolean any = false;
+		for(int index = 0; index < DICTIONARY_FIELDS.length; index++) {
+			TokenStream tokens = analyzer.tokenStream(DICTIONARY_FIELDS[index], new StringReader(word));
+			CharTermAttribute termAttribute = tokens.addAttribute(CharTermAttribute.class);
+			try {
+				tokens.reset();
+				if(tokens.incrementToken()) {
+					terms[index] = termAttribute.toString();
+					any = true;
+				}
+				tokens.end();
+			} finally {
+				tokens.close();
+			}
+		}
+		return any ? terms : null;
+	}
+
+	private boolean isKnown(IndexReader reader, String[] terms) throws IOException {
+		for(int index = 0; index < DICTIONARY_FIELDS.length; index++) {
+			if(terms[index] != null && reader.docFreq(new Term(DICTIONARY_FIELDS[index], terms[index])) > 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the most similar word in any of the dictionary fields, or null if none is similar enough.
+	 */
+	private String findSimilar(IndexReader reader, String[] terms) throws IOException {
+		String best = null;
+		float bestSimilarity = 0;
+		int bestDocFreq = 0;
+		for(int index = 0; index < DICTIONARY_FIELDS.length; index++) {
+			if(terms[index] == null) {
+				continue;
+			}
+			FuzzyTermEnum candidates = new FuzzyTermEnum(reader, new Term(DICTIONARY_FIELDS[index], terms[index]), minSimilarity, 0);
+			try {
+				do {
+					Term term = candidates.term();
+					if(term == null) {
+						break;
+					}
+					float similarity = candidates.difference();
+					int docFreq = candidates.docFreq();
+					if(similarity > bestSimilarity || (similarity == bestSimilarity && docFreq > bestDocFreq)) {
+						best = term.text();
+						bestSimilarity = similarity;
+						bestDocFreq = docFreq;
+					}
+				} while(candidates.next());
+			} finally {
+				candidates.close();
+			}
+		}
+		return best;
+	}
+
+}
@@ -0,0 +1,87 @@
+package net.steveperkins.hibernatesearchdemo.search;
+
+/**
+ * A point-in-time snapshot of whether this node is ready for search traffic (see "SearchWarmer").  The readiness 
+ * endpoint returns this object, converted to JSON.
+ * 
+ * A node is ready once the warm-up searches have all been run.  An index rebuild doesn't make it unready... the 
+ * rebuild replaces documents in place, so searches still see the whole catalog while it runs (see "IndexRebuilder").  
+ * Whether one is running is reported all the same.
+ */
+public class WarmupStatus {
+
+	/**
+	 * The lifecycle of the warm-up.  "PENDING" means that the application is still starting up.
+	 */
+	public enum State { PENDING, WARMING, WARM }
+
+	private final State state;
+
+	private final boolean indexRebuilding;
+
+	private final int searchesRun;
+
+	private final int searchesFailed;
+
+	private final int searchesTotal;
+
+	private final long elapsedMillis;
+
+	public WarmupStatus(State state, boolean indexRebuilding, int searchesRun, int searchesFailed, int searchesTotal, 
+			long elapsedMillis) {
+		this.state = state;
+		this.indexRebuilding = indexRebuilding;
+		this.searchesRun = searchesRun;
+		this.searchesFailed = searchesFailed;
+		this.searchesTotal = searchesTotal;
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	/**
+	 * @return true if this node should be sent search traffic
+	 */
+	public boolean isReady() {
+		return state == State.WARM;
+	}
+
+	//
+	// GETTERS
+	//
+
+	public State getState() {
+		return state;
+	}
+
+	public boolean isIndexRebuilding() {
+		return indexRebuilding;
+	}
+
+	public int getSearchesRun() {
+		return searchesRun;
+	}
+
+	/**
+	 * @return how many warm-up searches threw an exception.  They still count as run, so they don't hold up readiness.
+	 */
+	public int getSearchesFailed() {
+		return searchesFailed;
+	}
+
+	public int getSearchesTotal() {
+		return searchesTotal;
+	}
+
+	/**
+	 * @return how long the warm-up has taken so far, or took in all once the node is warm
+	 */
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	@Override
+	public String toString() {
+		return state + ": " + searchesRun + " of " + searchesTotal + " warm-up searches run (" + searchesFailed 
+				+ " failed) in " + elapsedMillis + " ms" + (indexRebuilding ? ", index rebuilding" : "");
+	}
+
+}
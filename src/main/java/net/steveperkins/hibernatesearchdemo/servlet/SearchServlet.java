@@ -1,31 +1,29 @@
 package net.steveperkins.hibernatesearchdemo.servlet;
 
 import java.io.IOException;
-import java.util.List;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.TreeMap;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import net.steveperkins.hibernatesearchdemo.domain.App;
-import net.steveperkins.hibernatesearchdemo.util.StartupDataLoader;
+import net.steveperkins.hibernatesearchdemo.search.AppSearchRequest;
+import net.steveperkins.hibernatesearchdemo.search.AppSearchResult;
+import net.steveperkins.hibernatesearchdemo.search.AppSearchService;
+import net.steveperkins.hibernatesearchdemo.search.PriceRange;
+import net.steveperkins.hibernatesearchdemo.search.SearchExecutor;
+import net.steveperkins.hibernatesearchdemo.util.LatencyMetrics;
+import net.steveperkins.hibernatesearchdemo.util.PhaseTimer;
+import net.steveperkins.hibernatesearchdemo.util.Settings;
 
-import org.apache.lucene.search.Sort;
-import org.apache.lucene.search.SortField;
-import org.hibernate.Session;
-import org.hibernate.search.FullTextQuery;
-import org.hibernate.search.FullTextSession;
-import org.hibernate.search.Search;
-import org.hibernate.search.query.dsl.QueryBuilder;
-import org.hibernate.search.query.facet.Facet;
-import org.hibernate.search.query.facet.FacetSortOrder;
-import org.hibernate.search.query.facet.FacetingRequest;
-import org.hibernate.transform.AliasToBeanResultTransformer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,194 +33,182 @@ import org.slf4j.LoggerFactory;
  * The Servlet 3.0 annotation @WebServlet maps this servlet to the URL "search" (e.g. "http://localhost:8080/search").  With 
  * earlier versions of the Servlet spec, this configuration would belong in the "web.xml" file.  The basic logic of this 
  * search operation could be refactored for an application using Spring, JSF, or any other Java-based application framework. 
+ * 
+ * The search itself runs on the dedicated, bounded pool of "SearchExecutor", using Servlet 3.0 asynchronous processing 
+ * (hence "asyncSupported" on the annotation).  The container's request thread only reads the parameters, hands the search 
+ * over, and returns to the container... so a burst of searches can't exhaust the container's threads and stall static 
+ * content.  When the pool's queue is full, the request is turned away at once with "503 Service Unavailable".  A search 
+ * still waiting or running after "search.pool.timeoutMillis" also gets a 503.  The time each search spent waiting in 
+ * the queue is recorded as "servlet.queueWait" (see LatencyMetrics), and every request... including those turned away 
+ * or timed out... counts towards "servlet.total".
  */
 @SuppressWarnings("serial")
-@WebServlet("search")
+@WebServlet(value="search", asyncSupported=true)
 public class SearchServlet extends HttpServlet {
+	
+	private static final long TIMEOUT_MILLIS = Settings.getLong("search.pool.timeoutMillis", 10000);
+	
+	private static Logger logger = LoggerFactory.getLogger(SearchServlet.class);
 
 	/**
 	 * This method contains the primary search functionality for this servlet, and is automatically invoked once for every HTTP
 	 * POST to the mapped URL. 
 	 */
-	@SuppressWarnings("unchecked")
 	@Override	
-	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+	protected void doPost(final HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
 		
-		Logger logger = LoggerFactory.getLogger(SearchServlet.class);
+		// Time each phase of the request, recording the latencies under "servlet.*" (see LatencyMetrics).  The phases of 
+		// the search itself are recorded separately, under "search.*".
+		final PhaseTimer timer = new PhaseTimer("servlet");
 		
 		// Get the user's search keyword(s).  Get optional parameters, or apply default values if those parameters weren't passed.
-		String searchString = request.getParameter("searchString") != null ? request.getParameter("searchString").trim() : "";
-		String selectedDevice = request.getParameter("selectedDevice") != null ? request.getParameter("selectedDevice").trim() : "all";
-		String selectedCategory = request.getParameter("selectedCategory") != null ? request.getParameter("selectedCategory") : "all";
-		String selectedPriceRange = request.getParameter("selectedPriceRange") != null ? request.getParameter("selectedPriceRange") : "all";
-		String sortField = request.getParameter("sortField") != null ? request.getParameter("sortField").trim() : "relevance";
-		int firstResult = request.getParameter("firstResult") != null ? Integer.parseInt(request.getParameter("firstResult")) : 0;
+		final String searchString = request.getParameter("searchString") != null ? request.getParameter("searchString").trim() : "";
+		final String selectedDevice = request.getParameter("selectedDevice") != null ? request.getParameter("selectedDevice").trim() : "all";
+		final String selectedCategory = request.getParameter("selectedCategory") != null ? request.getParameter("selectedCategory") : "all";
+		final String selectedPriceRange = request.getParameter("selectedPriceRange") != null ? request.getParameter("selectedPriceRange") : "all";
+		final String sortField = request.getParameter("sortField") != null ? request.getParameter("sortField").trim() : "relevance";
+		final int firstResult = request.getParameter("firstResult") != null ? Integer.parseInt(request.getParameter("firstResult")) : 0;
 		logger.info("Received searchString [" + searchString 
 				+ "], selectedDevice [" + selectedDevice
 				+ "], selectedCategory [" + selectedCategory
 				+ "], selectedPriceRange [" + selectedPriceRange
 				+ "], sortField [" + sortField 
 				+ "], and firstResult [" +  firstResult + "]");
-
-		// Start a Hibernate session.
-		Session session = StartupDataLoader.openSession();
-		
-		// Create a Hibernate Search wrapper around the vanilla Hibernate session
-		FullTextSession fullTextSession = Search.getFullTextSession(session);
-
-		// Begin a transaction.  This may not be strictly necessary, but is a good practice in general.
-		fullTextSession.beginTransaction();
-
-		// Create a Hibernate Search QueryBuilder for the appropriate Lucene index (i.e. the index for "App" in this case)
-		QueryBuilder queryBuilder = fullTextSession.getSearchFactory().buildQueryBuilder().forEntity( App.class ).get();
-		
-		// Use the QueryBuilder to construct a Lucene query... matching the user's search keywords against the "name" 
-		// and "description" fields of App, as well as "name" field of associated Device entities, and the "comments" field of
-		// embedded CustomerReview objects.
-		org.apache.lucene.search.Query luceneQuery = null;
-		if(searchString.length() > 2 && searchString.startsWith("\"") && searchString.endsWith("\"")) {
-			
-			// If the user's search string is surrounded by double-quotes, then use a phrase search.
-			// Boost the "name" and "description" fields even more so than normal (to showcase query-time boosting
-			// as well as the index-time boosting already seen).
-			String unquotedSearchString = searchString.substring(1, searchString.length() - 1);
-			luceneQuery = queryBuilder
-					.phrase()
-					.onField("name").boostedTo(2)
-					.andField("description").boostedTo(2)
-					.andField("supportedDevices.name").andField("customerReviews.comments")
-					.sentence(unquotedSearchString)
-					.createQuery();
-		} else {
-			
-			// If the user's search string is not quoted, then use a fuzzy keyword search
-			luceneQuery = queryBuilder
-					.keyword()
-					.fuzzy()
-					.withThreshold(0.7f)
-					.onFields("name", "description", "supportedDevices.name", "customerReviews.comments")
-					.matching(searchString)
-					.createQuery();
-		}
-		FullTextQuery hibernateQuery = fullTextSession.createFullTextQuery(luceneQuery, App.class);  // could be cast to "org.hibernate.Query"
-
-		// Use a FullTextFilter to include only those apps supported on a particular device 
-		if(selectedDevice != null && !selectedDevice.equals("all")) {
-			hibernateQuery.enableFullTextFilter("deviceName").setParameter("deviceName", selectedDevice);
-		}
-		
-		// Apply optional sort criteria, if not the default sort-by-relevance
-		if(sortField.equals("name")) {
-			Sort sort = new Sort(new SortField("sorting_name", SortField.STRING));
-			hibernateQuery.setSort(sort);
-		} else if(sortField.equals("name-reverse")) {
-			Sort sort = new Sort(new SortField("sorting_name", SortField.STRING, true));
-			hibernateQuery.setSort(sort);
-		}
-
-		// Get the estimated number of results (NOTE: not 100% accurate, but doesn't require a database hit that 
-		// might be resource-intensive for large data sets).
-		int resultSize = hibernateQuery.getResultSize();
-
-		// Limit search to a batch of 5 results, and starting where the last page left off (default to beginning)
-		logger.info("Query string == " + hibernateQuery.getQueryString());
-		hibernateQuery.setFirstResult(firstResult);
-		hibernateQuery.setMaxResults(5);
-		
-		// Use a projection to get field data from the Lucene index, without having to hit the database.  We don't need all 
-		// of each App object's properties... just the ones we want to display right now, and the "id" so we might fetch the 
-		// full object later.
-		hibernateQuery.setProjection("id", "name", "description", "image");
-		// Since we are using projection, "hibernateQuery.list()" below will normally return "Object[]" (i.e. one array element 
-		// per projected field).  This ResultTransformer uses those values to build detached App objects, and makes "hibernateQuery.list()"
-		// return the usual "List<App>".
-		hibernateQuery.setResultTransformer( new AliasToBeanResultTransformer(App.class) );		
-		
-		// Create a discrete faceting request... to determine which categories are represented in the search results, and 
-		// how many results are in each category.  This information won't be accessible until after the query is actually 
-		// performed (i.e. by calling "hibernateQuery.list()").
-		FacetingRequest categoryFacetingRequest = queryBuilder
-				.facet()
-				.name("categoryFacet")
-				.onField("category")
-				.discrete()
-				.orderedBy(FacetSortOrder.FIELD_VALUE)
-				.includeZeroCounts(false)
-				.createFacetingRequest();
-		hibernateQuery.getFacetManager().enableFaceting(categoryFacetingRequest);
-		
-		// Create a ranged faceting request... to determine which search results fit into price bands of "under $1", "$1-$5", 
-		// or "above $5".  This information won't be accessible until after the query is actually performed (i.e. by calling 
-		// "hibernateQuery.list()").
-		FacetingRequest priceRangeFacetingRequest = queryBuilder
-				.facet()
-				.name("priceRangeFacet")
-				.onField("price")
-				.range()
-				.below(1f).excludeLimit()
-				.from(1f).to(5f)
-				.above(5f).excludeLimit()
-				.createFacetingRequest();
-		hibernateQuery.getFacetManager().enableFaceting(priceRangeFacetingRequest);
+		timer.mark("parseRequest");
 		
-		// Apply a limit of two seconds on the amount of time the search query may run.  If the query has not completed after 
-		// two seconds, then it should stop gracefully and return the list of results found so far.
-		hibernateQuery.limitExecutionTimeTo(2, TimeUnit.SECONDS);
-		
-		// Actually perform the search
-		List<App> apps = hibernateQuery.list();
-		
-		// Now that the search has been performed, information can be obtained about about the facets enabled a couple of steps back. 
-		List<Facet> categoryFacets = hibernateQuery.getFacetManager().getFacets("categoryFacet");
-		List<Facet> priceRangeFacets = hibernateQuery.getFacetManager().getFacets("priceRangeFacet");
-		
-		// Use the category facet information to build a list of categories found in this data set.
-		Map<String, Integer> categories = new TreeMap<String, Integer>();
-		for(Facet categoryFacet : categoryFacets) {
-			categories.put(categoryFacet.getValue(), categoryFacet.getCount());
-			// If the "selectedCategory" CGI parameter was passed to this servlet, then it means that a particular category has been 
-			// selected on the search results JSP.  Apply the matching facet to the query so it can be re-run, limiting results to
-			// that category.
-			if(categoryFacet.getValue().equalsIgnoreCase(selectedCategory)) {
-				hibernateQuery.getFacetManager().getFacetGroup("categoryFacet").selectFacets(categoryFacet);
+		// Switch to asynchronous processing.  Whichever comes first... the search finishing, or the timeout... claims the 
+		// request and response, and the other then leaves them alone.
+		final AsyncContext asyncContext = request.startAsync();
+		asyncContext.setTimeout(TIMEOUT_MILLIS);
+		final AtomicBoolean claimed = new AtomicBoolean();
+		final AtomicBoolean dispatched = new AtomicBoolean();
+		asyncContext.addListener(new AsyncListener() {
+			public void onTimeout(AsyncEvent event) throws IOException {
+				if(claimed.compareAndSet(false, true)) {
+					logger.warn("Search timed out after " + TIMEOUT_MILLIS + " ms, for searchString [" + searchString + "]");
+					sendUnavailable(asyncContext, "The search took too long.  Please try again.");
+				}
 			}
-		}
-		// Use the price range facet information to build a list of price bands found in this data set.
-		Map<String, Integer> priceRanges = new TreeMap<String, Integer>();
-		for(Facet priceRangeFacet : priceRangeFacets) {
-			priceRanges.put(priceRangeFacet.getValue(), priceRangeFacet.getCount());
-			// If the "selectedPriceRange" CGI parameter was passed to this servlet, then it means that a particular price range 
-			// has been selected on the search results JSP.  Apply the matching facet to the query so it can be re-run, limiting 
-			// results to that category.
-			if(priceRangeFacet.getValue().equalsIgnoreCase(selectedPriceRange)) {
-				hibernateQuery.getFacetManager().getFacetGroup("priceRangeFacet").selectFacets(priceRangeFacet);
+			public void onComplete(AsyncEvent event) {
+				if(dispatched.get()) {
+					timer.mark("render");
+					timer.stop();
+				} else {
+					// Turned away, timed out or failed.  These still count towards the request's total latency, but a 
+					// timed out search may still be marking its phases on the pool thread... so the total is recorded 
+					// here without touching the timer's own (unsynchronized) timings.
+					LatencyMetrics.getInstance().record("servlet.total", timer.getElapsedNanos());
+				}
 			}
-		}
-		// Re-run the search query.  If one or more facets have been selected, then they will be applied... otherwise, the 
-		// results will not change.
-		apps = hibernateQuery.list();
-		
-		// Estimate the number of search results found, to help with pagination.
-		resultSize = hibernateQuery.getResultSize();
+			public void onError(AsyncEvent event) {
+			}
+			public void onStartAsync(AsyncEvent event) {
+			}
+		});
 		
-		// Put the search results on the HTTP request object, along with sorting and pagination related parameters
+		try {
+			SearchExecutor.getInstance().submit(new Runnable() {
+				public void run() {
+					timer.mark("queueWait");
+					if(claimed.get()) {
+						// Already timed out while waiting in the queue
+						return;
+					}
+					AppSearchResult searchResult;
+					try {
+						searchResult = search(timer, searchString, selectedDevice, selectedCategory, selectedPriceRange, sortField, firstResult);
+					} catch(RuntimeException e) {
+						if(claimed.compareAndSet(false, true)) {
+							logger.error("Unable to search for searchString [" + searchString + "]", e);
+							sendError(asyncContext, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+						}
+						return;
+					}
+					// Unless the search timed out in the meantime (in which case the request may already be completed, and 
+					// its result is discarded), put the search results on the request object and forward it to the 
+					// JSP/JSTL view for rendering, back on one of the container's threads
+					if(claimed.compareAndSet(false, true)) {
+						setAttributes(request, searchResult, searchString, selectedDevice, selectedCategory, selectedPriceRange, sortField, firstResult);
+						dispatched.set(true);
+						asyncContext.dispatch("/WEB-INF/pages/search.jsp");
+					}
+				}
+			});
+		} catch(RejectedExecutionException e) {
+			// Every search thread is busy and the queue is full, so shed the load rather than queueing without limit
+			if(claimed.compareAndSet(false, true)) {
+				logger.warn("Search queue is full, turning away searchString [" + searchString + "]");
+				sendUnavailable(asyncContext, "The marketplace is very busy right now.  Please try your search again in a moment.");
+			}
+		}
+	}
+	
+	/**
+	 * Performs the search.  This runs on the search pool, and leaves the HTTP request object alone... by the time it 
+	 * returns, the request may already have timed out and been completed.
+	 */
+	private AppSearchResult search(PhaseTimer timer, String searchString, String selectedDevice, String selectedCategory, 
+			String selectedPriceRange, String sortField, int firstResult) {
+
+		// Perform the search.  A single pass over the App index produces the category and price range facet counts, the 
+		// page of results narrowed down by any selected facets, and the total number of results for pagination.  (A second 
+		// pass, matching the search words fuzzily, is only needed when they turn up too few apps as typed.)  Results 
+		// are projected from the fields stored in the index, so there is no need to hit the database here... the "id" is 
+		// included so the full object might be fetched later.
+		AppSearchRequest searchRequest = new AppSearchRequest(searchString, selectedDevice, selectedCategory, 
+				selectedPriceRange, sortField, firstResult, 5);
+		AppSearchResult searchResult = AppSearchService.getInstance().search(searchRequest);
+		timer.mark("search");
+		return searchResult;
+	}
+	
+	/**
+	 * Puts the search results on the HTTP request object, along with sorting and pagination related parameters.
+	 */
+	private void setAttributes(HttpServletRequest request, AppSearchResult searchResult, String searchString, 
+			String selectedDevice, String selectedCategory, String selectedPriceRange, String sortField, int firstResult) {
 		request.setAttribute("searchString", searchString);
 		request.setAttribute("selectedDevice", selectedDevice);
 		request.setAttribute("selectedCategory", selectedCategory);
 		request.setAttribute("selectedPriceRange", selectedPriceRange);
 		request.setAttribute("sortField", sortField);
-		request.setAttribute("apps", apps);
-		request.setAttribute("resultSize", resultSize);
+		request.setAttribute("apps", searchResult.getApps());
+		request.setAttribute("resultSize", searchResult.getResultSize());
 		request.setAttribute("firstResult", firstResult);
-		request.setAttribute("categories", categories);
-		request.setAttribute("priceRanges", priceRanges);
-
-		// Close and clean up the Hibernate session
-		fullTextSession.getTransaction().commit();
-		session.close();
+		request.setAttribute("categories", searchResult.getCategories());
+		request.setAttribute("priceRanges", searchResult.getPriceRanges());
 		
-		// Forward the request object (including the search results) to the JSP/JSTL view for rendering
-		getServletContext().getRequestDispatcher("/WEB-INF/pages/search.jsp").forward(request, response);
+		// The price bands may differ from one search to the next (see PriceBands), so describe them in words here
+		Map<String, String> priceRangeDescriptions = new HashMap<String, String>();
+		for(String label : searchResult.getPriceRanges().keySet()) {
+			priceRangeDescriptions.put(label, PriceRange.parse(label).getDescription());
+		}
+		request.setAttribute("priceRangeDescriptions", priceRangeDescriptions);
+		request.setAttribute("suggestion", searchResult.getSuggestion());
+		request.setAttribute("partial", searchResult.isPartial());
+	}
+	
+	/**
+	 * Ends an asynchronous request with "503 Service Unavailable", asking the client to retry a second later.
+	 */
+	private static void sendUnavailable(AsyncContext asyncContext, String message) {
+		HttpServletResponse response = (HttpServletResponse) asyncContext.getResponse();
+		response.setHeader("Retry-After", "1");
+		try {
+			response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, message);
+		} catch(IOException e) {
+			logger.debug("Unable to send 503 response", e);
+		}
+		asyncContext.complete();
+	}
+	
+	private static void sendError(AsyncContext asyncContext, int status) {
+		try {
+			((HttpServletResponse) asyncContext.getResponse()).sendError(status);
+		} catch(IOException e) {
+			logger.debug("Unable to send " + status + " response", e);
+		}
+		asyncContext.complete();
 	}
 
 	/**
@@ -0,0 +1,233 @@
+package net.steveperkins.hibernatesearchdemo.util;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import net.steveperkins.hibernatesearchdemo.domain.App;
+import net.steveperkins.hibernatesearchdemo.domain.CustomerReview;
+import net.steveperkins.hibernatesearchdemo.domain.Device;
+
+import org.hibernate.LockOptions;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Generates a synthetic catalog of any size, for load-testing search at production scale without an outside database.
+ * The catalog uses the same five devices as the sample data in StartupDataLoader, with randomly assembled (but
+ * readable) app names, descriptions and customer reviews.  Prices are skewed towards free and cheap apps, with a
+ * long tail of pricier ones.  The same seed always produces the same catalog.
+ *
+ * Apps are persisted in batches, each batch in its own transaction.  Hibernate sends the inserts to the database in
+ * JDBC batches (see "hibernate.jdbc.batch_size" in hibernate.cfg.xml), Hibernate Search indexes each batch when its
+ * transaction commits, and the session is then cleared... so memory use stays flat no matter how large the catalog.
+ *
+ * StartupDataLoader uses this class instead of its hard-coded sample data when "catalog.size" is set in
+ * vaporware.properties.
+ */
+public class CatalogGenerator {
+
+	private static Logger logger = LoggerFactory.getLogger(CatalogGenerator.class);
+
+	private static final String[] ADJECTIVES = {
+		"Super", "Smart", "Simple", "Magic", "Turbo", "Pocket", "Ultimate", "Classic", "Happy", "Angry", "Frustrated",
+		"Brilliant", "Cloud", "Social", "Instant", "Mega", "Tiny", "Epic", "Zen", "Retro", "Quantum", "Daily", "Secret"
+	};
+
+	private static final String[] NOUNS = {
+		"Flamingos", "Football", "Crystals", "Sharpener", "Stapler", "Browser", "Radio", "Map", "Journey", "Reader",
+		"Camera", "Weather", "Notes", "Calendar", "Budget", "Fitness", "Recipes", "Puzzle", "Racing", "Dragons", "Castle",
+		"Garden", "Chess", "Poker", "Golf", "Tennis", "Runner", "Chat", "Wallet", "Translator", "Tutor", "Podcast", "Quiz",
+		"Tracker", "Planner", "Scanner", "Studio", "Player", "Editor", "Conferencing", "News", "Stream", "Music"
+	};
+
+	private static final String[] SUFFIXES = { "", "", "", " Pro", " Lite", " Plus", " 2000", " HD", " Deluxe", " Free" };
+
+	private static final String[] DESCRIPTION_SENTENCES = {
+		"This %s app is the %s way to get things done.",
+		"Enjoy all the excitement of %s, without any of the %s.",
+		"Track your %s and manage your %s from anywhere.",
+		"Perfect for %s fans who want something a little more %s.",
+		"Download it today and harness the awesome power of %s on your %s.",
+		"Developers no longer need %s, or %s for that matter.",
+		"It's sort of like %s, except with more %s.",
+		"Now with <b>%s</b> support and an improved %s.",
+		"Our %s engine makes every %s feel brand new.",
+		"Share your %s with friends, and compare %s scores."
+	};
+
+	private static final String[] DESCRIPTION_WORDS = {
+		"cloud", "sales", "football", "soccer", "crystals", "games", "video", "books", "music", "radio", "maps", "directions",
+		"photos", "weather", "news", "budgets", "leads", "schedules", "recipes", "workouts", "puzzles", "racing", "dragons",
+		"high-powered", "stylish", "trendy", "magical", "productive", "relaxing", "exciting", "smooth", "tablet", "phone",
+		"computer", "reader", "browser", "system administrators", "food and water", "touch screen", "streaming", "offline"
+	};
+
+	private static final String[] REVIEW_COMMENTS = {
+		"Great app!  Works exactly as advertised.",
+		"This app makes my %s even more stylish and trendy!",
+		"Not great... but still WAY better than the other %s apps.",
+		"I uninstalled this app.  It crashed every time I opened the %s screen.",
+		"Five stars, would buy again.  The %s feature alone is worth the price.",
+		"False advertising... I thought this was supposed to be about %s.",
+		"My kids love it, especially the %s.",
+		"Too many ads, and the %s is confusing.",
+		"Does what it says.  I use it every day for %s.",
+		"Meh.  The %s needs work."
+	};
+
+	/**
+	 * Category names, with each listed as many times as its relative weight in the catalog.
+	 */
+	private static final String[] CATEGORIES = {
+		"Games", "Games", "Games", "Games", "Business", "Business", "Productivity", "Productivity", "Media", "Media",
+		"Internet", "Travel", "Education", "Health"
+	};
+
+	private static final String[] IMAGES = {
+		"ball.jpg", "book.jpg", "brilliant.jpg", "cloud.jpg", "compass.jpg", "flamingo.jpg", "jamming.jpg",
+		"laptop.jpg", "orangeswirls.jpg", "pencil.jpg", "pointing.jpg", "stapler.jpg"
+	};
+
+	/**
+	 * The log-normal distribution of review counts per app (see "nextApp()"), with a median of under one review and
+	 * about one app in a thousand past a hundred
+	 */
+	private static final double REVIEW_COUNT_MU = 0.6;
+
+	private static final double REVIEW_COUNT_SIGMA = 1.3;
+
+	private final Random random;
+
+	private final int batchSize;
+
+	private final int maxReviews = Settings.getInt("catalog.maxReviews", 5000);
+
+	/**
+	 * @param seed the random seed, so that the same catalog can be generated again
+	 * @param batchSize the number of apps persisted (and indexed) per transaction
+	 */
+	public CatalogGenerator(long seed, int batchSize) {
+		this.random = new Random(seed);
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Persists the given number of apps, along with the devices that support them.  The session must not have a
+	 * transaction in progress, as one is started and committed for each batch.
+	 */
+	public void generate(Session session, int size) {
+		long start = System.currentTimeMillis();
+
+		List<Device> devices = Arrays.asList(
+				new Device("Orange", "xPhone", null),
+				new Device("Orange", "xTablet", null),
+				new Device("Song-Sung", "Solar System Phone", null),
+				new Device("Jungle", "Flame Book Reader", null),
+				new Device(null, "Personal Computer", null));
+		session.beginTransaction();
+		for(Device device : devices) {
+			session.save(device);
+		}
+		session.getTransaction().commit();
+
+		int reportInterval = Math.max(batchSize, size / 10);
+		for(int count = 0; count < size; count += batchSize) {
+			session.beginTransaction();
+			for(int index = count; index < Math.min(count + batchSize, size); index++) {
+				session.save(nextApp(devices));
+			}
+			// Committing flushes the batch to the database and to the index.  Clearing the session afterwards then
+			// releases the apps, and the devices are re-attached (without touching the database) for the next batch.
+			session.getTransaction().commit();
+			session.clear();
+			for(Device device : devices) {
+				session.buildLockRequest(LockOptions.NONE).lock(device);
+			}
+
+			int generated = Math.min(count + batchSize, size);
+			if(generated % reportInterval < batchSize || generated == size) {
+				long elapsed = Math.max(1, System.currentTimeMillis() - start);
+				logger.info("Generated " + generated + " of " + size + " apps (" + (generated * 1000L / elapsed) + " apps/second)");
+			}
+		}
+	}
+
+	private App nextApp(List<Device> devices) {
+		String name = pick(ADJECTIVES) + " " + pick(NOUNS) + pick(SUFFIXES);
+		StringBuilder description = new StringBuilder();
+		for(int sentences = 2 + random.nextInt(4); sentences > 0; sentences--) {
+			if(description.length() > 0) {
+				description.append("  ");
+			}
+			description.append( String.format(pick(DESCRIPTION_SENTENCES), pick(DESCRIPTION_WORDS), pick(DESCRIPTION_WORDS)) );
+		}
+		App app = new App(name, pick(IMAGES), description.toString(), pick(CATEGORIES), nextPrice());
+
+		// A small fraction of apps are inactive, and so won't be indexed (see IndexWhenActiveInterceptor)
+		app.setActive(random.nextInt(100) >= 3);
+
+		Calendar releaseDate = Calendar.getInstance();
+		releaseDate.add(Calendar.DAY_OF_YEAR, -random.nextInt(5 * 365));
+		app.setReleaseDate(releaseDate.getTime());
+
+		// Most apps run on several devices, but always at least one
+		Set<Device> supportedDevices = new HashSet<Device>();
+		for(Device device : devices) {
+			if(random.nextInt(100) < 55) {
+				supportedDevices.add(device);
+			}
+		}
+		if(supportedDevices.isEmpty()) {
+			supportedDevices.add(devices.get(random.nextInt(devices.size())));
+		}
+		app.setSupportedDevices(supportedDevices);
+
+		// Review counts have a long tail, as in a real store:  about half of the apps have no reviews, most of the rest
+		// have a handful, and a popular few have hundreds (up to "catalog.maxReviews").  The review table's key covers
+		// the whole review, so an app can have any number of them.  Each app's ratings cluster around its own quality,
+		// which leans positive, and longer reviews are made of several comments.
+		Set<CustomerReview> reviews = new HashSet<CustomerReview>();
+		int reviewCount = Math.min(maxReviews, Math.max(0, (int) Math.exp(REVIEW_COUNT_MU + REVIEW_COUNT_SIGMA * random.nextGaussian()) - 1));
+		double quality = 3.6 + random.nextGaussian() * 0.8;
+		for(int index = 0; index < reviewCount; index++) {
+			int stars = (int) Math.max(1, Math.min(5, Math.round(quality + random.nextGaussian())));
+			StringBuilder comments = new StringBuilder();
+			for(int sentences = 1 + random.nextInt(3); sentences > 0; sentences--) {
+				if(comments.length() > 0) {
+					comments.append("  ");
+				}
+				comments.append( String.format(pick(REVIEW_COMMENTS), pick(DESCRIPTION_WORDS)) );
+			}
+			reviews.add(new CustomerReview("user" + random.nextInt(1000000), stars, comments.toString()));
+		}
+		app.setCustomerReviews(reviews);
+		return app;
+	}
+
+	/**
+	 * About a third of apps are free, a quarter cost $0.99, and the rest spread out up to $49.99.
+	 */
+	private float nextPrice() {
+		int roll = random.nextInt(100);
+		if(roll < 35) {
+			return 0f;
+		} else if(roll < 60) {
+			return 0.99f;
+		} else if(roll < 80) {
+			return 1.99f + random.nextInt(4);
+		} else if(roll < 95) {
+			return 5.99f + random.nextInt(5);
+		}
+		return 10.99f + random.nextInt(40);
+	}
+
+	private String pick(String[] values) {
+		return values[random.nextInt(values.length)];
+	}
+
+}
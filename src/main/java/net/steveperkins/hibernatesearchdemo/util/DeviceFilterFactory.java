@@ -1,20 +1,19 @@
 package net.steveperkins.hibernatesearchdemo.util;
 
-import java.util.StringTokenizer;
+import net.steveperkins.hibernatesearchdemo.search.DeviceFilterCache;
 
-import org.apache.lucene.index.Term;
 import org.apache.lucene.search.Filter;
-import org.apache.lucene.search.PhraseQuery;
-import org.apache.lucene.search.QueryWrapperFilter;
 import org.hibernate.search.annotations.Factory;
 import org.hibernate.search.annotations.Key;
 import org.hibernate.search.filter.FilterKey;
-import org.hibernate.search.filter.impl.CachingWrapperFilter;
 
 /**
  * This class provides logic for filtering "App" entities on the basis of whether or not their "supportedDevices"
  * field includes a "Device" with a given name.  This factory class is associated with the "App" entity class 
  * through a @FullTextFilterDef annotation.
+ * 
+ * The filter itself comes from DeviceFilterCache, which keeps its own bitsets per index segment.  So the 
+ * @FullTextFilterDef on App only caches the filter instance, and not its results (see "cache" on that annotation).
  */
 public class DeviceFilterFactory {
 
@@ -39,16 +38,9 @@ public class DeviceFilterFactory {
 	 */
 	@Factory
 	public Filter getFilter() {
-		StringTokenizer tokenzier = new StringTokenizer(deviceName.toLowerCase());
-		PhraseQuery query = new PhraseQuery();
-		while(tokenzier.hasMoreTokens()) {
-			// By default, field values were converted to lower-case when indexed by Lucene.  So be sure to 
-			// convert search terms to lower-case in order to make them match.
-			Term term = new Term("supportedDevices.name", tokenzier.nextToken().toLowerCase());
-			query.add(term);
-		}
-		Filter filter = new QueryWrapperFilter(query);
-		return new CachingWrapperFilter(filter);
+		// Rather than matching the device name with a phrase query, hand out the bitsets of apps per device ID which 
+		// are precomputed for each index segment (see DeviceFilterCache).
+		return DeviceFilterCache.getInstance().getFilter(deviceName);
 	}
 	
 	public String getDeviceName() {
@@ -1,16 +1,23 @@
 package net.steveperkins.hibernatesearchdemo.util;
 
 import net.steveperkins.hibernatesearchdemo.domain.CustomerReview;
+import net.steveperkins.hibernatesearchdemo.search.PopularitySignals;
 
 import org.hibernate.search.engine.BoostStrategy;
 
 /**
  * This class provides dynamic boosting for the CustomerReview persistent object, giving instances 
  * of that class a higher relevance weight when they represent five-star reviews.
+ * 
+ * This boost is applied at index time, so it only changes when the app is reindexed.  When popularity is boosted at 
+ * query time instead (see "PopularitySignals"), this boost is switched off, so that reviews don't count twice.
  */
 public class FiveStarBoostStrategy implements BoostStrategy {
 
 	public float defineBoost(Object value) {
+		if(PopularitySignals.getInstance().isEnabled()) {
+			return 1;
+		}
 		if(value == null || !(value instanceof CustomerReview)) {
 			return 1;
 		}
@@ -0,0 +1,175 @@
+package net.steveperkins.hibernatesearchdemo.util;
+
+import java.util.Properties;
+
+import net.steveperkins.hibernatesearchdemo.search.BatchingBackendQueueProcessor;
+import net.steveperkins.hibernatesearchdemo.search.ReplacingBackendQueueProcessor;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.search.FullTextSession;
+import org.hibernate.search.Search;
+import org.hibernate.search.SearchFactory;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.service.ServiceRegistryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the single Hibernate SessionFactory (and the Hibernate Search SearchFactory built along with it) for the
+ * whole application.  Building a SessionFactory is very expensive... it parses the mappings, bootstraps Hibernate Search,
+ * and opens the Lucene indexes.  So this should happen exactly once, when the servlet container starts, and every
+ * request should simply borrow a lightweight Session from the shared factory.
+ *
+ * The lifecycle is managed by "StartupDataLoader", which calls "initialize()" when the web application starts and
+ * "close()" when it shuts down.  The search servlet, the RESTful services, and the startup loader itself all obtain
+ * sessions through this class rather than building their own factories.
+ *
+ * Once "close()" has been called, the SessionFactory stays closed until "initialize()" is called again explicitly.  In 
+ * the meantime, anything asking for a session (e.g. a background thread that outlived the shutdown) gets an 
+ * IllegalStateException, rather than silently bootstrapping a brand new factory that nothing will ever close.
+ */
+public final class HibernateContext {
+
+	private static Logger logger = LoggerFactory.getLogger(HibernateContext.class);
+
+	private static volatile SessionFactory sessionFactory;
+
+	private static volatile SearchFactory searchFactory;
+
+	private static volatile boolean closed;
+
+	private HibernateContext() {
+	}
+
+	/**
+	 * Builds the SessionFactory from "hibernate.cfg.xml", if it hasn't been built already.  Safe to call more than once.
+	 */
+	public static synchronized void initialize() {
+		initialize(null);
+	}
+
+	/**
+	 * Builds the SessionFactory from "hibernate.cfg.xml", with any given properties overriding the values in that file.
+	 * This is mostly useful outside of the servlet container (e.g. in the benchmarks), where the JNDI datasource is not
+	 * available and a plain JDBC URL must be used instead.  If the SessionFactory has already been built, then this
+	 * method does nothing.
+	 */
+	public static synchronized void initialize(Properties overrides) {
+		if(sessionFactory != null && !sessionFactory.isClosed()) {
+			return;
+		}
+		long start = System.currentTimeMillis();
+		Configuration configuration = buildConfiguration(overrides);
+		ServiceRegistry serviceRegistry = new ServiceRegistryBuilder().applySettings(configuration.getProperties()).buildServiceRegistry();
+		sessionFactory = configuration.buildSessionFactory(serviceRegistry);
+		closed = false;
+
+		// The SearchFactory lives as long as the SessionFactory, so grab it once through a throwaway session
+		Session session = sessionFactory.openSession();
+		try {
+			searchFactory = Search.getFullTextSession(session).getSearchFactory();
+		} finally {
+			session.close();
+		}
+		logger.info("Hibernate SessionFactory initialized in " + (System.currentTimeMillis() - start) + " ms");
+	}
+
+	/**
+	 * Reads "hibernate.cfg.xml" and applies the index directory and indexing modes from "vaporware.properties", followed by any 
+	 * overriding properties.  When a plain JDBC URL is supplied as an override, the JNDI datasource setting from the 
+	 * config file is dropped so that Hibernate uses the URL instead.
+	 */
+	public static Configuration buildConfiguration(Properties overrides) {
+		Configuration configuration = new Configuration();
+		configuration.configure();
+		
+		// In "mmap" mode, the App index is kept on the filesystem and accessed through memory-mapped files.  That keeps 
+		// the index off of the Java heap, and lets it survive a restart (see StartupDataLoader).
+		if(Settings.getString("index.directory", "ram").equalsIgnoreCase("mmap")) {
+			configuration.setProperty("hibernate.search.default.directory_provider", "filesystem");
+			configuration.setProperty("hibernate.search.default.filesystem_access_type", "mmap");
+			configuration.setProperty("hibernate.search.default.indexBase", Settings.getString("index.base", "indexes"));
+		}
+		
+		// In "async" mode, index work is queued and applied in batches by a background thread, rather than committed to 
+		// the index before each transaction returns (see BatchingBackendQueueProcessor).  Either way, an index rebuild 
+		// replaces the existing documents rather than purging them first (see ReplacingBackendQueueProcessor).
+		if(Settings.getString("indexing.mode", "sync").equalsIgnoreCase("async")) {
+			configuration.setProperty("hibernate.search.default.worker.backend", BatchingBackendQueueProcessor.class.getName());
+		} else {
+			configuration.setProperty("hibernate.search.default.worker.backend", ReplacingBackendQueueProcessor.class.getName());
+		}
+		
+		if(overrides != null) {
+			for(String name : overrides.stringPropertyNames()) {
+				configuration.setProperty(name, overrides.getProperty(name));
+			}
+			if(overrides.containsKey("hibernate.connection.url")) {
+				configuration.getProperties().remove("hibernate.connection.datasource");
+			}
+		}
+		return configuration;
+	}
+
+	/**
+	 * @return the shared SessionFactory, initializing it first if it has never been initialized
+	 * @throws IllegalStateException if the SessionFactory has been closed
+	 */
+	public static SessionFactory getSessionFactory() {
+		SessionFactory factory = sessionFactory;
+		if(factory == null || factory.isClosed()) {
+			synchronized(HibernateContext.class) {
+				if(closed || (sessionFactory != null && sessionFactory.isClosed())) {
+					throw new IllegalStateException("The Hibernate SessionFactory has been closed");
+				}
+				initialize();
+				factory = sessionFactory;
+			}
+		}
+		return factory;
+	}
+
+	/**
+	 * @return the shared Hibernate Search SearchFactory, initializing the SessionFactory first if it has never been initialized
+	 * @throws IllegalStateException if the SessionFactory has been closed
+	 */
+	public static SearchFactory getSearchFactory() {
+		getSessionFactory();
+		SearchFactory factory = searchFactory;
+		if(factory == null) {
+			throw new IllegalStateException("The Hibernate SessionFactory has been closed");
+		}
+		return factory;
+	}
+
+	/**
+	 * Opens a new Hibernate session from the shared SessionFactory.  The caller is responsible for closing it.
+	 */
+	public static Session openSession() {
+		return getSessionFactory().openSession();
+	}
+
+	/**
+	 * Opens a new Hibernate session from the shared SessionFactory, wrapped for Hibernate Search operations.  The
+	 * caller is responsible for closing it.
+	 */
+	public static FullTextSession openFullTextSession() {
+		return Search.getFullTextSession(openSession());
+	}
+
+	/**
+	 * Closes the shared SessionFactory, if it's still open.  It won't be reopened on demand, only by calling 
+	 * "initialize()" again.
+	 */
+	public static synchronized void close() {
+		if(sessionFactory != null && !sessionFactory.isClosed()) {
+			sessionFactory.close();
+		}
+		closed = true;
+		sessionFactory = null;
+		searchFactory = null;
+	}
+
+}
@@ -1,6 +1,7 @@
 package net.steveperkins.hibernatesearchdemo.util;
 
 import net.steveperkins.hibernatesearchdemo.domain.App;
+import net.steveperkins.hibernatesearchdemo.search.SearchResultCache;
 
 import org.hibernate.search.indexes.interceptor.EntityIndexingInterceptor;
 import org.hibernate.search.indexes.interceptor.IndexingOverride;
@@ -14,6 +15,9 @@ import org.hibernate.search.indexes.interceptor.IndexingOverride;
  * to be invoked when something happens to an App instance at the core Hibernate level.  The relevant method 
  * then determines what should happen in the Lucene index at the Hibernate Search level.
  * 
+ * Whenever an App is actually added to, updated in, or removed from the index, the cached search results are 
+ * dropped (see SearchResultCache).
+ * 
  * NOTE: Conditional indexing is not completely reliable, because interceptors are ignored when Lucene is
  *       re-indexed manually.  This is a known issue, and may be corrected in future Hibernate Search versions.
  *       See Chapter 2 of the book for more detail.  
@@ -27,6 +31,7 @@ public class IndexWhenActiveInterceptor implements EntityIndexingInterceptor<App
 	 */
 	public IndexingOverride onAdd(App entity) {
 		if(entity.isActive()) {
+			SearchResultCache.getInstance().invalidateAll();
 			return IndexingOverride.APPLY_DEFAULT;
 		}
 		return IndexingOverride.SKIP;
@@ -38,6 +43,7 @@ public class IndexWhenActiveInterceptor implements EntityIndexingInterceptor<App
 	 * the Lucene index if present).
 	 */
 	public IndexingOverride onDelete(App entity) {
+		SearchResultCache.getInstance().invalidateAll();
 		return IndexingOverride.APPLY_DEFAULT;
 	}
 
@@ -47,6 +53,7 @@ public class IndexWhenActiveInterceptor implements EntityIndexingInterceptor<App
 	 * now inactive, then this method calls for it to be removed from the Lucene index.
 	 */
 	public IndexingOverride onUpdate(App entity) {
+		SearchResultCache.getInstance().invalidateAll();
 		if(entity.isActive()) {
 			return IndexingOverride.UPDATE;
 		} else {
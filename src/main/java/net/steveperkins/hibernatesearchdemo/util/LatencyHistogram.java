@@ -0,0 +1,122 @@
+package net.steveperkins.hibernatesearchdemo.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies, cheap enough to record into on every request from any number of threads.
+ *
+ * Latencies are counted in microseconds, in buckets that grow with the latency:  every power of two is split into 16
+ * equal buckets, so any percentile read back is within about 6% of the true value.  Recording a latency is a bit of
+ * arithmetic and a single atomic increment... there's no lock, and nothing is allocated.  The buckets cover anything
+ * from 1 microsecond up to days, in a fixed 8 KB or so of memory per histogram.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/** Enough buckets for every non-negative long */
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	private final AtomicLong count = new AtomicLong();
+
+	private final AtomicLong totalMicros = new AtomicLong();
+
+	private final AtomicLong maxMicros = new AtomicLong();
+
+	/**
+	 * Records one latency, given in nanoseconds.
+	 */
+	public void record(long nanos) {
+		long micros = Math.max(0, nanos / 1000);
+		counts.incrementAndGet(bucket(micros));
+		count.incrementAndGet();
+		totalMicros.addAndGet(micros);
+		long max = maxMicros.get();
+		while(micros > max && !maxMicros.compareAndSet(max, micros)) {
+			max = maxMicros.get();
+		}
+	}
+
+	/**
+	 * Returns the latency, in microseconds, below which the given fraction of the recorded latencies fall (e.g. 0.99 for
+	 * the 99th percentile), or 0 if nothing has been recorded.  Each bucket is read back as its upper bound, so that a
+	 * percentile is never understated.
+	 */
+	public long getPercentileMicros(double fraction) {
+		long[] snapshot = new long[BUCKETS];
+		long total = 0;
+		for(int index = 0; index < BUCKETS; index++) {
+			snapshot[index] = counts.get(index);
+			total += snapshot[index];
+		}
+		if(total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(fraction * total));
+		long seen = 0;
+		for(int index = 0; index < BUCKETS; index++) {
+			seen += snapshot[index];
+			if(seen >= rank) {
+				return Math.min(upperBound(index), maxMicros.get());
+			}
+		}
+		return maxMicros.get();
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getMeanMicros() {
+		long recorded = count.get();
+		return recorded > 0 ? totalMicros.get() / recorded : 0;
+	}
+
+	public long getMaxMicros() {
+		return maxMicros.get();
+	}
+
+	/**
+	 * Clears every recorded latency.  Latencies recorded while the reset is under way may be partly kept.
+	 */
+	public void reset() {
+		for(int index = 0; index < BUCKETS; index++) {
+			counts.set(index, 0);
+		}
+		count.set(0);
+		totalMicros.set(0);
+		maxMicros.set(0);
+	}
+
+	/**
+	 * Values below 16 get a bucket each.  Above that, the top bit picks a group of 16 buckets and the next four bits pick
+	 * the bucket within it.
+	 */
+	private static int bucket(long micros) {
+		if(micros < SUB_BUCKETS) {
+			return (int) micros;
+		}
+		int topBit = 63 - Long.numberOfLeadingZeros(micros);
+		int subBucket = (int) (micros >>> (topBit - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (topBit - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * The largest value that falls into the given bucket.
+	 */
+	private static long upperBound(int bucket) {
+		if(bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int topBit = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long subBucket = bucket % SUB_BUCKETS;
+		long lowerBound = (1L << topBit) | (subBucket << (topBit - SUB_BUCKET_BITS));
+		return lowerBound + (1L << (topBit - SUB_BUCKET_BITS)) - 1;
+	}
+
+}
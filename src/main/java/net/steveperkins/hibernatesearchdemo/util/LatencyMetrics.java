@@ -0,0 +1,68 @@
+package net.steveperkins.hibernatesearchdemo.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Latency histograms for each phase of handling a request, such as running the Lucene query for a search or rendering 
+ * the search page (see "PhaseTimer", which does the recording).  Phases are named "<request>.<phase>", e.g. 
+ * "search.luceneQuery", and each request type also records a "<request>.total".
+ * 
+ * The percentiles are exposed through JMX (see "LatencyMetricsMXBean"), and as JSON by the RESTful metrics service at 
+ * "/rest/admin/metrics".  Recording is cheap enough to leave on all the time (see "LatencyHistogram").
+ */
+public class LatencyMetrics implements LatencyMetricsMXBean {
+
+	private static final LatencyMetrics instance = new LatencyMetrics();
+
+	/**
+	 * Histograms by phase name, sorted so that the phases of each request type are listed together
+	 */
+	private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<String, LatencyHistogram>();
+
+	private LatencyMetrics() {
+	}
+
+	/**
+	 * @return the single, shared set of latency histograms
+	 */
+	public static LatencyMetrics getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Records the latency of one occurrence of a phase, creating its histogram the first time the phase is seen.
+	 */
+	public void record(String phase, long nanos) {
+		LatencyHistogram histogram = histograms.get(phase);
+		if(histogram == null) {
+			histogram = new LatencyHistogram();
+			LatencyHistogram existing = histograms.putIfAbsent(phase, histogram);
+			if(existing != null) {
+				histogram = existing;
+			}
+		}
+		histogram.record(nanos);
+	}
+
+	public List<PhaseStatistics> getPhases() {
+		List<PhaseStatistics> phases = new ArrayList<PhaseStatistics>(histograms.size());
+		for(Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+			LatencyHistogram histogram = entry.getValue();
+			phases.add(new PhaseStatistics(entry.getKey(), histogram.getCount(), histogram.getMeanMicros(), 
+					histogram.getPercentileMicros(0.5), histogram.getPercentileMicros(0.99), histogram.getPercentileMicros(0.999), 
+					histogram.getMaxMicros()));
+		}
+		return phases;
+	}
+
+	public void reset() {
+		for(LatencyHistogram histogram : histograms.values()) {
+			histogram.reset();
+		}
+	}
+
+}
@@ -0,0 +1,20 @@
+package net.steveperkins.hibernatesearchdemo.util;
+
+import java.util.List;
+
+/**
+ * The JMX management interface for "LatencyMetrics".  As an MXBean, its attribute is shown in tools such as JConsole 
+ * as a table with one row per phase, without the tools needing any of this application's classes.  It's registered 
+ * with the platform MBean server by "StartupDataLoader", under the name 
+ * "net.steveperkins.hibernatesearchdemo:type=LatencyMetrics".
+ */
+public interface LatencyMetricsMXBean {
+
+	List<PhaseStatistics> getPhases();
+
+	/**
+	 * Clears the latencies recorded so far for every phase.
+	 */
+	void reset();
+
+}
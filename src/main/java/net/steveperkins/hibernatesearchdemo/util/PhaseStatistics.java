@@ -0,0 +1,66 @@
+package net.steveperkins.hibernatesearchdemo.util;
+
+/**
+ * A point-in-time summary of the latencies recorded for one phase of request handling (see "LatencyMetrics").  The 
+ * RESTful metrics service returns a list of these, converted to JSON, and JMX shows them as a table.  All latencies 
+ * are in microseconds.
+ */
+public class PhaseStatistics {
+
+	private final String phase;
+
+	private final long count;
+
+	private final long meanMicros;
+
+	private final long p50Micros;
+
+	private final long p99Micros;
+
+	private final long p999Micros;
+
+	private final long maxMicros;
+
+	public PhaseStatistics(String phase, long count, long meanMicros, long p50Micros, long p99Micros, long p999Micros, long maxMicros) {
+		this.phase = phase;
+		this.count = count;
+		this.meanMicros = meanMicros;
+		this.p50Micros = p50Micros;
+		this.p99Micros = p99Micros;
+		this.p999Micros = p999Micros;
+		this.maxMicros = maxMicros;
+	}
+
+	//
+	// GETTERS
+	//
+
+	public String getPhase() {
+		return phase;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getMeanMicros() {
+		return meanMicros;
+	}
+
+	public long getP50Micros() {
+		return p50Micros;
+	}
+
+	public long getP99Micros() {
+		return p99Micros;
+	}
+
+	public long getP999Micros() {
+		return p999Micros;
+	}
+
+	public long getMaxMicros() {
+		return maxMicros;
+	}
+
+}
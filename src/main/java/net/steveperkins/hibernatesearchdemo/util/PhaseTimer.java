@@ -0,0 +1,76 @@
+package net.steveperkins.hibernatesearchdemo.util;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Times the phases of handling one request, one after another, recording each into the shared "LatencyMetrics".  
+ * Each call to "mark()" ends the phase that began at the previous mark (or when the timer was created), and "stop()" 
+ * records the time since the timer was created as the request's total.
+ * 
+ * The timings of this one request are kept as well, for logging (e.g. when a search is slow).  A timer belongs to the 
+ * thread handling the request, and isn't thread-safe.
+ */
+public class PhaseTimer {
+
+	private final String request;
+
+	private final long startedAt;
+
+	private long markedAt;
+
+	private final Map<String, Long> timings = new LinkedHashMap<String, Long>();
+
+	/**
+	 * @param request the type of request being timed, used as the prefix of each phase name (e.g. "search")
+	 */
+	public PhaseTimer(String request) {
+		this.request = request;
+		this.startedAt = System.nanoTime();
+		this.markedAt = startedAt;
+	}
+
+	/**
+	 * Ends the current phase, recording the time since the previous mark under the given phase name.  A phase that 
+	 * occurs more than once in a request (e.g. a query run twice) is added up.
+	 * 
+	 * @return the duration of the phase, in nanoseconds
+	 */
+	public long mark(String phase) {
+		long now = System.nanoTime();
+		long nanos = now - markedAt;
+		markedAt = now;
+		LatencyMetrics.getInstance().record(request + "." + phase, nanos);
+		Long previous = timings.get(phase);
+		timings.put(phase, previous == null ? nanos / 1000 : previous + nanos / 1000);
+		return nanos;
+	}
+
+	/**
+	 * Records the total time since the timer was created.
+	 * 
+	 * @return the total, in nanoseconds
+	 */
+	public long stop() {
+		long nanos = System.nanoTime() - startedAt;
+		LatencyMetrics.getInstance().record(request + ".total", nanos);
+		timings.put("total", nanos / 1000);
+		return nanos;
+	}
+
+	/**
+	 * @return the time since the timer was created, in nanoseconds
+	 */
+	public long getElapsedNanos() {
+		return System.nanoTime() - startedAt;
+	}
+
+	/**
+	 * @return the time spent in each phase so far, in microseconds, in the order the phases first occurred
+	 */
+	public Map<String, Long> getTimingsMicros() {
+		return Collections.unmodifiableMap(timings);
+	}
+
+}
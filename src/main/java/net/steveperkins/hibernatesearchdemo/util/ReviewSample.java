@@ -0,0 +1,128 @@
+package net.steveperkins.hibernatesearchdemo.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import net.steveperkins.hibernatesearchdemo.domain.CustomerReview;
+
+/**
+ * Picks the customer reviews that are indexed along with an App (see "App.getIndexedReviews()").
+ *
+ * Every review indexed with an App adds its comments to the App's document, so an app with a hundred thousand reviews
+ * would make for an enormous document... slow to analyze every time the app is reindexed, and swelling the postings of
+ * every word its reviewers ever used.  So only a bounded sample of at most "reviews.index.maxReviews" reviews is
+ * indexed, chosen by "reviews.index.sample":
+ *
+ *     longest   - The reviews with the longest comments, which tend to say the most about the app.
+ *     balanced  - Taken from each star rating in turn (five stars down to one), longest first within each... so that
+ *                 the sample of a well-loved app still has its complaints in it, and vice versa.
+ *     all       - Every review, with no bound at all.
+ *
+ * Reviews don't record when they were written, or how helpful other customers found them, so the length of the
+ * comments stands in for both.  Ties are broken on the rest of the review, so that the same reviews always make the
+ * same sample.  The rating and review count of an App are worked out from all of its reviews regardless (see
+ * "ReviewStatisticsBridge"), and every review can still be searched through the separate review index (see
+ * "ReviewIndex").
+ */
+public final class ReviewSample {
+
+	public enum Policy { ALL, LONGEST, BALANCED }
+
+	private static final Policy POLICY = parsePolicy(Settings.getString("reviews.index.sample", "longest"));
+
+	private static final int MAX_REVIEWS = Settings.getInt("reviews.index.maxReviews", 20);
+
+	/**
+	 * Longest comments first, then the most stars, then by username and comments
+	 */
+	private static final Comparator<CustomerReview> LONGEST_FIRST = new Comparator<CustomerReview>() {
+		public int compare(CustomerReview first, CustomerReview second) {
+			if(length(first.getComments()) != length(second.getComments())) {
+				return length(second.getComments()) - length(first.getComments());
+			}
+			if(first.getStars() != second.getStars()) {
+				return second.getStars() - first.getStars();
+			}
+			int byUsername = compareStrings(first.getUsername(), second.getUsername());
+			return byUsername != 0 ? byUsername : compareStrings(first.getComments(), second.getComments());
+		}
+	};
+
+	private ReviewSample() {
+	}
+
+	private static Policy parsePolicy(String value) {
+		for(Policy policy : Policy.values()) {
+			if(policy.name().equalsIgnoreCase(value.trim())) {
+				return policy;
+			}
+		}
+		throw new IllegalArgumentException("Setting \"reviews.index.sample\" must be \"longest\", \"balanced\" or \"all\", not \"" + value + "\"");
+	}
+
+	/**
+	 * @return the reviews to index, according to the configured policy
+	 */
+	public static Collection<CustomerReview> select(Collection<CustomerReview> reviews) {
+		return select(reviews, POLICY, MAX_REVIEWS);
+	}
+
+	/**
+	 * @return the reviews to index, which are all of them when there are no more than "maxReviews" (or the policy is "all")
+	 */
+	public static Collection<CustomerReview> select(Collection<CustomerReview> reviews, Policy policy, int maxReviews) {
+		if(reviews == null || policy == Policy.ALL || reviews.size() <= maxReviews) {
+			return reviews;
+		}
+		List<CustomerReview> sorted = new ArrayList<CustomerReview>(reviews);
+		Collections.sort(sorted, LONGEST_FIRST);
+		if(policy == Policy.LONGEST) {
+			return new ArrayList<CustomerReview>(sorted.subList(0, maxReviews));
+		}
+
+		// Deal the reviews out by star rating, and then take one from each rating in turn until the sample is full
+		List<List<CustomerReview>> byStars = new ArrayList<List<CustomerReview>>();
+		for(int stars = 5; stars >= 0; stars--) {
+			byStars.add(new ArrayList<CustomerReview>());
+		}
+		for(CustomerReview review : sorted) {
+			byStars.get(5 - Math.max(0, Math.min(5, review.getStars()))).add(review);
+		}
+		List<CustomerReview> sample = new ArrayList<CustomerReview>(maxReviews);
+		for(int round = 0; sample.size() < maxReviews; round++) {
+			for(List<CustomerReview> rating : byStars) {
+				if(round < rating.size() && sample.size() < maxReviews) {
+					sample.add(rating.get(round));
+				}
+			}
+		}
+		return sample;
+	}
+
+	private static int length(String text) {
+		return text == null ? 0 : text.length();
+	}
+
+	private static int compareStrings(String first, String second) {
+		if(first == null || second == null) {
+			return first == null ? (second == null ? 0 : -1) : 1;
+		}
+		return first.compareTo(second);
+	}
+
+	//
+	// GETTERS
+	//
+
+	public static Policy getPolicy() {
+		return POLICY;
+	}
+
+	public static int getMaxReviews() {
+		return MAX_REVIEWS;
+	}
+
+}
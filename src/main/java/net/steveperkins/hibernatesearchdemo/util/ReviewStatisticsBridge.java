@@ -0,0 +1,75 @@
+package net.steveperkins.hibernatesearchdemo.util;
+
+import java.util.Collection;
+import java.util.Set;
+
+import net.steveperkins.hibernatesearchdemo.domain.App;
+import net.steveperkins.hibernatesearchdemo.domain.CustomerReview;
+
+import org.apache.lucene.document.Document;
+import org.hibernate.search.bridge.FieldBridge;
+import org.hibernate.search.bridge.LuceneOptions;
+
+/**
+ * This class bridge works out an App's average rating, number of customer reviews and number of five-star reviews when
+ * the App is indexed, and adds them to its document as the numeric fields "rating", "reviewCount" and "fiveStarCount".
+ *
+ * A field bridge only ever sees one property, but these figures are aggregates over the whole "customerReviews"
+ * collection... hence a class bridge, which is handed the entire App.  Precomputing them at index time means the "top
+ * rated" and "most reviewed" sorts read one number per document from the Lucene FieldCache, rather than looking at
+ * every review of every hit (or worse, asking the database) on each search.  An App without reviews has a rating and
+ * review count of zero, so it sorts after every reviewed App.  The rating and five-star count also serve as the starting
+ * values of the query-time popularity boost (see "PopularitySignals").
+ *
+ * Hibernate Search can't tell which properties a class bridge depends on, so it reindexes an App whenever anything
+ * about it changes... which keeps these figures current as reviews come and go.
+ */
+public class ReviewStatisticsBridge implements FieldBridge {
+
+	public static final String RATING_FIELD = "rating";
+
+	public static final String REVIEW_COUNT_FIELD = "reviewCount";
+
+	public static final String FIVE_STAR_COUNT_FIELD = "fiveStarCount";
+
+	public void set(String name, Object value, Document document, LuceneOptions luceneOptions) {
+		if(!(value instanceof App)) {
+			return;
+		}
+		Set<CustomerReview> reviews = ((App) value).getCustomerReviews();
+		int reviewCount = reviews == null ? 0 : reviews.size();
+		luceneOptions.addNumericFieldToDocument(RATING_FIELD, getRating(reviews), document);
+		luceneOptions.addNumericFieldToDocument(REVIEW_COUNT_FIELD, reviewCount, document);
+		luceneOptions.addNumericFieldToDocument(FIVE_STAR_COUNT_FIELD, getFiveStarCount(reviews), document);
+	}
+
+	/**
+	 * @return the average stars of the given reviews, or zero if there are none
+	 */
+	public static float getRating(Collection<CustomerReview> reviews) {
+		if(reviews == null || reviews.isEmpty()) {
+			return 0f;
+		}
+		int totalStars = 0;
+		for(CustomerReview review : reviews) {
+			totalStars += review.getStars();
+		}
+		return (float) totalStars / reviews.size();
+	}
+
+	/**
+	 * @return how many of the given reviews give five stars
+	 */
+	public static int getFiveStarCount(Collection<CustomerReview> reviews) {
+		int fiveStars = 0;
+		if(reviews != null) {
+			for(CustomerReview review : reviews) {
+				if(review.getStars() == 5) {
+					fiveStars++;
+				}
+			}
+		}
+		return fiveStars;
+	}
+
+}
@@ -0,0 +1,76 @@
+package net.steveperkins.hibernatesearchdemo.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Application-level settings (as opposed to Hibernate settings, which belong in "hibernate.cfg.xml").  Default values 
+ * are read from the "vaporware.properties" file at the root of the classpath.  Any of them can be overridden at launch 
+ * time with a JVM system property of the same name prefixed by "vaporware." (e.g. "-Dvaporware.index.directory=mmap").
+ */
+public final class Settings {
+
+	private static final String RESOURCE = "/vaporware.properties";
+
+	private static final String SYSTEM_PROPERTY_PREFIX = "vaporware.";
+
+	private static Logger logger = LoggerFactory.getLogger(Settings.class);
+
+	private static final Properties properties = load();
+
+	private Settings() {
+	}
+
+	private static Properties load() {
+		Properties properties = new Properties();
+		InputStream stream = Settings.class.getResourceAsStream(RESOURCE);
+		if(stream == null) {
+			return properties;
+		}
+		try {
+			properties.load(stream);
+		} catch(IOException e) {
+			logger.warn("Unable to read " + RESOURCE + ", using default settings", e);
+		} finally {
+			try {
+				stream.close();
+			} catch(IOException e) {
+				// ignore
+			}
+		}
+		return properties;
+	}
+
+	public static String getString(String key, String defaultValue) {
+		String value = System.getProperty(SYSTEM_PROPERTY_PREFIX + key);
+		if(value == null) {
+			value = properties.getProperty(key);
+		}
+		return value != null && value.trim().length() > 0 ? value.trim() : defaultValue;
+	}
+
+	public static int getInt(String key, int defaultValue) {
+		String value = getString(key, null);
+		return value != null ? Integer.parseInt(value) : defaultValue;
+	}
+
+	public static long getLong(String key, long defaultValue) {
+		String value = getString(key, null);
+		return value != null ? Long.parseLong(value) : defaultValue;
+	}
+
+	public static float getFloat(String key, float defaultValue) {
+		String value = getString(key, null);
+		return value != null ? Float.parseFloat(value) : defaultValue;
+	}
+
+	public static boolean getBoolean(String key, boolean defaultValue) {
+		String value = getString(key, null);
+		return value != null ? Boolean.parseBoolean(value) : defaultValue;
+	}
+
+}
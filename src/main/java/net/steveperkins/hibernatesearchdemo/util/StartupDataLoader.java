@@ -1,7 +1,14 @@
 package net.steveperkins.hibernatesearchdemo.util;
 
+import java.lang.management.ManagementFactory;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.concurrent.ExecutionException;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
 
 import javax.servlet.ServletContextEvent;
 import javax.servlet.annotation.WebListener;
@@ -9,12 +16,19 @@ import javax.servlet.annotation.WebListener;
 import net.steveperkins.hibernatesearchdemo.domain.App;
 import net.steveperkins.hibernatesearchdemo.domain.CustomerReview;
 import net.steveperkins.hibernatesearchdemo.domain.Device;
+import net.steveperkins.hibernatesearchdemo.search.AppNameSuggester;
+import net.steveperkins.hibernatesearchdemo.search.IndexRebuilder;
+import net.steveperkins.hibernatesearchdemo.search.ReviewIndex;
+import net.steveperkins.hibernatesearchdemo.search.ReviewIngester;
+import net.steveperkins.hibernatesearchdemo.search.SearchExecutor;
+import net.steveperkins.hibernatesearchdemo.search.SearchWarmer;
 
+import org.apache.lucene.index.IndexReader;
 import org.hibernate.Session;
-import org.hibernate.SessionFactory;
-import org.hibernate.cfg.Configuration;
-import org.hibernate.service.ServiceRegistry;
-import org.hibernate.service.ServiceRegistryBuilder;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.search.FullTextSession;
+import org.hibernate.search.indexes.IndexReaderAccessor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -22,45 +36,190 @@ import org.slf4j.LoggerFactory;
  * A helper class, used to populate the embedded H2 database with test data at startup.  Because of the 
  * Servlet 3.0 @WebListener annotation, the "contextInitialized" method will be invoked automatically when 
  * the servlet container launches.
+ * 
+ * By default, the test data is a small hard-coded catalog of 12 apps.  Setting "catalog.size" in vaporware.properties 
+ * replaces it with a generated catalog of any size (see CatalogGenerator).
+ * 
+ * When the database and the Lucene index both persist across restarts (see "index.directory" in vaporware.properties), 
+ * this class detects that the existing index is still valid and skips loading and reindexing altogether.  Otherwise the 
+ * index is rebuilt with "IndexRebuilder", which this class also registers with JMX (along with the request latency 
+ * metrics, see "LatencyMetrics").  The separate index of customer reviews gets the same treatment (see "ReviewIndex").  
+ * Once the data is in place, the search caches are warmed up in the background (see "SearchWarmer"), and the writer of 
+ * incoming customer reviews is started (see "ReviewIngester").
  */
 @WebListener
 public class StartupDataLoader implements javax.servlet.ServletContextListener {
 	
 	Logger logger = LoggerFactory.getLogger(StartupDataLoader.class);
+	
+	private static final ObjectName INDEX_REBUILDER_NAME = objectName("net.steveperkins.hibernatesearchdemo:type=IndexRebuilder");
+	
+	private static final ObjectName LATENCY_METRICS_NAME = objectName("net.steveperkins.hibernatesearchdemo:type=LatencyMetrics");
+	
+	private static final ObjectName SEARCH_EXECUTOR_NAME = objectName("net.steveperkins.hibernatesearchdemo:type=SearchExecutor");
+
+	/**
+	 * This method is invoked automatically when the servlet engine first starts.
+	 */
+	public void contextInitialized(ServletContextEvent event) {
+
+		//
+		// Build the shared Hibernate SessionFactory once, for use by every request for the life of the application 
+		//
+		HibernateContext.initialize();
+		registerMBean(IndexRebuilder.getInstance(), INDEX_REBUILDER_NAME);
+		registerMBean(LatencyMetrics.getInstance(), LATENCY_METRICS_NAME);
+		registerMBean(SearchExecutor.getInstance(), SEARCH_EXECUTOR_NAME);
+		
+		//
+		// Create a Hibernate session and begin a new database transaction
+		//
+		FullTextSession session = HibernateContext.openFullTextSession();
+		session.beginTransaction();
+		
+		long appCount = (Long) session.createCriteria(App.class).setProjection(Projections.rowCount()).uniqueResult();
+		int indexedCount = countIndexedApps();
+		if(appCount == 0) {
+			// Fresh database.  Clear out anything left over in a persistent index from an earlier database, then load the test data 
+			// (or a synthetic catalog, if "catalog.size" is configured).
+			if(indexedCount != 0) {
+				logger.info("Purging " + (indexedCount < 0 ? "unreadable" : indexedCount) + " stale documents from the App index");
+				session.purgeAll(App.class);
+				session.flushToIndexes();
+			}
+			int catalogSize = Settings.getInt("catalog.size", 0);
+			if(catalogSize > 0) {
+				// Generate a synthetic catalog of the configured size, which commits its own transactions batch by batch
+				session.getTransaction().commit();
+				new CatalogGenerator(Settings.getLong("catalog.seed", 42), Settings.getInt("catalog.batchSize", 500)).generate(session, catalogSize);
+				session.beginTransaction();
+			} else {
+				loadSampleData(session);
+			}
+		} else {
+			// Existing database.  The index is reused as-is, as long as it holds exactly one document per active app.
+			long activeCount = (Long) session.createCriteria(App.class).add(Restrictions.eq("active", true))
+					.setProjection(Projections.rowCount()).uniqueResult();
+			if(indexedCount == activeCount) {
+				logger.info("Warm restart: reusing the existing App index with " + indexedCount + " documents");
+			} else {
+				logger.info("App index holds " + indexedCount + " documents for " + activeCount + " active apps, rebuilding");
+				try {
+					IndexRebuilder.getInstance().start().get();
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch(ExecutionException e) {
+					logger.error("Unable to rebuild the App index", e);
+				}
+			}
+		}
+		
+		//
+		// Close and cleanup the Hibernate session
+		//
+		session.getTransaction().commit();
+		session.close();
+		
+		//
+		// Bring the separate index of every customer review up to date with the database (see ReviewIndex).  A persistent 
+		// review index is reused as long as it holds every review of the active apps, and it's already up to date after a 
+		// rebuild of the App index.
+		//
+		synchronizeReviewIndex();
+		
+		//
+		// Build the app name suggestions for the search box, and keep them in step with the index from here on
+		//
+		AppNameSuggester.getInstance().start();
+		
+		//
+		// Start writing customer reviews, which arrive through the review service and are written in batches
+		//
+		ReviewIngester.getInstance().start();
+		
+		//
+		// Run the warm-up searches in the background.  Until they're done, the readiness check reports this node as 
+		// unavailable, so that a load balancer doesn't send it traffic while it's cold.
+		//
+		SearchWarmer.getInstance().start();
+	}
+	
+	private static ObjectName objectName(String name) {
+		try {
+			return new ObjectName(name);
+		} catch(MalformedObjectNameException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
 
 	/**
-	 * Should not be accessed directly.  Use openSession().
+	 * Registers a bean with the platform MBean server, so that it can be monitored and managed through JMX (e.g. with 
+	 * JConsole).  This covers starting and monitoring index rebuilds, the request latency metrics, and the search pool.
 	 */
-	private static SessionFactory sessionFactory;
+	private void registerMBean(Object bean, ObjectName name) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if(!server.isRegistered(name)) {
+				server.registerMBean(bean, name);
+			}
+		} catch(JMException e) {
+			logger.warn("Unable to register " + name + " with JMX", e);
+		}
+	}
 	
+	private void unregisterMBean(ObjectName name) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if(server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch(JMException e) {
+			logger.warn("Unable to unregister " + name + " from JMX", e);
+		}
+	}
+
 	/**
-	 * Constructing a new Hibernate SessionFactory for every request would cause very poor performance.  However, 
-	 * Java servlets must be thread-safe, so we can't use a SessionFactory as an instance variable.  This method provides 
-	 * thread-safe access to a SessionFactory, so the startup data loader and the search servlet can open Hibernate sessions 
-	 * more efficiently.
-	 * 
-	 * @return Session
+	 * Counts the documents currently in the App index, or returns -1 if the index can't be opened (e.g. it's corrupt).
 	 */
-	public static synchronized Session openSession() {
-		if(sessionFactory == null) {
-			Configuration configuration = new Configuration();
-			configuration.configure();
-			ServiceRegistry serviceRegistry = new ServiceRegistryBuilder().applySettings(configuration.getProperties()).buildServiceRegistry();
-			sessionFactory = configuration.buildSessionFactory(serviceRegistry);			
+	private int countIndexedApps() {
+		IndexReaderAccessor accessor = HibernateContext.getSearchFactory().getIndexReaderAccessor();
+		try {
+			IndexReader reader = accessor.open(App.class);
+			try {
+				return reader.numDocs();
+			} finally {
+				accessor.close(reader);
+			}
+		} catch(RuntimeException e) {
+			logger.warn("Unable to open the App index", e);
+			return -1;
 		}
-		return sessionFactory.openSession();
 	}
 
 	/**
-	 * This method is invoked automatically when the servlet engine first starts.
+	 * Rebuilds the review index, unless it already holds one document for each review of an active app.
 	 */
-	public void contextInitialized(ServletContextEvent event) {
+	private void synchronizeReviewIndex() {
+		ReviewIndex reviewIndex = ReviewIndex.getInstance();
+		Session session = HibernateContext.openSession();
+		try {
+			long reviewCount = (Long) session.createQuery(
+					"select count(*) from App app join app.customerReviews review where app.active = true").uniqueResult();
+			int indexedCount = reviewIndex.getDocumentCount();
+			if(indexedCount == reviewCount) {
+				logger.info("Reusing the existing review index with " + indexedCount + " reviews");
+				return;
+			}
+		} finally {
+			session.close();
+		}
+		reviewIndex.rebuild();
+	}
 
-		//
-		// Create a Hibernate session and begin a new database transaction
-		//
-		Session session = openSession();
-		session.beginTransaction();
+	/**
+	 * Persists a small catalog of 5 devices and 12 apps, indexing each app as it's saved.
+	 */
+	private void loadSampleData(Session session) {
 		
 		//
 		// Create 5 devices
@@ -220,22 +379,24 @@ public class StartupDataLoader implements javax.servlet.ServletContextListener {
 		mapJourney.setCustomerReviews( new HashSet<CustomerReview>(Arrays.asList(new CustomerReview[] { mapJourneyReview })) );
 		session.save(mapJourney);
 		logger.info("Persisting " + mapJourney.getName());
-		
-		//
-		// Close and cleanup the Hibernate session
-		//
-		session.getTransaction().commit();
-		session.close();
-	} 
+	}
 
 	/**
-	 * This method is invoked automatically when the servlet engine shuts down.  It closes the Hibernate SessionFactory, if 
-	 * it's still open.
+	 * This method is invoked automatically when the servlet engine shuts down.  It unregisters the JMX beans, stops the 
+	 * background threads (waiting for a running index rebuild), and closes the shared Hibernate SessionFactory if it's 
+	 * still open.
 	 */
 	public void contextDestroyed(ServletContextEvent event) {
-		if(!sessionFactory.isClosed()) {
-			sessionFactory.close();
-		}
+		unregisterMBean(INDEX_REBUILDER_NAME);
+		unregisterMBean(LATENCY_METRICS_NAME);
+		unregisterMBean(SEARCH_EXECUTOR_NAME);
+		SearchWarmer.getInstance().stop();
+		ReviewIngester.getInstance().stop();
+		SearchExecutor.getInstance().shutdown();
+		AppNameSuggester.getInstance().stop();
+		IndexRebuilder.getInstance().shutdown();
+		ReviewIndex.getInstance().close();
+		HibernateContext.close();
 	}
 
 }
@@ -0,0 +1,81 @@
+package net.steveperkins.hibernatesearchdemo.util;
+
+import java.util.Map;
+import java.util.zip.DataFormatException;
+
+import org.apache.lucene.document.CompressionTools;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.Fieldable;
+import org.hibernate.search.SearchException;
+import org.hibernate.search.bridge.LuceneOptions;
+import org.hibernate.search.bridge.ParameterizedBridge;
+import org.hibernate.search.bridge.TwoWayFieldBridge;
+
+/**
+ * This class indexes a String property as usual, and stores it in the index either plainly or compressed, as chosen 
+ * per field in "vaporware.properties".  It's for the App fields that search results are projected from (see 
+ * "SearchHitProjection").
+ * 
+ * The storage mode of a Hibernate Search @Field is otherwise fixed by its annotation.  So the @Field is declared as not 
+ * stored, which lets Hibernate Search index it (analyzer, boost and all) without storing it, and this bridge adds the 
+ * stored copy itself.  This is just what Hibernate Search does for a Store.COMPRESS field, namely an indexed Lucene 
+ * field plus a separate stored one of the same name.
+ * 
+ * The "setting" parameter names the setting to read (e.g. "index.store.description"), which may be "compress" or 
+ * "plain".  The "default" parameter applies when that setting isn't there.
+ */
+public class StoredStringBridge implements TwoWayFieldBridge, ParameterizedBridge {
+
+	private boolean compress;
+
+	public void setParameterValues(Map<String, String> parameters) {
+		String mode = Settings.getString(parameters.get("setting"), parameters.get("default"));
+		if("compress".equalsIgnoreCase(mode)) {
+			compress = true;
+		} else if("plain".equalsIgnoreCase(mode)) {
+			compress = false;
+		} else {
+			throw new IllegalArgumentException("Setting \"" + parameters.get("setting") + "\" must be \"compress\" or \"plain\", not \"" + mode + "\"");
+		}
+	}
+
+	public void set(String name, Object value, Document document, LuceneOptions luceneOptions) {
+		if(value == null) {
+			return;
+		}
+		String text = value.toString();
+		luceneOptions.addFieldToDocument(name, text, document);
+		if(compress) {
+			document.add(new Field(name, CompressionTools.compressString(text)));
+		} else {
+			document.add(new Field(name, text, Field.Store.YES, Field.Index.NO));
+		}
+	}
+
+	/**
+	 * Reads a stored value back, whichever way it was stored.
+	 */
+	public Object get(String name, Document document) {
+		Fieldable field = document.getFieldable(name);
+		if(field == null) {
+			return null;
+		}
+		if(!field.isBinary()) {
+			return field.stringValue();
+		}
+		try {
+			return CompressionTools.decompressString(field.getBinaryValue());
+		} catch(DataFormatException e) {
+			throw new SearchException("Unable to decompress stored field " + name, e);
+		}
+	}
+
+	/**
+	 * Used by the query DSL for the text to match against the field, which is just the text itself.
+	 */
+	public String objectToString(Object object) {
+		return object == null ? null : object.toString();
+	}
+
+}
@@ -36,6 +36,17 @@ Released   : 20120723
 				// Put the active cursor on the search box
 				$("#searchString").focus();
 
+				// Suggest app names as the user types, from the autocomplete RESTful service
+				$("#searchString").autocomplete({
+					source: "rest/autocomplete",
+					minLength: 2,
+					delay: 50,
+					select: function(event, ui) {
+						$("#searchString").val(ui.item.value);
+						submitSearchForm();
+					}
+				});
+
 			});		
 			
 			// When the search button is clicked, ensure that the search box is not empty and then submit the search form
@@ -54,12 +65,13 @@ Released   : 20120723
 			}
 
 			// When the user clicks the "Full Details" button for an app... call a RESTful service to fetch the full detail for
-			// that app (including its supported devices and customer reviews), and display it in a jQuery UI modal.
+			// that app (including its supported devices and the first page of its customer reviews), and display it in a 
+			// jQuery UI modal.
 			function showAppDetails(appId) {
 				
 				// Call the RESTful service, passing this app id
 				var request = $.ajax({
-					url: "rest/appById/" + appId,
+					url: "rest/appDetail/" + appId,
 					dataType: "json",
 					
 					// Display the jQuery UI  modal
@@ -74,8 +86,7 @@ Released   : 20120723
 						
 						var supportedDevicesHTML = "";
 						for(var deviceIndex = 0; deviceIndex < app.supportedDevices.length; deviceIndex++) {
-							var device = app.supportedDevices[deviceIndex];
-							supportedDevicesHTML += device.manufacturer + " " + device.name;
+							supportedDevicesHTML += app.supportedDevices[deviceIndex];
 							if(deviceIndex + 1 < app.supportedDevices.length) {
 								supportedDevicesHTML += ", ";
 							}
@@ -83,6 +94,9 @@ Released   : 20120723
 						$("#appDetailSupportedDevices").html(supportedDevicesHTML);
 						
 						var customerReviewsHTML = "";
+						if(app.reviewCount > app.customerReviews.length) {
+							customerReviewsHTML += "<i>The " + app.customerReviews.length + " most detailed of " + app.reviewCount + " reviews</i><br/><br/>";
+						}
 						for(var reviewIndex = 0; reviewIndex < app.customerReviews.length; reviewIndex++) {
 							var customerReview = app.customerReviews[reviewIndex];
 							customerReviewsHTML += "<b>" + customerReview.stars + " out of 5 stars</b> (user: <i>" + customerReview.username + "</i>)<br/>" + customerReview.comments + "<br/><br/>";
@@ -182,7 +196,6 @@ Released   : 20120723
 						<h3>Price Range</h3>
 							<ul>
 								<c:forEach items="${priceRanges}" var="priceRange" varStatus="loop">
-								<c:set var="readablePriceRange" scope="request"><c:if test="${priceRange.key == '[, 1.0)'}">below $1</c:if><c:if test="${priceRange.key == '[1.0, 5.0]'}">$1 - $5</c:if><c:if test="${priceRange.key == '(5.0, ]'}">above $5</c:if></c:set>
 								<li ${loop.index == 0 ? 'class="first"' : ''}>
 									<c:if test="${selectedPriceRange == priceRange.key}"><b></c:if>
 									<a href='<c:url value="search">
@@ -191,7 +204,7 @@ Released   : 20120723
 										<c:param name="selectedCategory" value="${selectedCategory}"/>
 										<c:param name="selectedPriceRange" value="${priceRange.key}"/>
 										<c:param name="sortField" value="${sortField}"/>
-										</c:url>'>${readablePriceRange}</a>
+										</c:url>'>${priceRangeDescriptions[priceRange.key]}</a>
 									<c:if test="${selectedPriceRange == priceRange.key}"></b></c:if>
 								</li>								
 								</c:forEach>
@@ -228,6 +241,11 @@ Released   : 20120723
 											<option value="relevance" ${sortField == 'relevance' ? 'selected="selected"' : ''}>Relevance</option>
 											<option value="name" ${sortField == 'name' ? 'selected="selected"' : ''}>Name (A-Z)</option>
 											<option value="name-reverse" ${sortField == 'name-reverse' ? 'selected="selected"' : ''}>Name (Z-A)</option>
+											<option value="rating" ${sortField == 'rating' ? 'selected="selected"' : ''}>Top Rated</option>
+											<option value="reviews" ${sortField == 'reviews' ? 'selected="selected"' : ''}>Most Reviewed</option>
+											<option value="price" ${sortField == 'price' ? 'selected="selected"' : ''}>Price (Low-High)</option>
+											<option value="price-reverse" ${sortField == 'price-reverse' ? 'selected="selected"' : ''}>Price (High-Low)</option>
+											<option value="newest" ${sortField == 'newest' ? 'selected="selected"' : ''}>Newest</option>
 										</select>
 										<input type="hidden" name="searchString" value='${fn:replace(searchString, "\"", "&quot;")}' />							
 										<input type="hidden" name="selectedDevice" value="${selectedDevice}" />							
@@ -267,6 +285,22 @@ Released   : 20120723
 							</tr>
 						</table>
 						
+						<!-- When the search ran out of time, say that the results shown may not be all there is. -->
+						<c:if test="${partial}">
+							<p><i>This search took too long, so these results may be incomplete.  Try more specific search words.</i></p>
+						</c:if>
+						
+						<!-- When the search words had to be matched fuzzily, offer a corrected search string (if there is one) as a new search. -->
+						<c:if test="${suggestion != null}">
+							<p>Did you mean 
+								<a href='<c:url value="search">
+								<c:param name="searchString" value="${suggestion}"/>
+								<c:param name="selectedDevice" value="${selectedDevice}"/>
+								<c:param name="sortField" value="${sortField}"/>
+								</c:url>'><i><c:out value="${suggestion}"/></i></a>?
+							</p>
+						</c:if>
+						
 						<!-- Iterate through the search results inserted into this request by the controller servlet, displaying a row for each. -->
 						<table style="width: 100%; margin-left: auto; margin-right: auto;">
 						<c:forEach items="${apps}" var="app" varStatus="loop">
@@ -0,0 +1,100 @@
+package net.steveperkins.hibernatesearchdemo.search;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the fixed and quantile price bands, on a typical spread of app prices and on random ones.
+ */
+public class PriceBandsTest extends TestCase {
+
+	private static final float[] PRICES = { 0f, 0.99f, 1.99f, 4.99f, 5.99f, 49.99f };
+
+	private static final int[] COUNTS = { 40, 30, 10, 10, 5, 5 };
+
+	public void testFixedBands() {
+		Map<String, Integer> expected = new LinkedHashMap<String, Integer>();
+		expected.put("[, 1.0)", 70);
+		expected.put("[1.0, 5.0]", 20);
+		expected.put("(5.0, ]", 10);
+		assertEquals(expected, PriceBands.fixed(PriceRange.DEFAULT_RANGES).count(PRICES, COUNTS));
+	}
+
+	public void testQuantileBands() {
+		Map<String, Integer> expected = new LinkedHashMap<String, Integer>();
+		expected.put("[0.0, 0.0]", 40);
+		expected.put("[0.99, 0.99]", 30);
+		expected.put("[1.99, 4.99]", 20);
+		expected.put("[5.99, 49.99]", 10);
+		assertEquals(expected, PriceBands.quantiles(4).count(PRICES, COUNTS));
+	}
+
+	public void testFewerPricesThanBands() {
+		Map<String, Integer> expected = new LinkedHashMap<String, Integer>();
+		expected.put("[0.0, 0.0]", 3);
+		expected.put("[0.99, 0.99]", 1);
+		assertEquals(expected, PriceBands.quantiles(4).count(new float[] { 0f, 0.99f }, new int[] { 3, 1 }));
+		assertTrue(PriceBands.quantiles(4).count(new float[0], new int[0]).isEmpty());
+	}
+
+	public void testAtLeastOneBand() {
+		try {
+			PriceBands.quantiles(0);
+			fail("Accepted zero bands");
+		} catch(IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Whatever the prices, the bands cover every hit exactly once, never split the hits at one price, and can be
+	 * selected again by their labels.
+	 */
+	public void testRandomQuantileBands() {
+		Random random = new Random(7);
+		for(int round = 0; round < 500; round++) {
+			TreeMap<Float, Integer> hits = new TreeMap<Float, Integer>();
+			int distinct = 1 + random.nextInt(12);
+			for(int index = 0; index < distinct; index++) {
+				hits.put(random.nextInt(5000) / 100f, 1 + random.nextInt(random.nextBoolean() ? 3 : 300));
+			}
+			float[] prices = new float[hits.size()];
+			int[] counts = new int[hits.size()];
+			int total = 0;
+			int index = 0;
+			for(Map.Entry<Float, Integer> entry : hits.entrySet()) {
+				prices[index] = entry.getKey();
+				counts[index++] = entry.getValue();
+				total += entry.getValue();
+			}
+			int bandCount = 1 + random.nextInt(6);
+
+			Map<String, Integer> bands = PriceBands.quantiles(bandCount).count(prices, counts);
+			assertEquals(Math.min(bandCount, prices.length), bands.size());
+			List<PriceRange> ranges = new ArrayList<PriceRange>();
+			int counted = 0;
+			for(Map.Entry<String, Integer> band : bands.entrySet()) {
+				assertTrue("Empty band " + band, band.getValue() > 0);
+				ranges.add(PriceRange.parse(band.getKey()));
+				counted += band.getValue();
+			}
+			assertEquals(total, counted);
+			for(int price = 0; price < prices.length; price++) {
+				int matches = 0;
+				for(int range = 0; range < ranges.size(); range++) {
+					if(ranges.get(range).contains(prices[price])) {
+						matches++;
+					}
+				}
+				assertEquals("Price " + prices[price] + " in bands " + bands.keySet(), 1, matches);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,206 @@
+package net.steveperkins.hibernatesearchdemo.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import net.steveperkins.hibernatesearchdemo.util.ReviewStatisticsBridge;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocsCollector;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+
+/**
+ * Pages through a small index by cursor, the way "AppSearchService" does, for relevance and for each of its field
+ * sorts... and checks that the pages, laid end to end, are exactly the hits of one search for all of them (so no page
+ * overlaps the last one, and none skips a hit).
+ *
+ * The index is split into several segments, and its sort values are drawn from small pools, so that plenty of hits tie
+ * with each other (within a segment and across segments), some have no name at all, and a cursor's value is often
+ * missing from the next segment.
+ */
+public class SearchAfterCollectorTest extends TestCase {
+
+	private static final String[] SORTS = { "relevance", "name", "name-reverse", "rating", "reviews", "price", "price-reverse", "newest" };
+
+	private static final String[] NAMES = { "Achoo!", "Business Buddy", "Frustrated Flamingos", "Sales Closer", "Zeppelin" };
+
+	private static final float[] RATINGS = { 0f, 1.5f, 3f, 4.3f, 5f };
+
+	private static final float[] PRICES = { 0f, 0.99f, 1.99f, 4.99f };
+
+	private static final int DOCUMENTS = 120;
+
+	private static final int DOCUMENTS_PER_SEGMENT = 17;
+
+	private Directory directory;
+
+	private IndexReader reader;
+
+	private IndexSearcher searcher;
+
+	@Override
+	protected void setUp() throws IOException {
+		directory = new RAMDirectory();
+		IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_36, new WhitespaceAnalyzer(Version.LUCENE_36));
+		config.setMergePolicy(NoMergePolicy.NO_COMPOUND_FILES);
+		IndexWriter writer = new IndexWriter(directory, config);
+		Random random = new Random(42);
+		for(int doc = 0; doc < DOCUMENTS; doc++) {
+			Document document = new Document();
+			if(doc % 11 != 0) {
+				document.add(new Field("sorting_name", NAMES[random.nextInt(NAMES.length)], Field.Store.NO, Field.Index.NOT_ANALYZED));
+			}
+			document.add(new NumericField(ReviewStatisticsBridge.RATING_FIELD).setFloatValue(RATINGS[random.nextInt(RATINGS.length)]));
+			document.add(new NumericField(ReviewStatisticsBridge.REVIEW_COUNT_FIELD).setIntValue(random.nextInt(4)));
+			document.add(new NumericField("price").setFloatValue(PRICES[random.nextInt(PRICES.length)]));
+			document.add(new NumericField("sorting_releaseDate").setIntValue(15000 + random.nextInt(3)));
+
+			// Most documents match the query, with a few distinct scores between them
+			StringBuilder body = new StringBuilder(doc % 7 == 0 ? "other" : "app");
+			for(int word = random.nextInt(3); word > 0; word--) {
+				body.append(random.nextBoolean() ? " game" : " filler");
+			}
+			document.add(new Field("body", body.toString(), Field.Store.NO, Field.Index.ANALYZED));
+			writer.addDocument(document);
+			if(doc % DOCUMENTS_PER_SEGMENT == DOCUMENTS_PER_SEGMENT - 1) {
+				writer.commit();
+			}
+		}
+		writer.close();
+		reader = IndexReader.open(directory);
+		searcher = new IndexSearcher(reader);
+		assertTrue("Expected several segments", reader.getSequentialSubReaders().length > 3);
+	}
+
+	@Override
+	protected void tearDown() throws IOException {
+		searcher.close();
+		reader.close();
+		directory.close();
+	}
+
+	public void testPagesByCursorMatchOneSearch() throws IOException {
+		BooleanQuery query = new BooleanQuery();
+		query.add(new TermQuery(new Term("body", "app")), BooleanClause.Occur.MUST);
+		query.add(new TermQuery(new Term("body", "game")), BooleanClause.Occur.SHOULD);
+		for(String sortField : SORTS) {
+			List<Integer> expected = searchAll(query, sortField);
+			assertTrue(expected.size() > DOCUMENTS / 2);
+			for(int pageSize : new int[] { 1, 4, 7, 50, DOCUMENTS }) {
+				assertEquals(sortField + " in pages of " + pageSize, expected, pageByCursor(query, sortField, pageSize));
+			}
+		}
+	}
+
+	public void testCursorAfterLastHitFindsNothing() throws IOException {
+		Query query = new TermQuery(new Term("body", "app"));
+		for(String sortField : SORTS) {
+			List<Integer> all = searchAll(query, sortField);
+			ScoreDoc[] hits = page(query, sortField, null, all.size());
+			SearchCursor last = SearchCursor.after(sortField, hits[hits.length - 1]);
+			assertEquals(sortField, 0, page(query, sortField, last.encode(), 10).length);
+		}
+	}
+
+	public void testUnsupportedSortIsRejected() {
+		try {
+			new SearchAfterCollector(TopScoreDocCollector.create(10, true), new SortField("id", SortField.LONG), "1", 0);
+			fail("Accepted a LONG sort");
+		} catch(IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			new SearchAfterCollector(TopScoreDocCollector.create(10, true), AppSearchService.getSort("price").getSort()[0], "cheap", 0);
+			fail("Accepted a price that isn't a number");
+		} catch(IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * @return every hit, in order, from a single search
+	 */
+	private List<Integer> searchAll(Query query, String sortField) throws IOException {
+		Sort sort = AppSearchService.getSort(sortField);
+		ScoreDoc[] hits = sort == null
+				? searcher.search(query, DOCUMENTS).scoreDocs
+				: searcher.search(query, null, DOCUMENTS, sort).scoreDocs;
+		return toDocs(hits, hits.length);
+	}
+
+	/**
+	 * @return every hit, in order, gathered one page at a time by following each page's cursor to the next
+	 */
+	private List<Integer> pageByCursor(Query query, String sortField, int pageSize) throws IOException {
+		List<Integer> docs = new ArrayList<Integer>();
+		Set<Integer> seen = new HashSet<Integer>();
+		String cursor = null;
+		do {
+			ScoreDoc[] hits = page(query, sortField, cursor, pageSize + 1);
+			int size = Math.min(hits.length, pageSize);
+			for(Integer doc : toDocs(hits, size)) {
+				assertTrue(sortField + ": document " + doc + " is on two pages", seen.add(doc));
+				docs.add(doc);
+			}
+			cursor = hits.length > size ? SearchCursor.after(sortField, hits[size - 1]).encode() : null;
+		} while(cursor != null);
+		return docs;
+	}
+
+	/**
+	 * Gathers the top hits after a cursor, with the same collectors as "AppSearchService".
+	 */
+	private ScoreDoc[] page(Query query, String sortField, String encodedCursor, int numHits) throws IOException {
+		SearchCursor after = encodedCursor == null ? null : SearchCursor.decode(encodedCursor);
+		Sort sort = AppSearchService.getSort(sortField);
+		TopDocsCollector<?> topDocsCollector;
+		Collector collector;
+		if(sort == null) {
+			topDocsCollector = TopScoreDocCollector.create(numHits, after == null ? null : after.toScoreDoc(), false);
+			collector = topDocsCollector;
+		} else {
+			topDocsCollector = TopFieldCollector.create(sort, numHits, true, false, false, false);
+			collector = after == null
+					? topDocsCollector
+					: new SearchAfterCollector(topDocsCollector, sort.getSort()[0], after.getSortValue(), after.getDoc());
+		}
+		searcher.search(query, collector);
+		return topDocsCollector.topDocs().scoreDocs;
+	}
+
+	private static List<Integer> toDocs(ScoreDoc[] hits, int count) {
+		List<Integer> docs = new ArrayList<Integer>(count);
+		for(int index = 0; index < count; index++) {
+			docs.add(hits[index].doc);
+		}
+		return docs;
+	}
+
+}
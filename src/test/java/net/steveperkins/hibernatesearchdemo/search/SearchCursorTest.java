@@ -0,0 +1,84 @@
+package net.steveperkins.hibernatesearchdemo.search;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.ScoreDoc;
+
+/**
+ * Checks that cursors survive the trip to a client and back unchanged, and that anything else is rejected.
+ */
+public class SearchCursorTest extends TestCase {
+
+	public void testRelevanceCursorRoundTrip() {
+		SearchCursor cursor = roundTrip(SearchCursor.after("relevance", new ScoreDoc(1234, 0.73125f)));
+		assertEquals("relevance", cursor.getSortField());
+		assertEquals(1234, cursor.getDoc());
+		assertEquals(0.73125f, cursor.getScore());
+		assertNull(cursor.getSortValue());
+
+		// The score goes back to Lucene bit for bit, or hits tied with the cursor would be skipped or repeated
+		ScoreDoc scoreDoc = cursor.toScoreDoc();
+		assertEquals(1234, scoreDoc.doc);
+		assertEquals(Float.floatToIntBits(0.73125f), Float.floatToIntBits(scoreDoc.score));
+	}
+
+	public void testFieldCursorRoundTrip() {
+		assertSortValue("name", "Frustrated Flamingos", "Frustrated Flamingos");
+		assertSortValue("name", "Caf\u00e9 \u00fcber \u65e5\u672c", "Caf\u00e9 \u00fcber \u65e5\u672c");
+		assertSortValue("rating", Float.valueOf(4.3f), "4.3");
+		assertSortValue("reviews", Integer.valueOf(17), "17");
+		assertSortValue("price", Float.valueOf(0f), "0.0");
+		assertSortValue("newest", Integer.valueOf(-5), "-5");
+	}
+
+	public void testMissingSortValue() {
+		SearchCursor cursor = roundTrip(SearchCursor.after("name", new FieldDoc(7, Float.NaN, new Object[] { null })));
+		assertEquals(7, cursor.getDoc());
+		assertNull(cursor.getSortValue());
+	}
+
+	public void testCursorIsUrlSafe() {
+		for(int doc = 0; doc < 2000; doc += 7) {
+			String encoded = SearchCursor.after("name", new FieldDoc(doc, doc / 3f, new Object[] { "name ?&/+= " + doc })).encode();
+			assertTrue(encoded, encoded.matches("[A-Za-z0-9_-]+"));
+		}
+	}
+
+	public void testInvalidCursorsAreRejected() {
+		assertInvalid("");
+		assertInvalid("not a cursor");
+		assertInvalid(Base64.encodeBase64URLSafeString(new byte[] { 1, 0 }));
+		String encoded = new SearchCursor("name", 1f, 3, "value").encode();
+		assertInvalid(encoded.substring(0, encoded.length() - 4));
+
+		// A cursor in some other (e.g. future) format
+		byte[] bytes = Base64.decodeBase64(encoded);
+		bytes[0] = 2;
+		assertInvalid(Base64.encodeBase64URLSafeString(bytes));
+	}
+
+	private static void assertSortValue(String sortField, Object value, String expected) {
+		SearchCursor cursor = roundTrip(SearchCursor.after(sortField, new FieldDoc(42, Float.NaN, new Object[] { value })));
+		assertEquals(sortField, cursor.getSortField());
+		assertEquals(42, cursor.getDoc());
+		assertEquals(expected, cursor.getSortValue());
+	}
+
+	private static SearchCursor roundTrip(SearchCursor cursor) {
+		SearchCursor decoded = SearchCursor.decode(cursor.encode());
+		assertEquals(cursor.encode(), decoded.encode());
+		return decoded;
+	}
+
+	private static void assertInvalid(String encoded) {
+		try {
+			SearchCursor.decode(encoded);
+			fail("Decoded an invalid cursor: " + encoded);
+		} catch(IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+}
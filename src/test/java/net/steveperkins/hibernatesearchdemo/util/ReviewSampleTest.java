@@ -0,0 +1,107 @@
+package net.steveperkins.hibernatesearchdemo.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import net.steveperkins.hibernatesearchdemo.domain.CustomerReview;
+import net.steveperkins.hibernatesearchdemo.util.ReviewSample.Policy;
+
+/**
+ * Checks which reviews each sample policy picks, and that the same reviews always make the same sample.
+ */
+public class ReviewSampleTest extends TestCase {
+
+	private List<CustomerReview> reviews;
+
+	@Override
+	protected void setUp() {
+		reviews = new ArrayList<CustomerReview>();
+		for(int index = 0; index < 10; index++) {
+			reviews.add(new CustomerReview("fan" + index, 5, comments(index * 10)));
+		}
+		reviews.add(new CustomerReview("meh0", 3, comments(15)));
+		reviews.add(new CustomerReview("meh1", 3, comments(25)));
+		for(int index = 0; index < 3; index++) {
+			reviews.add(new CustomerReview("hater" + index, 1, comments(5 + index)));
+		}
+	}
+
+	public void testSmallCollectionsAreIndexedWhole() {
+		assertSame(reviews, ReviewSample.select(reviews, Policy.LONGEST, reviews.size()));
+		assertSame(reviews, ReviewSample.select(reviews, Policy.BALANCED, reviews.size() + 1));
+		assertSame(reviews, ReviewSample.select(reviews, Policy.ALL, 1));
+		assertNull(ReviewSample.select(null, Policy.LONGEST, 1));
+	}
+
+	public void testLongest() {
+		Collection<CustomerReview> sample = ReviewSample.select(reviews, Policy.LONGEST, 4);
+		assertEquals(usernames("fan9", "fan8", "fan7", "fan6"), usernames(sample));
+	}
+
+	/**
+	 * One review per star rating in turn, from five stars down, longest first within each rating... until a rating
+	 * runs out, after which the others carry on sharing the sample
+	 */
+	public void testBalanced() {
+		List<CustomerReview> sample = new ArrayList<CustomerReview>(ReviewSample.select(reviews, Policy.BALANCED, 8));
+		List<String> expected = usernames("fan9", "meh1", "hater2", "fan8", "meh0", "hater1", "fan7", "hater0");
+		assertEquals(expected, usernames(sample));
+
+		sample = new ArrayList<CustomerReview>(ReviewSample.select(reviews, Policy.BALANCED, 12));
+		assertEquals(12, sample.size());
+		assertEquals(7, countStars(sample, 5));
+		assertEquals(2, countStars(sample, 3));
+		assertEquals(3, countStars(sample, 1));
+	}
+
+	public void testSampleDoesNotDependOnOrder() {
+		Random random = new Random(3);
+		for(Policy policy : new Policy[] { Policy.LONGEST, Policy.BALANCED }) {
+			List<String> expected = usernames(ReviewSample.select(reviews, policy, 6));
+			for(int round = 0; round < 20; round++) {
+				List<CustomerReview> shuffled = new ArrayList<CustomerReview>(reviews);
+				Collections.shuffle(shuffled, random);
+				assertEquals(policy.name(), expected, usernames(ReviewSample.select(new HashSet<CustomerReview>(shuffled), policy, 6)));
+			}
+		}
+	}
+
+	private static String comments(int length) {
+		StringBuilder comments = new StringBuilder();
+		while(comments.length() < length) {
+			comments.append('x');
+		}
+		return comments.toString();
+	}
+
+	private static int countStars(Collection<CustomerReview> sample, int stars) {
+		int count = 0;
+		for(CustomerReview review : sample) {
+			if(review.getStars() == stars) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static List<String> usernames(Collection<CustomerReview> sample) {
+		List<String> usernames = new ArrayList<String>();
+		for(CustomerReview review : sample) {
+			usernames.add(review.getUsername());
+		}
+		return usernames;
+	}
+
+	private static List<String> usernames(String... usernames) {
+		List<String> list = new ArrayList<String>();
+		Collections.addAll(list, usernames);
+		return list;
+	}
+
+}